@@ -0,0 +1,77 @@
+package com.wavefront.opentracing.benchmark;
+
+import com.wavefront.opentracing.WavefrontTracer;
+import com.wavefront.opentracing.reporting.WavefrontSpanReporter;
+import com.wavefront.sdk.common.application.ApplicationTags;
+import com.wavefront.sdk.common.clients.WavefrontNoOpClient;
+import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * Builds the tracers and span workloads shared by the benchmarks.
+ */
+final class BenchmarkTracers {
+
+  private BenchmarkTracers() {
+  }
+
+  /**
+   * Creates a tracer that reports through a {@link WavefrontSpanReporter} backed by a no-op
+   * sender, so that the reporter queue and derived metrics are part of the measurement.
+   *
+   * @param sampled the constant sampling decision for root spans
+   * @return a new tracer, to be closed by the caller
+   */
+  static WavefrontTracer newTracer(boolean sampled) {
+    return newTracer(sampled, false);
+  }
+
+  /**
+   * Creates a tracer like {@link #newTracer(boolean)}, optionally starting unsampled spans as
+   * lightweight spans.
+   */
+  static WavefrontTracer newTracer(boolean sampled, boolean lightweightUnsampledSpans) {
+    WavefrontSpanReporter reporter = new WavefrontSpanReporter.Builder().
+        withSource("benchmark").withLoggingPercent(0.0f).build(new WavefrontNoOpClient());
+    WavefrontTracer.Builder builder = new WavefrontTracer.Builder(reporter,
+        new ApplicationTags.Builder("benchmarkApplication", "benchmarkService").build()).
+        withSampler(new ConstantSampler(sampled)).
+        excludeJvmMetrics();
+    if (lightweightUnsampledSpans) {
+      builder.lightweightUnsampledSpans();
+    }
+    return builder.build();
+  }
+
+  static String[] tagKeys(int count) {
+    String[] keys = new String[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = "tag" + i;
+    }
+    return keys;
+  }
+
+  static String[] tagValues(int count) {
+    String[] values = new String[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = "value" + i;
+    }
+    return values;
+  }
+
+  /**
+   * Runs the full lifecycle of a span: tags on the builder, start, setTag, log and finish.
+   */
+  static Span runLifecycle(Tracer.SpanBuilder builder, String[] keys, String[] values) {
+    for (int i = 0; i < keys.length; i++) {
+      builder.withTag(keys[i], values[i]);
+    }
+    Span span = builder.start();
+    span.setTag("http.status_code", 200);
+    span.log("event");
+    span.finish();
+    return span;
+  }
+}
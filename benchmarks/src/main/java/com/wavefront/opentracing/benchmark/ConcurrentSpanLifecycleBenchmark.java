@@ -0,0 +1,119 @@
+package com.wavefront.opentracing.benchmark;
+
+import com.wavefront.opentracing.WavefrontTracer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+
+import static com.wavefront.opentracing.benchmark.BenchmarkTracers.runLifecycle;
+
+/**
+ * Span lifecycle with 1, 4, 16 and 64 threads sharing one tracer and reporter.
+ *
+ * The root span variants contend on the reporter queue. The shared parent variants additionally
+ * contend on the parent span, whose context is read by every child that is started.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentSpanLifecycleBenchmark {
+
+  private static final int TAG_COUNT = 10;
+
+  @Param({"true", "false"})
+  public boolean sampled;
+
+  WavefrontTracer tracer;
+  Span sharedParent;
+  String[] keys;
+  String[] values;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    tracer = BenchmarkTracers.newTracer(sampled);
+    sharedParent = tracer.buildSpan("parentOp").start();
+    keys = BenchmarkTracers.tagKeys(TAG_COUNT);
+    values = BenchmarkTracers.tagValues(TAG_COUNT);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    sharedParent.finish();
+    tracer.close();
+  }
+
+  private Span rootSpan() {
+    return runLifecycle(tracer.buildSpan("rootOp").ignoreActiveSpan(), keys, values);
+  }
+
+  private Span childOfSharedParent() {
+    return runLifecycle(tracer.buildSpan("childOp").asChildOf(sharedParent), keys, values);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Span rootSpanThreads1() {
+    return rootSpan();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Span rootSpanThreads4() {
+    return rootSpan();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Span rootSpanThreads16() {
+    return rootSpan();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Span rootSpanThreads64() {
+    return rootSpan();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Span childOfSharedParentThreads1() {
+    return childOfSharedParent();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Span childOfSharedParentThreads4() {
+    return childOfSharedParent();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Span childOfSharedParentThreads16() {
+    return childOfSharedParent();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Span childOfSharedParentThreads64() {
+    return childOfSharedParent();
+  }
+}
@@ -0,0 +1,91 @@
+package com.wavefront.opentracing.benchmark;
+
+import com.wavefront.opentracing.id.IdGenerator;
+import com.wavefront.opentracing.id.SecureRandomIdGenerator;
+import com.wavefront.opentracing.id.SplittableRandomIdGenerator;
+import com.wavefront.opentracing.id.ThreadLocalRandomIdGenerator;
+import com.wavefront.opentracing.id.TimePrefixedIdGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of a 128-bit trace id by each {@link IdGenerator} on 1, 16 and 64 threads sharing
+ * one generator, compared with {@link UUID#randomUUID()}, which the tracer used before ids could
+ * be configured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+  @Param({"randomUUID", "threadLocalRandom", "splittableRandom", "timePrefixed", "secureRandom"})
+  public String generator;
+
+  IdGenerator idGenerator;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    switch (generator) {
+      case "randomUUID":
+        idGenerator = null;
+        break;
+      case "threadLocalRandom":
+        idGenerator = new ThreadLocalRandomIdGenerator();
+        break;
+      case "splittableRandom":
+        idGenerator = new SplittableRandomIdGenerator();
+        break;
+      case "timePrefixed":
+        idGenerator = new TimePrefixedIdGenerator();
+        break;
+      case "secureRandom":
+        idGenerator = new SecureRandomIdGenerator();
+        break;
+      default:
+        throw new IllegalArgumentException("invalid generator: " + generator);
+    }
+  }
+
+  private UUID traceId() {
+    if (idGenerator == null) {
+      return UUID.randomUUID();
+    }
+    return new UUID(idGenerator.nextTraceIdHigh(), idGenerator.nextId());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public UUID traceIdThreads1() {
+    return traceId();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public UUID traceIdThreads16() {
+    return traceId();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public UUID traceIdThreads64() {
+    return traceId();
+  }
+}
@@ -0,0 +1,71 @@
+package com.wavefront.opentracing.benchmark;
+
+import com.wavefront.opentracing.WavefrontSpan;
+import com.wavefront.opentracing.WavefrontSpanBuilder;
+import com.wavefront.opentracing.WavefrontTracer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Uncontended cost of the span accessors that are called most often on a live span: reading its
+ * context, as done by {@code activeSpan().context()} and propagation, and setting a tag, for
+ * single-writer and thread-safe spans.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpanAccessBenchmark {
+
+  @Param({"false", "true"})
+  public boolean threadSafe;
+
+  WavefrontTracer tracer;
+  WavefrontSpan span;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    tracer = BenchmarkTracers.newTracer(true);
+    WavefrontSpanBuilder builder = (WavefrontSpanBuilder) tracer.buildSpan("accessOp");
+    span = (WavefrontSpan) (threadSafe ? builder.threadSafe() : builder).start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    span.finish();
+    tracer.close();
+  }
+
+  @Benchmark
+  public SpanContext context() {
+    return span.context();
+  }
+
+  @Benchmark
+  public String getOperationName() {
+    return span.getOperationName();
+  }
+
+  @Benchmark
+  public WavefrontSpan setTag() {
+    // a single-valued key replaces the previous value, so the span does not grow
+    return span.setTag("service", "accessService");
+  }
+}
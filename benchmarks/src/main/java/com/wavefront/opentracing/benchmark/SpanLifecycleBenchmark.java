@@ -0,0 +1,93 @@
+package com.wavefront.opentracing.benchmark;
+
+import com.wavefront.opentracing.WavefrontTracer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+
+import static com.wavefront.opentracing.benchmark.BenchmarkTracers.runLifecycle;
+
+/**
+ * Single-threaded cost of the span lifecycle: builder tags, start, setTag, log and finish.
+ *
+ * Run with {@code -prof gc} to get the bytes allocated per span.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpanLifecycleBenchmark {
+
+  @Param({"true", "false"})
+  public boolean sampled;
+
+  @Param({"0", "10", "50"})
+  public int tagCount;
+
+  @Param({"false", "true"})
+  public boolean lightweightUnsampledSpans;
+
+  WavefrontTracer tracer;
+  String[] keys;
+  String[] values;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    tracer = BenchmarkTracers.newTracer(sampled, lightweightUnsampledSpans);
+    keys = BenchmarkTracers.tagKeys(tagCount);
+    values = BenchmarkTracers.tagValues(tagCount);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    tracer.close();
+  }
+
+  /**
+   * A parent span that is active on the benchmark thread for the whole trial.
+   */
+  @State(org.openjdk.jmh.annotations.Scope.Thread)
+  public static class ActiveParent {
+    Span parent;
+    Scope scope;
+
+    @Setup(Level.Trial)
+    public void activate(SpanLifecycleBenchmark benchmark) {
+      parent = benchmark.tracer.buildSpan("parentOp").start();
+      scope = benchmark.tracer.activateSpan(parent);
+    }
+
+    @TearDown(Level.Trial)
+    public void deactivate() {
+      scope.close();
+      parent.finish();
+    }
+  }
+
+  @Benchmark
+  public Span rootSpan() {
+    return runLifecycle(tracer.buildSpan("rootOp").ignoreActiveSpan(), keys, values);
+  }
+
+  @Benchmark
+  public Span childOfActiveSpan(ActiveParent activeParent) {
+    return runLifecycle(tracer.buildSpan("childOp"), keys, values);
+  }
+}
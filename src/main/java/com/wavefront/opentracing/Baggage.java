@@ -0,0 +1,370 @@
+package com.wavefront.opentracing;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Immutable baggage of a span context, changed by creating a new map that shares the unchanged
+ * parts of the previous one.
+ *
+ * Up to {@link #MAX_ARRAY_SIZE} items are kept in one array of keys and values, which is copied
+ * on change. Larger baggage is kept in a hash array mapped trie, where a change only copies the
+ * nodes on the path to the changed item. Child spans share the baggage of their parent, so deep
+ * traces carry one baggage instance until an item is set.
+ */
+@Immutable
+final class Baggage extends AbstractMap<String, String> {
+
+  static final int MAX_ARRAY_SIZE = 8;
+  static final Baggage EMPTY = new Baggage(new String[0], null, 0);
+
+  private static final int BITS = 5;
+  private static final int MAX_DEPTH = 8;
+  private static final Object NOT_FOUND = new Object();
+
+  /** The consecutive keys and values of small baggage, or null if the items are in a trie. */
+  @Nullable
+  private final String[] entries;
+  @Nullable
+  private final Node root;
+  private final int size;
+
+  private Baggage(@Nullable String[] entries, @Nullable Node root, int size) {
+    this.entries = entries;
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Gets the baggage holding the items of a map.
+   *
+   * @param map the items, or null for no items
+   * @return the map itself if it is baggage, or new baggage holding its items
+   */
+  static Baggage copyOf(@Nullable Map<String, String> map) {
+    if (map instanceof Baggage) {
+      return (Baggage) map;
+    }
+    Baggage baggage = EMPTY;
+    if (map != null) {
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        baggage = baggage.with(entry.getKey(), entry.getValue());
+      }
+    }
+    return baggage;
+  }
+
+  /**
+   * Gets the baggage with an item set.
+   *
+   * @return new baggage, or this baggage if it already holds the item
+   */
+  Baggage with(String key, @Nullable String value) {
+    Objects.requireNonNull(key, "baggage key");
+    if (entries != null) {
+      for (int i = 0; i < entries.length; i += 2) {
+        if (key.equals(entries[i])) {
+          if (Objects.equals(value, entries[i + 1])) {
+            return this;
+          }
+          String[] copy = entries.clone();
+          copy[i + 1] = value;
+          return new Baggage(copy, null, size);
+        }
+      }
+      if (size < MAX_ARRAY_SIZE) {
+        String[] copy = Arrays.copyOf(entries, entries.length + 2);
+        copy[entries.length] = key;
+        copy[entries.length + 1] = value;
+        return new Baggage(copy, null, size + 1);
+      }
+      Node trie = BitmapNode.EMPTY;
+      for (int i = 0; i < entries.length; i += 2) {
+        trie = trie.with(entries[i], entries[i + 1], hash(entries[i]), 0);
+      }
+      return new Baggage(null, trie.with(key, value, hash(key), 0), size + 1);
+    }
+    int hash = hash(key);
+    boolean added = root.find(key, hash, 0) == NOT_FOUND;
+    Node trie = root.with(key, value, hash, 0);
+    return trie == root ? this : new Baggage(null, trie, added ? size + 1 : size);
+  }
+
+  /**
+   * Gets the baggage with the items of other baggage set, sharing either baggage if the other one
+   * is empty.
+   */
+  Baggage withAll(Baggage other) {
+    if (other.size == 0) {
+      return this;
+    }
+    if (size == 0) {
+      return other;
+    }
+    Baggage baggage = this;
+    for (Map.Entry<String, String> entry : other.entrySet()) {
+      baggage = baggage.with(entry.getKey(), entry.getValue());
+    }
+    return baggage;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  @Nullable
+  public String get(Object key) {
+    Object value = find(key);
+    return value == NOT_FOUND ? null : (String) value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return find(key) != NOT_FOUND;
+  }
+
+  @Nullable
+  private Object find(Object key) {
+    if (!(key instanceof String)) {
+      return NOT_FOUND;
+    }
+    if (entries != null) {
+      for (int i = 0; i < entries.length; i += 2) {
+        if (key.equals(entries[i])) {
+          return entries[i + 1];
+        }
+      }
+      return NOT_FOUND;
+    }
+    return root.find((String) key, hash((String) key), 0);
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entrySet() {
+    return new AbstractSet<Map.Entry<String, String>>() {
+      @Override
+      public Iterator<Map.Entry<String, String>> iterator() {
+        return new EntryIterator(entries != null ? entries : root.array);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private static int hash(String key) {
+    int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & 31);
+  }
+
+  /**
+   * A trie node. Its array holds consecutive pairs of either a key and its value, or a child node
+   * and null.
+   */
+  private abstract static class Node {
+    final Object[] array;
+
+    Node(Object[] array) {
+      this.array = array;
+    }
+
+    /**
+     * @return the value of the key, or {@link #NOT_FOUND}
+     */
+    @Nullable
+    abstract Object find(String key, int hash, int shift);
+
+    /**
+     * @return a new node with the item set, or this node if it already holds the item
+     */
+    abstract Node with(String key, @Nullable String value, int hash, int shift);
+
+    Node copyAndSet(int index, Object key, @Nullable Object value) {
+      Object[] copy = array.clone();
+      copy[index] = key;
+      copy[index + 1] = value;
+      return copy(copy);
+    }
+
+    abstract Node copy(Object[] array);
+  }
+
+  /** A node indexing up to 32 slots by 5 bits of the hash of their keys. */
+  private static final class BitmapNode extends Node {
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+
+    BitmapNode(int bitmap, Object[] array) {
+      super(array);
+      this.bitmap = bitmap;
+    }
+
+    @Override
+    @Nullable
+    Object find(String key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return NOT_FOUND;
+      }
+      int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+      Object slot = array[index];
+      if (slot instanceof Node) {
+        return ((Node) slot).find(key, hash, shift + BITS);
+      }
+      return key.equals(slot) ? array[index + 1] : NOT_FOUND;
+    }
+
+    @Override
+    Node with(String key, @Nullable String value, int hash, int shift) {
+      int bit = bit(hash, shift);
+      int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+      if ((bitmap & bit) == 0) {
+        Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = key;
+        copy[index + 1] = value;
+        System.arraycopy(array, index, copy, index + 2, array.length - index);
+        return new BitmapNode(bitmap | bit, copy);
+      }
+      Object slot = array[index];
+      if (slot instanceof Node) {
+        Node child = (Node) slot;
+        Node newChild = child.with(key, value, hash, shift + BITS);
+        return newChild == child ? this : copyAndSet(index, newChild, null);
+      }
+      if (key.equals(slot)) {
+        return Objects.equals(value, array[index + 1]) ? this : copyAndSet(index, key, value);
+      }
+      // two keys share the slot, so move both into a child node
+      String otherKey = (String) slot;
+      Node child = pair(otherKey, (String) array[index + 1], hash(otherKey), key, value, hash,
+          shift + BITS);
+      return copyAndSet(index, child, null);
+    }
+
+    @Override
+    Node copy(Object[] array) {
+      return new BitmapNode(bitmap, array);
+    }
+
+    private static Node pair(String key1, @Nullable String value1, int hash1, String key2,
+                             @Nullable String value2, int hash2, int shift) {
+      if (hash1 == hash2) {
+        return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+      }
+      return EMPTY.with(key1, value1, hash1, shift).with(key2, value2, hash2, shift);
+    }
+  }
+
+  /** A node of keys whose hashes are equal. */
+  private static final class CollisionNode extends Node {
+    private final int hash;
+
+    CollisionNode(int hash, Object[] array) {
+      super(array);
+      this.hash = hash;
+    }
+
+    @Override
+    @Nullable
+    Object find(String key, int hash, int shift) {
+      if (hash == this.hash) {
+        for (int i = 0; i < array.length; i += 2) {
+          if (key.equals(array[i])) {
+            return array[i + 1];
+          }
+        }
+      }
+      return NOT_FOUND;
+    }
+
+    @Override
+    Node with(String key, @Nullable String value, int hash, int shift) {
+      if (hash != this.hash) {
+        return new BitmapNode(bit(this.hash, shift), new Object[]{this, null}).
+            with(key, value, hash, shift);
+      }
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return Objects.equals(value, array[i + 1]) ? this : copyAndSet(i, key, value);
+        }
+      }
+      Object[] copy = Arrays.copyOf(array, array.length + 2);
+      copy[array.length] = key;
+      copy[array.length + 1] = value;
+      return new CollisionNode(hash, copy);
+    }
+
+    @Override
+    Node copy(Object[] array) {
+      return new CollisionNode(hash, array);
+    }
+  }
+
+  /** Depth-first iterator over the keys and values of an array or a trie. */
+  private static final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+    private final Object[][] arrays = new Object[MAX_DEPTH][];
+    private final int[] indexes = new int[MAX_DEPTH];
+    private int depth = 0;
+
+    EntryIterator(Object[] array) {
+      arrays[0] = array;
+      advance();
+    }
+
+    /** Moves to the next key, or sets the depth to -1 after the last one. */
+    private void advance() {
+      while (depth >= 0) {
+        Object[] array = arrays[depth];
+        int index = indexes[depth];
+        if (index >= array.length) {
+          depth--;
+        } else if (array[index] instanceof Node) {
+          indexes[depth] = index + 2;
+          depth++;
+          arrays[depth] = ((Node) array[index]).array;
+          indexes[depth] = 0;
+        } else {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return depth >= 0;
+    }
+
+    @Override
+    public Map.Entry<String, String> next() {
+      if (depth < 0) {
+        throw new NoSuchElementException();
+      }
+      Object[] array = arrays[depth];
+      int index = indexes[depth];
+      indexes[depth] = index + 2;
+      Map.Entry<String, String> entry = new SimpleImmutableEntry<>((String) array[index],
+          (String) array[index + 1]);
+      advance();
+      return entry;
+    }
+  }
+}
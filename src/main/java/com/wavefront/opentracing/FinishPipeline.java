@@ -0,0 +1,195 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.internal.reporter.WavefrontInternalReporter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.DeltaCounter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Processes finished spans on worker threads, so that finishing a span only records its end time
+ * and hands it over. The workers run the late sampling, the tail sampling or reporting, and the
+ * span-derived metrics of each span.
+ *
+ * Each worker has its own bounded queue, and the spans of a trace always go to the same worker,
+ * so that they are processed in the order they finished. A span whose queue is full is dropped:
+ * it is not sampled or reported by itself, but its span-derived metrics and tail sampling
+ * bookkeeping still run on the finishing thread.
+ *
+ * With no workers, spans are processed synchronously on the finishing thread, which is meant for
+ * tests.
+ */
+class FinishPipeline {
+
+  private static final Logger logger = Logger.getLogger(FinishPipeline.class.getName());
+
+  private final BlockingQueue<WavefrontSpan>[] queues;
+  private final Thread[] workers;
+  /** The number of spans queued or being processed by the workers. */
+  private final AtomicLong pending = new AtomicLong();
+  private volatile boolean closed;
+
+  private final LongAdder dropped = new LongAdder();
+  @Nullable
+  private DeltaCounter droppedCounter;
+
+  /**
+   * @param workers       the number of worker threads, 0 to process spans synchronously
+   * @param queueCapacity the capacity of the queue of each worker
+   */
+  @SuppressWarnings("unchecked")
+  FinishPipeline(int workers, int queueCapacity) {
+    this.queues = new BlockingQueue[workers];
+    this.workers = new Thread[workers];
+    for (int i = 0; i < workers; i++) {
+      BlockingQueue<WavefrontSpan> queue = new ArrayBlockingQueue<>(queueCapacity);
+      queues[i] = queue;
+      Thread worker = new Thread(() -> run(queue), "wavefront-span-finisher-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      this.workers[i] = worker;
+    }
+  }
+
+  /**
+   * Reports the queued spans and the dropped spans as internal metrics.
+   */
+  void setMetricsReporter(WavefrontInternalReporter metricsReporter) {
+    metricsReporter.newGauge(new MetricName("finish_pipeline.queue.size",
+        Collections.emptyMap()), () -> (() -> (double) getQueueSize()));
+    droppedCounter = metricsReporter.newDeltaCounter(new MetricName(
+        "finish_pipeline.spans.dropped", Collections.emptyMap()));
+  }
+
+  /**
+   * Hands over a finished span to be processed, or processes it on the calling thread if the
+   * pipeline is synchronous or closed.
+   */
+  void submit(WavefrontSpan span) {
+    if (queues.length == 0 || closed) {
+      process(span);
+      return;
+    }
+    long traceIdLow = span.context().getTraceIdLow();
+    int index = Math.floorMod(Long.hashCode(traceIdLow), queues.length);
+    pending.incrementAndGet();
+    if (queues[index].offer(span)) {
+      // close() may have drained the queues after the check above, in which case the span is
+      // taken back, unless a worker or close() got to it first
+      if (closed && queues[index].remove(span)) {
+        pending.decrementAndGet();
+        process(span);
+      }
+    } else {
+      pending.decrementAndGet();
+      dropped.increment();
+      if (droppedCounter != null) {
+        droppedCounter.inc();
+      }
+      try {
+        span.processDropped();
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Error processing dropped span", t);
+      }
+    }
+  }
+
+  /**
+   * Waits until the spans handed over so far are processed.
+   *
+   * @param timeoutMillis the maximum time to wait
+   * @return true if all spans were processed, false if the wait timed out
+   */
+  boolean drain(long timeoutMillis) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (pending.get() > 0) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+    return true;
+  }
+
+  /**
+   * Processes the queued spans and stops the workers. Spans finished afterwards are processed
+   * synchronously.
+   *
+   * @param timeoutMillis the maximum time to wait for the workers to process the queued spans
+   */
+  void close(long timeoutMillis) {
+    closed = true;
+    if (!drain(timeoutMillis)) {
+      logger.warning("Timed out processing the finished spans of the finish pipeline");
+    }
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join(timeoutMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    // spans that raced with closing
+    for (BlockingQueue<WavefrontSpan> queue : queues) {
+      WavefrontSpan span;
+      while ((span = queue.poll()) != null) {
+        pending.decrementAndGet();
+        process(span);
+      }
+    }
+  }
+
+  int getWorkerCount() {
+    return workers.length;
+  }
+
+  int getQueueSize() {
+    int size = 0;
+    for (BlockingQueue<WavefrontSpan> queue : queues) {
+      size += queue.size();
+    }
+    return size;
+  }
+
+  long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  private void run(BlockingQueue<WavefrontSpan> queue) {
+    while (true) {
+      WavefrontSpan span;
+      try {
+        span = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        process(span);
+      } finally {
+        pending.decrementAndGet();
+      }
+    }
+  }
+
+  private static void process(WavefrontSpan span) {
+    try {
+      span.processFinish();
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Error processing finished span", t);
+    }
+  }
+}
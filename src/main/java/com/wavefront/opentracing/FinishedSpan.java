@@ -0,0 +1,284 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.sdk.common.Pair;
+import com.wavefront.sdk.entities.tracing.SpanLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Immutable snapshot of a finished {@link WavefrontSpan}, holding only what reporters send.
+ *
+ * Ids are kept as pairs of longs, and tags and span logs as flat arrays, so a queued snapshot
+ * neither keeps the tracer, the references or the baggage reachable nor needs any locking to
+ * read.
+ */
+@Immutable
+public final class FinishedSpan {
+
+  private static final long[] NO_IDS = new long[0];
+  private static final String[] NO_STRINGS = new String[0];
+  private static final int[] NO_INTS = new int[0];
+
+  private final String operationName;
+  private final long startTimeMicros;
+  private final long durationMicros;
+  private final long traceIdHigh;
+  private final long traceIdLow;
+  private final long spanIdHigh;
+  private final long spanIdLow;
+  private final long[] parentIds;
+  private final long[] followsIds;
+  private final String[] tags;
+  private final long[] logTimestamps;
+  private final int[] logFieldEnds;
+  private final String[] logFields;
+  private final boolean error;
+
+  /**
+   * Creates a snapshot. The arrays are not copied and must not be modified afterwards.
+   *
+   * @param operationName   the operation name
+   * @param startTimeMicros the start time in microseconds since the epoch
+   * @param durationMicros  the duration in microseconds
+   * @param traceIdHigh     the most significant bits of the trace id
+   * @param traceIdLow      the least significant bits of the trace id
+   * @param spanIdHigh      the most significant bits of the span id
+   * @param spanIdLow       the least significant bits of the span id
+   * @param parentIds       the parent span ids, as consecutive most and least significant bits
+   * @param followsIds      the follows-from span ids, as consecutive most and least significant
+   *                        bits
+   * @param tags            the tags, as consecutive keys and values
+   * @param logTimestamps   the timestamp of every span log in microseconds
+   * @param logFieldEnds    for every span log, the index in {@code logFields} after its last
+   *                        field
+   * @param logFields       the fields of all span logs, as consecutive keys and values
+   * @param error           whether the span has the error tag
+   */
+  public FinishedSpan(String operationName, long startTimeMicros, long durationMicros,
+                      long traceIdHigh, long traceIdLow, long spanIdHigh, long spanIdLow,
+                      long[] parentIds, long[] followsIds, String[] tags, long[] logTimestamps,
+                      int[] logFieldEnds, String[] logFields, boolean error) {
+    this.operationName = operationName;
+    this.startTimeMicros = startTimeMicros;
+    this.durationMicros = durationMicros;
+    this.traceIdHigh = traceIdHigh;
+    this.traceIdLow = traceIdLow;
+    this.spanIdHigh = spanIdHigh;
+    this.spanIdLow = spanIdLow;
+    this.parentIds = parentIds == null ? NO_IDS : parentIds;
+    this.followsIds = followsIds == null ? NO_IDS : followsIds;
+    this.tags = tags == null ? NO_STRINGS : tags;
+    this.logTimestamps = logTimestamps == null ? NO_IDS : logTimestamps;
+    this.logFieldEnds = logFieldEnds == null ? NO_INTS : logFieldEnds;
+    this.logFields = logFields == null ? NO_STRINGS : logFields;
+    this.error = error;
+  }
+
+  public String getOperationName() {
+    return operationName;
+  }
+
+  public long getStartTimeMicros() {
+    return startTimeMicros;
+  }
+
+  public long getDurationMicros() {
+    return durationMicros;
+  }
+
+  public long getTraceIdHigh() {
+    return traceIdHigh;
+  }
+
+  public long getTraceIdLow() {
+    return traceIdLow;
+  }
+
+  public long getSpanIdHigh() {
+    return spanIdHigh;
+  }
+
+  public long getSpanIdLow() {
+    return spanIdLow;
+  }
+
+  public UUID getTraceId() {
+    return new UUID(traceIdHigh, traceIdLow);
+  }
+
+  public UUID getSpanId() {
+    return new UUID(spanIdHigh, spanIdLow);
+  }
+
+  public boolean isError() {
+    return error;
+  }
+
+  public int getParentCount() {
+    return parentIds.length / 2;
+  }
+
+  public UUID getParentId(int index) {
+    return new UUID(parentIds[2 * index], parentIds[2 * index + 1]);
+  }
+
+  public long getParentIdHigh(int index) {
+    return parentIds[2 * index];
+  }
+
+  public long getParentIdLow(int index) {
+    return parentIds[2 * index + 1];
+  }
+
+  public int getFollowsCount() {
+    return followsIds.length / 2;
+  }
+
+  public UUID getFollowsId(int index) {
+    return new UUID(followsIds[2 * index], followsIds[2 * index + 1]);
+  }
+
+  public long getFollowsIdHigh(int index) {
+    return followsIds[2 * index];
+  }
+
+  public long getFollowsIdLow(int index) {
+    return followsIds[2 * index + 1];
+  }
+
+  public int getTagCount() {
+    return tags.length / 2;
+  }
+
+  public String getTagKey(int index) {
+    return tags[2 * index];
+  }
+
+  public String getTagValue(int index) {
+    return tags[2 * index + 1];
+  }
+
+  public int getSpanLogCount() {
+    return logTimestamps.length;
+  }
+
+  public long getSpanLogTimestamp(int index) {
+    return logTimestamps[index];
+  }
+
+  /**
+   * Gets the fields of a span log, as consecutive keys and values.
+   *
+   * @param index the index of the span log
+   * @return a copy of the keys and values
+   */
+  public String[] getSpanLogFields(int index) {
+    int start = index == 0 ? 0 : logFieldEnds[index - 1];
+    return Arrays.copyOfRange(logFields, start, logFieldEnds[index]);
+  }
+
+  /**
+   * Estimates the heap memory used by this snapshot, counting two bytes per character of its
+   * strings whether or not they are shared with other spans.
+   *
+   * @return the estimated size in bytes
+   */
+  public long getEstimatedBytes() {
+    long bytes = 128 + 2L * operationName.length() + 8L * (parentIds.length +
+        followsIds.length + logTimestamps.length) + 4L * logFieldEnds.length;
+    for (String tag : tags) {
+      bytes += 48 + (tag == null ? 0 : 2L * tag.length());
+    }
+    for (String field : logFields) {
+      bytes += 48 + (field == null ? 0 : 2L * field.length());
+    }
+    return bytes;
+  }
+
+  /**
+   * Gets the parent span ids.
+   *
+   * @return a new list of the parent span ids
+   */
+  public List<UUID> getParents() {
+    return toUuids(parentIds);
+  }
+
+  /**
+   * Gets the follows-from span ids.
+   *
+   * @return a new list of the follows-from span ids
+   */
+  public List<UUID> getFollows() {
+    return toUuids(followsIds);
+  }
+
+  /**
+   * Gets the list of multi-valued tags.
+   *
+   * @return a new list of the tags
+   */
+  public List<Pair<String, String>> getTagsAsList() {
+    if (tags.length == 0) {
+      return Collections.emptyList();
+    }
+    List<Pair<String, String>> list = new ArrayList<>(tags.length / 2);
+    for (int i = 0; i < tags.length; i += 2) {
+      list.add(Pair.of(tags[i], tags[i + 1]));
+    }
+    return list;
+  }
+
+  /**
+   * Gets the list of span logs.
+   *
+   * @return a new list of the span logs
+   */
+  public List<SpanLog> getSpanLogs() {
+    if (logTimestamps.length == 0) {
+      return Collections.emptyList();
+    }
+    List<SpanLog> list = new ArrayList<>(logTimestamps.length);
+    int start = 0;
+    for (int i = 0; i < logTimestamps.length; i++) {
+      Map<String, String> fields = new HashMap<>();
+      for (int j = start; j < logFieldEnds[i]; j += 2) {
+        fields.put(logFields[j], logFields[j + 1]);
+      }
+      list.add(new SpanLog(logTimestamps[i], fields));
+      start = logFieldEnds[i];
+    }
+    return list;
+  }
+
+  private static List<UUID> toUuids(long[] ids) {
+    if (ids.length == 0) {
+      return Collections.emptyList();
+    }
+    List<UUID> list = new ArrayList<>(ids.length / 2);
+    for (int i = 0; i < ids.length; i += 2) {
+      list.add(new UUID(ids[i], ids[i + 1]));
+    }
+    return list;
+  }
+
+  @Override
+  public String toString() {
+    return "FinishedSpan{" +
+        "operationName='" + operationName + '\'' +
+        ", startTimeMicros=" + startTimeMicros +
+        ", durationMicros=" + durationMicros +
+        ", traceId=" + getTraceId() +
+        ", spanId=" + getSpanId() +
+        ", tags=" + getTagsAsList() +
+        '}';
+  }
+}
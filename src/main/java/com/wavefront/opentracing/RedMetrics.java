@@ -0,0 +1,247 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.internal.SpanDerivedMetricsUtils;
+import com.wavefront.internal.reporter.WavefrontInternalReporter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.DeltaCounter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.WavefrontHistogram;
+import com.wavefront.sdk.common.Pair;
+import com.wavefront.sdk.common.application.HeartbeaterService;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import static com.wavefront.sdk.common.Constants.APPLICATION_TAG_KEY;
+import static com.wavefront.sdk.common.Constants.CLUSTER_TAG_KEY;
+import static com.wavefront.sdk.common.Constants.COMPONENT_TAG_KEY;
+import static com.wavefront.sdk.common.Constants.NULL_TAG_VAL;
+import static com.wavefront.sdk.common.Constants.SERVICE_TAG_KEY;
+import static com.wavefront.sdk.common.Constants.SHARD_TAG_KEY;
+import static com.wavefront.sdk.common.Constants.SOURCE_KEY;
+import static com.wavefront.sdk.common.Utils.sanitizeWithoutQuotes;
+
+/**
+ * Reports the span-derived RED metrics, which are the same metrics and heartbeats as
+ * {@link SpanDerivedMetricsUtils#reportWavefrontGeneratedData} reports.
+ *
+ * The metrics of every distinct combination of operation, application, service, cluster, shard,
+ * component, error flag and RED metrics tags are resolved once and cached, so that a span costs a
+ * lookup and a few increments of the registry's counters, which are striped across threads and
+ * read by the derived metrics reporter on its reporting interval. The heartbeat tags of each
+ * combination are handed to the heartbeater at most once per minute instead of once per span.
+ *
+ * Once the cache holds its maximum number of combinations, the spans of further combinations are
+ * reported without caching.
+ */
+class RedMetrics {
+
+  static final int MAX_IDENTITIES = 10000;
+
+  private static final String INVOCATION_SUFFIX = ".invocation";
+  private static final String ERROR_SUFFIX = ".error";
+  private static final String DURATION_SUFFIX = ".duration.micros";
+  private static final String TOTAL_TIME_SUFFIX = ".total_time.millis";
+  private static final String OPERATION_NAME_TAG = "operationName";
+  private static final String SPAN_KIND_KEY = "span.kind";
+  private static final String HTTP_STATUS_KEY = "http.status_code";
+
+  // the heartbeater sends and forgets the heartbeat tags every 5 minutes
+  private static final long HEARTBEAT_REFRESH_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private final WavefrontInternalReporter derivedReporter;
+  @Nullable
+  private final HeartbeaterService heartbeaterService;
+  private final String source;
+  private final Set<String> customTagKeys;
+  private final int maxIdentities;
+  private final Map<Key, Identity> identities = new ConcurrentHashMap<>();
+
+  /**
+   * @param derivedReporter    the reporter of the derived metrics
+   * @param heartbeaterService the heartbeater to report the tags of each metric identity to, or
+   *                           null to not report them
+   * @param source             the source of the metrics
+   * @param customTagKeys      the span tags added to the metrics
+   * @param maxIdentities      the maximum number of metric identities cached
+   */
+  RedMetrics(WavefrontInternalReporter derivedReporter,
+             @Nullable HeartbeaterService heartbeaterService, String source,
+             Set<String> customTagKeys, int maxIdentities) {
+    this.derivedReporter = derivedReporter;
+    this.heartbeaterService = heartbeaterService;
+    this.source = source;
+    this.customTagKeys = customTagKeys;
+    this.maxIdentities = maxIdentities;
+  }
+
+  /**
+   * Reports the metrics of a finished span.
+   *
+   * @param tags the span tags read by the RED metrics, which are the custom tags and the HTTP
+   *             status
+   */
+  void report(String operationName, String application, String service, String cluster,
+              String shard, String component, boolean error, long durationMicros,
+              List<Pair<String, String>> tags) {
+    Key key = new Key(operationName, application, service, cluster, shard, component, error,
+        tags);
+    Identity identity = identities.get(key);
+    if (identity == null) {
+      if (identities.size() >= maxIdentities) {
+        Pair<Map<String, String>, String> heartbeatKey =
+            SpanDerivedMetricsUtils.reportWavefrontGeneratedData(derivedReporter, operationName,
+                application, service, cluster, shard, source, component, error, durationMicros,
+                customTagKeys, tags);
+        if (heartbeaterService != null) {
+          heartbeaterService.reportCustomTags(heartbeatKey._1);
+        }
+        return;
+      }
+      identity = identities.computeIfAbsent(key, Identity::new);
+    }
+    identity.record(durationMicros);
+  }
+
+  int getIdentityCount() {
+    return identities.size();
+  }
+
+  private static String nonEmptyOrDefault(@Nullable String value, String defaultValue) {
+    return value == null || value.trim().isEmpty() ? defaultValue : value;
+  }
+
+  /** The values that the names and point tags of the metrics of a span depend on. */
+  private static final class Key {
+    private final String operationName;
+    private final String application;
+    private final String service;
+    private final String cluster;
+    private final String shard;
+    private final String component;
+    private final boolean error;
+    private final List<Pair<String, String>> tags;
+    private final int hash;
+
+    Key(String operationName, String application, String service, String cluster, String shard,
+        String component, boolean error, List<Pair<String, String>> tags) {
+      this.operationName = operationName;
+      this.application = application;
+      this.service = service;
+      this.cluster = cluster;
+      this.shard = shard;
+      this.component = component;
+      this.error = error;
+      this.tags = tags;
+      // not Objects.hash, to not allocate an array per span
+      int h = Objects.hashCode(operationName);
+      h = 31 * h + Objects.hashCode(application);
+      h = 31 * h + Objects.hashCode(service);
+      h = 31 * h + Objects.hashCode(cluster);
+      h = 31 * h + Objects.hashCode(shard);
+      h = 31 * h + Objects.hashCode(component);
+      h = 31 * h + (error ? 1 : 0);
+      this.hash = 31 * h + tags.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return hash == other.hash && error == other.error &&
+          Objects.equals(operationName, other.operationName) &&
+          Objects.equals(application, other.application) &&
+          Objects.equals(service, other.service) && Objects.equals(cluster, other.cluster) &&
+          Objects.equals(shard, other.shard) && Objects.equals(component, other.component) &&
+          tags.equals(other.tags);
+    }
+  }
+
+  /** The resolved metrics of one key. */
+  private final class Identity {
+    private final DeltaCounter invocations;
+    @Nullable
+    private final DeltaCounter errors;
+    private final WavefrontHistogram durations;
+    private final DeltaCounter totalTime;
+    private final Map<String, String> heartbeatTags;
+    private volatile long nextHeartbeatNanos = System.nanoTime();
+
+    Identity(Key key) {
+      Map<String, String> pointTags = new HashMap<>();
+      pointTags.put(APPLICATION_TAG_KEY,
+          nonEmptyOrDefault(key.application, "unknown_application"));
+      pointTags.put(SERVICE_TAG_KEY, nonEmptyOrDefault(key.service, "unknown_service"));
+      pointTags.put(CLUSTER_TAG_KEY, nonEmptyOrDefault(key.cluster, NULL_TAG_VAL));
+      pointTags.put(SHARD_TAG_KEY, nonEmptyOrDefault(key.shard, NULL_TAG_VAL));
+      pointTags.put(OPERATION_NAME_TAG,
+          nonEmptyOrDefault(key.operationName, "unknown_operation"));
+      pointTags.put(COMPONENT_TAG_KEY, nonEmptyOrDefault(key.component, NULL_TAG_VAL));
+      pointTags.put(SOURCE_KEY, nonEmptyOrDefault(source, "unknown_source"));
+      for (Pair<String, String> tag : key.tags) {
+        if (customTagKeys.contains(tag._1)) {
+          pointTags.put(tag._1, tag._2);
+        }
+        if (tag._1.equalsIgnoreCase(HTTP_STATUS_KEY)) {
+          pointTags.put(HTTP_STATUS_KEY, tag._2);
+        }
+      }
+      pointTags.putIfAbsent(SPAN_KIND_KEY, NULL_TAG_VAL);
+
+      String prefix = key.application + "." + key.service + "." + key.operationName;
+      invocations = derivedReporter.newDeltaCounter(new MetricName(
+          sanitizeWithoutQuotes(prefix + INVOCATION_SUFFIX), pointTags));
+      errors = key.error ? derivedReporter.newDeltaCounter(new MetricName(
+          sanitizeWithoutQuotes(prefix + ERROR_SUFFIX), pointTags)) : null;
+      Map<String, String> durationTags = pointTags;
+      if (key.error) {
+        durationTags = new HashMap<>(pointTags);
+        durationTags.put("error", "true");
+      }
+      durations = derivedReporter.newWavefrontHistogram(new MetricName(
+          sanitizeWithoutQuotes(prefix + DURATION_SUFFIX), durationTags),
+          System::currentTimeMillis);
+      totalTime = derivedReporter.newDeltaCounter(new MetricName(
+          sanitizeWithoutQuotes(prefix + TOTAL_TIME_SUFFIX), pointTags));
+
+      Map<String, String> heartbeat = new HashMap<>(pointTags);
+      heartbeat.remove(OPERATION_NAME_TAG);
+      heartbeat.remove(SOURCE_KEY);
+      heartbeatTags = Collections.unmodifiableMap(heartbeat);
+    }
+
+    void record(long durationMicros) {
+      invocations.inc();
+      if (errors != null) {
+        errors.inc();
+      }
+      durations.update(durationMicros);
+      totalTime.inc(durationMicros / 1000);
+      if (heartbeaterService != null) {
+        long now = System.nanoTime();
+        if (now - nextHeartbeatNanos >= 0) {
+          // racing threads may both report, which the heartbeater deduplicates
+          nextHeartbeatNanos = now + HEARTBEAT_REFRESH_NANOS;
+          heartbeaterService.reportCustomTags(heartbeatTags);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.opentracing.sampling.SamplingRule;
+import com.wavefront.opentracing.sampling.TokenBucket;
+import com.wavefront.sdk.common.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import static com.wavefront.sdk.common.Constants.SERVICE_TAG_KEY;
+
+/**
+ * The sampling rules of a tracer, compiled into a table of the rules that can match each
+ * operation, in the order they were added.
+ *
+ * Finding the rule of a span takes one map lookup, and is followed by one condition check per
+ * skipped rule. The rate of a rule is precomputed as a boundary compared to the trace id, and
+ * whether a rule decides on start or on finish is resolved when it is compiled.
+ */
+final class SamplingRuleTable {
+
+  private static final long MOD_FACTOR = 10000L;
+
+  private final SpanTags globalTags;
+  private final Map<String, Rule[]> rulesByOperation = new HashMap<>();
+  private final Rule[] rulesOfAnyOperation;
+
+  SamplingRuleTable(List<SamplingRule> samplingRules, SpanTags globalTags) {
+    this.globalTags = globalTags;
+    List<Rule> rules = new ArrayList<>(samplingRules.size());
+    List<Rule> anyOperation = new ArrayList<>();
+    for (SamplingRule samplingRule : samplingRules) {
+      Rule rule = new Rule(samplingRule);
+      rules.add(rule);
+      if (samplingRule.getOperationName() == null) {
+        anyOperation.add(rule);
+      }
+    }
+    for (Rule rule : rules) {
+      String operationName = rule.operationName;
+      if (operationName != null && !rulesByOperation.containsKey(operationName)) {
+        List<Rule> operationRules = new ArrayList<>();
+        for (Rule candidate : rules) {
+          if (candidate.operationName == null || candidate.operationName.equals(operationName)) {
+            operationRules.add(candidate);
+          }
+        }
+        rulesByOperation.put(operationName, operationRules.toArray(new Rule[0]));
+      }
+    }
+    this.rulesOfAnyOperation = anyOperation.toArray(new Rule[0]);
+  }
+
+  /**
+   * Finds the first rule matching a span that is starting.
+   *
+   * @param operationName the operation name of the span
+   * @param tags          the tags set on the span builder
+   * @return the rule, or null if no rule matches
+   */
+  @Nullable
+  Rule match(String operationName, SpanTags tags) {
+    Rule[] rules = rulesByOperation.get(operationName);
+    if (rules == null) {
+      rules = rulesOfAnyOperation;
+    }
+    for (Rule rule : rules) {
+      if (rule.matches(tags, globalTags)) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A compiled sampling rule.
+   */
+  static final class Rule {
+    @Nullable
+    private final String operationName;
+    @Nullable
+    private final String service;
+    private final String[] tags;
+    private final boolean early;
+    private final long rateBoundary;
+    @Nullable
+    private final TokenBucket rateLimiter;
+    private final long durationThresholdMicros;
+
+    private Rule(SamplingRule rule) {
+      this.operationName = rule.getOperationName();
+      this.service = rule.getService();
+      List<Pair<String, String>> ruleTags = rule.getTags();
+      this.tags = new String[2 * ruleTags.size()];
+      for (int i = 0; i < ruleTags.size(); i++) {
+        tags[2 * i] = ruleTags.get(i)._1;
+        tags[2 * i + 1] = ruleTags.get(i)._2;
+      }
+      this.early = rule.isEarly();
+      this.rateBoundary = (long) (rule.getRate() * MOD_FACTOR);
+      // a burst of one second of traces
+      this.rateLimiter = rule.getRateLimit() > 0 ?
+          new TokenBucket(rule.getRateLimit(), Math.max(1, rule.getRateLimit())) : null;
+      this.durationThresholdMicros = rule.getDurationThresholdMicros();
+    }
+
+    private boolean matches(SpanTags spanTags, SpanTags globalTags) {
+      if (service != null) {
+        String spanService = spanTags.getSingleValued(SERVICE_TAG_KEY);
+        if (spanService == null) {
+          spanService = globalTags.getSingleValued(SERVICE_TAG_KEY);
+        }
+        if (!service.equals(spanService)) {
+          return false;
+        }
+      }
+      for (int i = 0; i < tags.length; i += 2) {
+        if (!spanTags.contains(tags[i], tags[i + 1]) &&
+            !globalTags.contains(tags[i], tags[i + 1])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Decides whether a span is sampled when it starts.
+     *
+     * @param traceId the least significant bits of the trace id
+     */
+    boolean sampleOnStart(long traceId) {
+      return early && Math.abs(traceId % MOD_FACTOR) < rateBoundary &&
+          (rateLimiter == null || rateLimiter.tryAcquire());
+    }
+
+    /**
+     * Decides whether a span that was not sampled when it started is sampled when it finishes.
+     *
+     * @param durationMicros the duration of the span
+     * @param defaultValue   the decision if the rule has no duration threshold
+     */
+    boolean sampleOnFinish(long durationMicros, boolean defaultValue) {
+      return durationThresholdMicros < 0 ? defaultValue : durationMicros > durationThresholdMicros;
+    }
+
+    /**
+     * @return whether the rule may sample a span when it finishes that it did not sample on start
+     */
+    boolean samplesOnFinish() {
+      return durationThresholdMicros >= 0;
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.opentracing.reporting.Reporter;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Collects the finished spans of each thread in a small buffer of its own, and hands the buffer
+ * over to the reporter through {@link Reporter#report(List)} once it is full or its oldest span
+ * has waited for the maximum delay. The reporter is then called, and coordinates with its
+ * sending threads, once per batch instead of once per span.
+ *
+ * The buffer of a thread is swapped out of its batch by whichever thread uses it, the owner
+ * adding a span or the flushing thread handing over the buffers of threads that stopped finishing
+ * spans, so that no thread ever waits on a lock. The reporter is called outside of the swap.
+ */
+class SpanBatcher {
+
+  private static final Logger logger = Logger.getLogger(SpanBatcher.class.getName());
+
+  private final Reporter reporter;
+  private final int batchSize;
+  private final long maxDelayNanos;
+  private final LongSupplier nanoTime;
+  private final ThreadLocal<Batch> batches = ThreadLocal.withInitial(this::newBatch);
+  private final Set<Batch> allBatches = ConcurrentHashMap.newKeySet();
+  @Nullable
+  private final ScheduledExecutorService flusher;
+  private volatile boolean closed;
+
+  /**
+   * @param reporter       the reporter the batches are handed to
+   * @param batchSize      the number of spans after which a batch is handed over
+   * @param maxDelayMillis the time after which a batch that is not full is handed over
+   */
+  SpanBatcher(Reporter reporter, int batchSize, long maxDelayMillis) {
+    this(reporter, batchSize, maxDelayMillis, System::nanoTime, true);
+  }
+
+  SpanBatcher(Reporter reporter, int batchSize, long maxDelayMillis, LongSupplier nanoTime,
+              boolean flush) {
+    this.reporter = reporter;
+    this.batchSize = batchSize;
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    this.nanoTime = nanoTime;
+    if (flush) {
+      flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wavefront-span-batcher");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long period = Math.max(1, maxDelayMillis / 2);
+      flusher.scheduleWithFixedDelay(this::flushSafely, period, period, TimeUnit.MILLISECONDS);
+    } else {
+      flusher = null;
+    }
+  }
+
+  /**
+   * Adds a finished span to the batch of the calling thread, handing the batch over if it is
+   * full.
+   */
+  void add(FinishedSpan span) {
+    if (closed) {
+      reportNow(span);
+      return;
+    }
+    Batch batch = batches.get();
+    SpanList spans = batch.claim();
+    if (spans.isEmpty()) {
+      spans.firstAddedAt = nanoTime.getAsLong();
+    }
+    spans.add(span);
+    if (spans.size() >= batchSize) {
+      handOver(spans);
+    }
+    batch.release(spans);
+    if (closed) {
+      // close() may have handed over the batches before the span was added
+      handOver(batch);
+    }
+  }
+
+  /**
+   * Hands over the batches whose oldest span has waited for the maximum delay, and forgets the
+   * empty batches of threads that have terminated.
+   */
+  void flushExpired() {
+    long now = nanoTime.getAsLong();
+    Iterator<Batch> iterator = allBatches.iterator();
+    while (iterator.hasNext()) {
+      Batch batch = iterator.next();
+      SpanList spans = batch.steal();
+      if (spans == null) {
+        // the owner is adding a span
+        continue;
+      }
+      if (!spans.isEmpty() && now - spans.firstAddedAt >= maxDelayNanos) {
+        handOver(spans);
+      }
+      giveBack(batch, spans);
+      if (batch.owner.get() == null && batch.isEmpty()) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Hands over every batch that holds spans.
+   */
+  void flushAll() {
+    for (Batch batch : allBatches) {
+      handOver(batch);
+    }
+  }
+
+  /**
+   * Hands over every batch and stops the flushing thread. Spans added afterwards are reported
+   * one by one.
+   */
+  void close() {
+    closed = true;
+    if (flusher != null) {
+      flusher.shutdownNow();
+    }
+    flushAll();
+  }
+
+  int getBatchCount() {
+    return allBatches.size();
+  }
+
+  private Batch newBatch() {
+    Batch batch = new Batch(Thread.currentThread(), batchSize);
+    allBatches.add(batch);
+    return batch;
+  }
+
+  private void flushSafely() {
+    try {
+      flushExpired();
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Error handing over span batches", t);
+    }
+  }
+
+  private void reportNow(FinishedSpan span) {
+    try {
+      reporter.report(span);
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Error reporting span", ex);
+    }
+  }
+
+  /** Hands over the spans of a batch, unless its owner is adding a span. */
+  private void handOver(Batch batch) {
+    SpanList spans = batch.steal();
+    if (spans != null) {
+      if (!spans.isEmpty()) {
+        handOver(spans);
+      }
+      giveBack(batch, spans);
+    }
+  }
+
+  /**
+   * Puts back spans taken from a batch. If the owner started a new list meanwhile, the taken
+   * spans are older than any of its spans, and are handed over right away.
+   */
+  private void giveBack(Batch batch, SpanList spans) {
+    if (!batch.giveBack(spans) && !spans.isEmpty()) {
+      handOver(spans);
+    }
+  }
+
+  /** Reports and clears spans that the calling thread took from their batch. */
+  private void handOver(SpanList spans) {
+    try {
+      reporter.report(spans);
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Error reporting spans", ex);
+    } finally {
+      spans.clear();
+    }
+  }
+
+  /** A list of spans that knows when its first span was added. */
+  private static final class SpanList extends ArrayList<FinishedSpan> {
+    private long firstAddedAt;
+
+    SpanList(int capacity) {
+      super(capacity);
+    }
+  }
+
+  /**
+   * The spans of one thread. Their list is used by one thread at a time, which takes it out of
+   * the batch with an atomic swap and puts it back once done.
+   */
+  private static final class Batch {
+    private final WeakReference<Thread> owner;
+    private final int batchSize;
+    private final AtomicReference<SpanList> spans;
+
+    Batch(Thread owner, int batchSize) {
+      this.owner = new WeakReference<>(owner);
+      this.batchSize = batchSize;
+      this.spans = new AtomicReference<>(new SpanList(batchSize));
+    }
+
+    /** Takes the list for the owner, or starts a new one while the flushing thread has it. */
+    SpanList claim() {
+      SpanList claimed = spans.getAndSet(null);
+      return claimed != null ? claimed : new SpanList(batchSize);
+    }
+
+    /**
+     * Puts back the list of the owner. If the flushing thread put back the list the owner
+     * could not claim, its older spans are moved in front of the spans of the owner.
+     */
+    void release(SpanList claimed) {
+      while (!spans.compareAndSet(null, claimed)) {
+        SpanList other = spans.getAndSet(null);
+        if (other != null && !other.isEmpty()) {
+          other.addAll(claimed);
+          claimed = other;
+        }
+      }
+    }
+
+    /** Takes the list for the flushing thread, or null while the owner has it. */
+    @Nullable
+    SpanList steal() {
+      return spans.getAndSet(null);
+    }
+
+    /**
+     * Puts back a list taken by the flushing thread.
+     *
+     * @return false if the owner started a new list meanwhile
+     */
+    boolean giveBack(SpanList stolen) {
+      return spans.compareAndSet(null, stolen);
+    }
+
+    boolean isEmpty() {
+      SpanList current = spans.get();
+      return current != null && current.isEmpty();
+    }
+  }
+}
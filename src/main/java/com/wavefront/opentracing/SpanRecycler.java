@@ -0,0 +1,74 @@
+package com.wavefront.opentracing;
+
+/**
+ * Thread-local pools of {@link WavefrontSpanBuilder} and {@link WavefrontSpan} instances, used by
+ * a {@link WavefrontTracer} built with span recycling enabled.
+ *
+ * Ownership is handed off as follows:
+ * <ul>
+ * <li>A builder belongs to the caller of {@link WavefrontTracer#buildSpan(String)} until
+ * {@link WavefrontSpanBuilder#start()} returns, and then goes back to the pool.</li>
+ * <li>A span belongs to the caller until {@code finish()} returns, and then goes back to the pool
+ * of the finishing thread. Reporters get the span for the duration of the report call only and
+ * must keep its {@link FinishedSpan} snapshot rather than the span itself.</li>
+ * <li>Span contexts are immutable and shared with child spans and propagators, so they are never
+ * recycled.</li>
+ * </ul>
+ * A recycled instance throws {@link IllegalStateException} when used until it is handed out
+ * again. With use-after-recycle detection enabled, recycled instances are never handed out again,
+ * so every later use through a stale reference throws.
+ */
+final class SpanRecycler {
+
+  /** The maximum number of builders, and of spans, pooled per thread. */
+  static final int MAX_POOLED = 64;
+
+  private final WavefrontTracer tracer;
+  private final boolean detectUseAfterRecycle;
+  private final ThreadLocal<Pool> pools = ThreadLocal.withInitial(Pool::new);
+
+  SpanRecycler(WavefrontTracer tracer, boolean detectUseAfterRecycle) {
+    this.tracer = tracer;
+    this.detectUseAfterRecycle = detectUseAfterRecycle;
+  }
+
+  WavefrontSpanBuilder acquireBuilder(String operationName) {
+    Pool pool = pools.get();
+    WavefrontSpanBuilder builder = pool.numBuilders == 0 ? new WavefrontSpanBuilder(tracer, this) :
+        pool.builders[--pool.numBuilders];
+    pool.builders[pool.numBuilders] = null;
+    builder.reuse(operationName);
+    return builder;
+  }
+
+  void release(WavefrontSpanBuilder builder) {
+    builder.recycle();
+    Pool pool = pools.get();
+    if (!detectUseAfterRecycle && pool.numBuilders < MAX_POOLED) {
+      pool.builders[pool.numBuilders++] = builder;
+    }
+  }
+
+  WavefrontSpan acquireSpan() {
+    Pool pool = pools.get();
+    WavefrontSpan span = pool.numSpans == 0 ? new WavefrontSpan(tracer, this) :
+        pool.spans[--pool.numSpans];
+    pool.spans[pool.numSpans] = null;
+    return span;
+  }
+
+  void release(WavefrontSpan span) {
+    span.recycle();
+    Pool pool = pools.get();
+    if (!detectUseAfterRecycle && pool.numSpans < MAX_POOLED) {
+      pool.spans[pool.numSpans++] = span;
+    }
+  }
+
+  private static final class Pool {
+    private final WavefrontSpanBuilder[] builders = new WavefrontSpanBuilder[MAX_POOLED];
+    private final WavefrontSpan[] spans = new WavefrontSpan[MAX_POOLED];
+    private int numBuilders = 0;
+    private int numSpans = 0;
+  }
+}
@@ -0,0 +1,396 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.sdk.common.Constants;
+import com.wavefront.sdk.common.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import io.opentracing.tag.Tags;
+
+import static com.wavefront.sdk.common.Constants.COMPONENT_TAG_KEY;
+import static com.wavefront.sdk.common.Constants.DEBUG_TAG_KEY;
+
+/**
+ * Compact, ordered store of the tags of a span or span builder.
+ *
+ * Tags are kept in parallel key and value arrays. The single-valued keys (application, service,
+ * cluster and shard) have fixed slots pointing at their current entry, so replacing their value
+ * is constant time: the previous entry is tombstoned and the new one appended, which keeps the
+ * order in which {@link #toList()} returns the tags. The tracer's global tags are held once in a
+ * frozen store that every span references as its prefix instead of copying it.
+ *
+ * Boolean and boxed primitive values are stored as they are, and only converted to strings when
+ * the tags are read as strings, typically when a sampled span is reported. The tags of spans that
+ * are never reported are therefore never formatted.
+ */
+@NotThreadSafe
+final class SpanTags {
+
+  private static final String[] NO_STRINGS = new String[0];
+  private static final Object[] NO_VALUES = new Object[0];
+  private static final int INITIAL_CAPACITY = 8;
+  private static final int NUM_SLOTS = 4;
+
+  /** The global tags shared as a prefix, or null if this store is a prefix itself. */
+  @Nullable
+  private final SpanTags prefix;
+  private String[] keys = NO_STRINGS;
+  private Object[] values = NO_VALUES;
+  /** The number of entries, including tombstones. */
+  private int size = 0;
+  private int tombstones = 0;
+  /** The entry index of every single-valued key, created on first use. */
+  @Nullable
+  private int[] slots = null;
+  /** The slots of the prefix that are hidden because this store replaced their value. */
+  private int maskedPrefixSlots = 0;
+  @Nullable
+  private List<Pair<String, String>> list = null;
+
+  // effects of a frozen store on the spans using it as their prefix
+  @Nullable
+  private String componentTagValue = null;
+  private boolean debug = false;
+  private boolean error = false;
+
+  SpanTags(@Nullable SpanTags prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * Creates a frozen store of global tags, to be used as the prefix of span tag stores.
+   *
+   * @param tags the global tags, applied in order as if they were set on a span
+   * @return the frozen store
+   */
+  static SpanTags frozen(List<Pair<String, String>> tags) {
+    SpanTags frozen = new SpanTags(null);
+    for (Pair<String, String> tag : tags) {
+      frozen.add(tag._1, tag._2);
+      if (COMPONENT_TAG_KEY.equals(tag._1)) {
+        frozen.componentTagValue = tag._2;
+      } else if (DEBUG_TAG_KEY.equals(tag._1) && "true".equals(tag._2)) {
+        frozen.debug = true;
+      } else if (Tags.ERROR.getKey().equals(tag._1)) {
+        frozen.error = true;
+      }
+    }
+    frozen.compact();
+    return frozen;
+  }
+
+  /**
+   * Gets the value to store for a tag value, converting it to a string unless it is a string,
+   * a boolean or a boxed primitive number.
+   *
+   * @return the value to store, or null if the value is null or its string form is empty
+   */
+  @Nullable
+  static Object tagValue(@Nullable Object value) {
+    if (value == null || value instanceof Boolean || value instanceof Integer ||
+        value instanceof Long || value instanceof Double || value instanceof Float ||
+        value instanceof Short || value instanceof Byte) {
+      return value;
+    }
+    String string = value.toString();
+    return string == null || string.isEmpty() ? null : string;
+  }
+
+  /**
+   * Gets the string form of a stored tag value.
+   */
+  static String stringValue(Object value) {
+    return value instanceof String ? (String) value : value.toString();
+  }
+
+  /**
+   * Returns the fixed slot of a single-valued tag key, or -1 if the key is multi-valued.
+   */
+  static int slotOf(String key) {
+    switch (key) {
+      case Constants.APPLICATION_TAG_KEY:
+        return 0;
+      case Constants.SERVICE_TAG_KEY:
+        return 1;
+      case Constants.CLUSTER_TAG_KEY:
+        return 2;
+      case Constants.SHARD_TAG_KEY:
+        return 3;
+      default:
+        return -1;
+    }
+  }
+
+  @Nullable
+  SpanTags getPrefix() {
+    return prefix;
+  }
+
+  @Nullable
+  String getComponentTagValue() {
+    return componentTagValue;
+  }
+
+  boolean isDebug() {
+    return debug;
+  }
+
+  boolean isError() {
+    return error;
+  }
+
+  /**
+   * Adds a tag. The value of a single-valued key replaces its previous value.
+   *
+   * @param key   the tag key
+   * @param value the tag value, as returned by {@link #tagValue(Object)}
+   */
+  void add(String key, Object value) {
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      if (slots == null) {
+        slots = new int[NUM_SLOTS];
+        Arrays.fill(slots, -1);
+      }
+      int previous = slots[slot];
+      if (previous >= 0) {
+        keys[previous] = null;
+        values[previous] = null;
+        tombstones++;
+      } else if (prefix != null && prefix.entryOf(slot) >= 0) {
+        maskedPrefixSlots |= 1 << slot;
+      }
+    }
+    if (size == keys.length) {
+      if (tombstones > size / 2) {
+        compact();
+      } else {
+        int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+      }
+    }
+    if (slot >= 0) {
+      slots[slot] = size;
+    }
+    keys[size] = key;
+    values[size] = value;
+    size++;
+    list = null;
+  }
+
+  /**
+   * Gets the value of a single-valued tag key.
+   *
+   * @return the value, or null if the key is multi-valued or not set
+   */
+  @Nullable
+  String getSingleValued(String key) {
+    int slot = slotOf(key);
+    if (slot < 0) {
+      return null;
+    }
+    int entry = entryOf(slot);
+    if (entry >= 0) {
+      return stringValue(values[entry]);
+    }
+    if (prefix != null && (maskedPrefixSlots & (1 << slot)) == 0) {
+      entry = prefix.entryOf(slot);
+      return entry < 0 ? null : stringValue(prefix.values[entry]);
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether this store, not counting the prefix, has a tag with the given key and value.
+   */
+  boolean contains(String key, String value) {
+    for (int i = 0; i < size; i++) {
+      if (key.equals(keys[i]) && value.equals(stringValue(values[i]))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of entries of this store, not counting the prefix, whose keys and values
+   * are read with {@link #keyAt(int)} and {@link #valueAt(int)}.
+   */
+  int entries() {
+    return size;
+  }
+
+  /**
+   * Gets the key of an entry, or null if the entry was replaced by a later one.
+   */
+  @Nullable
+  String keyAt(int entry) {
+    return keys[entry];
+  }
+
+  Object valueAt(int entry) {
+    return values[entry];
+  }
+
+  /**
+   * Returns the number of tags, including those of the prefix.
+   */
+  int size() {
+    int count = size - tombstones;
+    if (prefix != null) {
+      count += prefix.size() - Integer.bitCount(maskedPrefixSlots);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the tags in the order they were added, starting with those of the prefix.
+   *
+   * @return an unmodifiable list, cached until the next change
+   */
+  List<Pair<String, String>> toList() {
+    List<Pair<String, String>> cached = list;
+    if (cached != null) {
+      return cached;
+    }
+    int count = size();
+    if (count == 0) {
+      cached = Collections.emptyList();
+    } else {
+      List<Pair<String, String>> tags = new ArrayList<>(count);
+      if (prefix != null) {
+        for (int i = 0; i < prefix.size; i++) {
+          if (!isMaskedPrefixEntry(i)) {
+            tags.add(Pair.of(prefix.keys[i], stringValue(prefix.values[i])));
+          }
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        if (keys[i] != null) {
+          tags.add(Pair.of(keys[i], stringValue(values[i])));
+        }
+      }
+      cached = Collections.unmodifiableList(tags);
+    }
+    list = cached;
+    return cached;
+  }
+
+  /**
+   * Gets the tags whose key matches a filter, in the order of {@link #toList()}. Only the values
+   * of these tags are converted to strings.
+   *
+   * @return a new list
+   */
+  List<Pair<String, String>> toList(Predicate<String> keyFilter) {
+    List<Pair<String, String>> tags = new ArrayList<>();
+    if (prefix != null) {
+      for (int i = 0; i < prefix.size; i++) {
+        if (keyFilter.test(prefix.keys[i]) && !isMaskedPrefixEntry(i)) {
+          tags.add(Pair.of(prefix.keys[i], stringValue(prefix.values[i])));
+        }
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      if (keys[i] != null && keyFilter.test(keys[i])) {
+        tags.add(Pair.of(keys[i], stringValue(values[i])));
+      }
+    }
+    return tags;
+  }
+
+  /**
+   * Gets the tags as consecutive keys and values, in the order of {@link #toList()}.
+   *
+   * @return a new array, or null if there are no tags
+   */
+  @Nullable
+  String[] toArray() {
+    int count = size();
+    if (count == 0) {
+      return null;
+    }
+    String[] array = new String[count * 2];
+    int j = 0;
+    if (prefix != null) {
+      for (int i = 0; i < prefix.size; i++) {
+        if (!isMaskedPrefixEntry(i)) {
+          array[j++] = prefix.keys[i];
+          array[j++] = stringValue(prefix.values[i]);
+        }
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      if (keys[i] != null) {
+        array[j++] = keys[i];
+        array[j++] = stringValue(values[i]);
+      }
+    }
+    return array;
+  }
+
+  /**
+   * Removes all tags but those of the prefix, keeping the arrays for reuse.
+   */
+  void clear() {
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+    tombstones = 0;
+    if (slots != null) {
+      Arrays.fill(slots, -1);
+    }
+    maskedPrefixSlots = 0;
+    list = null;
+  }
+
+  private int entryOf(int slot) {
+    return slots == null ? -1 : slots[slot];
+  }
+
+  private boolean isMaskedPrefixEntry(int index) {
+    if (maskedPrefixSlots == 0) {
+      return false;
+    }
+    for (int slot = 0; slot < NUM_SLOTS; slot++) {
+      if ((maskedPrefixSlots & (1 << slot)) != 0 && prefix.entryOf(slot) == index) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void compact() {
+    int j = 0;
+    for (int i = 0; i < size; i++) {
+      if (keys[i] != null) {
+        if (slots != null) {
+          int slot = slotOf(keys[i]);
+          if (slot >= 0) {
+            slots[slot] = j;
+          }
+        }
+        keys[j] = keys[i];
+        values[j] = values[i];
+        j++;
+      }
+    }
+    Arrays.fill(keys, j, size, null);
+    Arrays.fill(values, j, size, null);
+    size = j;
+    tombstones = 0;
+  }
+
+  @Override
+  public String toString() {
+    return toList().toString();
+  }
+}
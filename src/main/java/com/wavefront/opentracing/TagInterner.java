@@ -0,0 +1,82 @@
+package com.wavefront.opentracing;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded dictionary of the tag strings of a {@link WavefrontTracer}, so that spans tagged with
+ * equal keys or low-cardinality values share one string instance instead of holding copies of it
+ * until they are reported.
+ *
+ * The dictionary is a table of two-entry sets indexed by the hash of the string. A string that is
+ * not found replaces the least recently added entry of its set, so rarely seen strings are
+ * evicted by frequent ones and the dictionary never grows. Lookups take no lock: a racing lookup
+ * at worst misses and returns its own instance, which is always correct since strings are
+ * immutable.
+ */
+final class TagInterner {
+
+  private final String[] table;
+  private final int mask;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param capacity the maximum number of strings held, rounded up to a power of two and to at
+   *                 least one set of two entries
+   */
+  TagInterner(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("invalid interning capacity: " + capacity);
+    }
+    int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+    this.table = new String[size];
+    this.mask = size - 2;
+  }
+
+  /**
+   * Gets the instance held for a string, adding the string if none is held.
+   *
+   * @param string the string to look up
+   * @return the held instance equal to the string, or the string itself
+   */
+  String intern(String string) {
+    int hash = string.hashCode();
+    int index = (hash ^ (hash >>> 16)) & mask;
+    String first = table[index];
+    if (string.equals(first)) {
+      hits.increment();
+      return first;
+    }
+    String second = table[index + 1];
+    if (string.equals(second)) {
+      hits.increment();
+      return second;
+    }
+    // the first entry of a set is the most recently added one
+    table[index + 1] = first;
+    table[index] = string;
+    misses.increment();
+    return string;
+  }
+
+  int capacity() {
+    return table.length;
+  }
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns the fraction of lookups that found the string, or 0 if there were no lookups.
+   */
+  double hitRate() {
+    long hitCount = hits.sum();
+    long total = hitCount + misses.sum();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+}
@@ -0,0 +1,339 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.internal.reporter.WavefrontInternalReporter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.DeltaCounter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
+import com.wavefront.opentracing.sampling.TailSamplingPolicy;
+import com.wavefront.opentracing.sampling.TraceSegment;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Holds the finished spans of each trace until every span of the trace that was started by this
+ * tracer has finished, and then keeps or drops them together by the tail sampling policies.
+ *
+ * The buffer is capped in estimated bytes. A segment that would grow the buffer past the cap is
+ * evicted, and no new segment is started while the buffer is full. Segments that are still open
+ * after the timeout are decided with the spans they have. Evicted segments, and spans of traces
+ * that are not buffered, are reported by their own sampling decision.
+ *
+ * Segments are keyed by the least significant bits of the trace id, which are random for every
+ * {@link com.wavefront.opentracing.id.IdGenerator}.
+ */
+class TailSamplingBuffer {
+
+  private static final Logger logger = Logger.getLogger(TailSamplingBuffer.class.getName());
+
+  /** The bytes counted for a segment besides its spans. */
+  private static final long SEGMENT_BYTES = 128;
+
+  private final TailSamplingPolicy[] policies;
+  private final long timeoutNanos;
+  private final long maxBytes;
+  private final Consumer<FinishedSpan> sink;
+  private final LongSupplier nanoTime;
+  private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+  private final AtomicLong bytes = new AtomicLong();
+  @Nullable
+  private final ScheduledExecutorService sweeper;
+
+  private final LongAdder kept = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+  private final LongAdder timedOut = new LongAdder();
+  private final LongAdder unbuffered = new LongAdder();
+  @Nullable
+  private DeltaCounter keptCounter;
+  @Nullable
+  private DeltaCounter droppedCounter;
+  @Nullable
+  private DeltaCounter evictedCounter;
+  @Nullable
+  private DeltaCounter timedOutCounter;
+  @Nullable
+  private DeltaCounter unbufferedCounter;
+
+  /**
+   * @param policies      the policies that keep a segment, of which any one suffices
+   * @param timeoutMillis the time after which an open segment is decided
+   * @param maxBytes      the cap on the estimated bytes of the buffered spans
+   * @param sink          receives the spans that are reported
+   */
+  TailSamplingBuffer(List<TailSamplingPolicy> policies, long timeoutMillis, long maxBytes,
+                     Consumer<FinishedSpan> sink) {
+    this(policies, timeoutMillis, maxBytes, sink, System::nanoTime, true);
+  }
+
+  TailSamplingBuffer(List<TailSamplingPolicy> policies, long timeoutMillis, long maxBytes,
+                     Consumer<FinishedSpan> sink, LongSupplier nanoTime, boolean sweep) {
+    this.policies = policies.toArray(new TailSamplingPolicy[0]);
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.maxBytes = maxBytes;
+    this.sink = sink;
+    this.nanoTime = nanoTime;
+    if (sweep) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wavefront-tail-sampling");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long period = Math.max(10, timeoutMillis / 2);
+      sweeper.scheduleWithFixedDelay(this::sweepSafely, period, period, TimeUnit.MILLISECONDS);
+    } else {
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Reports the buffer size and the decided segments as internal metrics.
+   */
+  void setMetricsReporter(WavefrontInternalReporter metricsReporter) {
+    metricsReporter.newGauge(new MetricName("tail_sampling.buffer.bytes",
+        Collections.emptyMap()), () -> (() -> (double) bytes.get()));
+    metricsReporter.newGauge(new MetricName("tail_sampling.buffer.traces",
+        Collections.emptyMap()), () -> (() -> (double) segments.size()));
+    keptCounter = metricsReporter.newDeltaCounter(new MetricName(
+        "tail_sampling.segments.kept", Collections.emptyMap()));
+    droppedCounter = metricsReporter.newDeltaCounter(new MetricName(
+        "tail_sampling.segments.dropped", Collections.emptyMap()));
+    evictedCounter = metricsReporter.newDeltaCounter(new MetricName(
+        "tail_sampling.segments.evicted", Collections.emptyMap()));
+    timedOutCounter = metricsReporter.newDeltaCounter(new MetricName(
+        "tail_sampling.segments.timed_out", Collections.emptyMap()));
+    unbufferedCounter = metricsReporter.newDeltaCounter(new MetricName(
+        "tail_sampling.spans.unbuffered", Collections.emptyMap()));
+  }
+
+  /**
+   * Registers a started span, opening the segment of its trace if needed.
+   *
+   * @return the segment that the span joined, to be passed to {@link #spanFinished}, or null if
+   *     the span is reported by its own sampling decision
+   */
+  @Nullable
+  Segment spanStarted(long traceIdLow) {
+    while (true) {
+      Segment segment = segments.get(traceIdLow);
+      if (segment == null) {
+        if (bytes.get() >= maxBytes) {
+          // the span is reported by its own sampling decision
+          count(unbuffered, unbufferedCounter);
+          return null;
+        }
+        Segment newSegment = new Segment(nanoTime.getAsLong());
+        segment = segments.putIfAbsent(traceIdLow, newSegment);
+        if (segment == null) {
+          bytes.addAndGet(SEGMENT_BYTES);
+          segment = newSegment;
+        }
+      }
+      synchronized (segment) {
+        if (!segment.closed) {
+          segment.open++;
+          return segment;
+        }
+      }
+      // the segment was decided in the meantime, so start a new one
+      segments.remove(traceIdLow, segment);
+    }
+  }
+
+  /**
+   * Adds a finished span to the segment it joined when it started, and decides the segment once
+   * all its spans have finished. A span whose segment was already decided, or that joined none,
+   * is reported by its own sampling decision, and never counts towards a newer segment of its
+   * trace.
+   *
+   * @param span    the finished span
+   * @param sampled the sampling decision of the span itself
+   * @param segment the segment returned by {@link #spanStarted} for the span
+   */
+  void spanFinished(FinishedSpan span, boolean sampled, @Nullable Segment segment) {
+    if (segment == null) {
+      report(span, sampled);
+      return;
+    }
+    long spanBytes = span.getEstimatedBytes();
+    boolean complete;
+    boolean evict;
+    synchronized (segment) {
+      if (segment.closed) {
+        report(span, sampled);
+        return;
+      }
+      evict = bytes.addAndGet(spanBytes) > maxBytes;
+      segment.add(span, sampled, spanBytes);
+      complete = --segment.open <= 0;
+      if (!complete && !evict) {
+        return;
+      }
+      segment.closed = true;
+    }
+    segments.remove(span.getTraceIdLow(), segment);
+    if (evict) {
+      count(evicted, evictedCounter);
+      reportSampled(segment);
+    } else {
+      decide(segment, true);
+    }
+  }
+
+  /**
+   * Decides the segments that have been open for longer than the timeout.
+   */
+  void sweep() {
+    long now = nanoTime.getAsLong();
+    for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+      Segment segment = entry.getValue();
+      if (now - segment.openedAt < timeoutNanos) {
+        continue;
+      }
+      synchronized (segment) {
+        if (segment.closed) {
+          continue;
+        }
+        segment.closed = true;
+      }
+      segments.remove(entry.getKey(), segment);
+      count(timedOut, timedOutCounter);
+      decide(segment, false);
+    }
+  }
+
+  /**
+   * Decides every open segment and stops the sweeping thread.
+   */
+  void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+    for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+      Segment segment = entry.getValue();
+      synchronized (segment) {
+        if (segment.closed) {
+          continue;
+        }
+        segment.closed = true;
+      }
+      segments.remove(entry.getKey(), segment);
+      decide(segment, false);
+    }
+  }
+
+  long getBytes() {
+    return bytes.get();
+  }
+
+  int getTraceCount() {
+    return segments.size();
+  }
+
+  long getKeptCount() {
+    return kept.sum();
+  }
+
+  long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  long getEvictedCount() {
+    return evicted.sum();
+  }
+
+  long getTimedOutCount() {
+    return timedOut.sum();
+  }
+
+  long getUnbufferedCount() {
+    return unbuffered.sum();
+  }
+
+  private void sweepSafely() {
+    try {
+      sweep();
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Error deciding timed out trace segments", t);
+    }
+  }
+
+  private void decide(Segment segment, boolean complete) {
+    if (segment.spans.isEmpty()) {
+      bytes.addAndGet(-segment.bytes);
+      return;
+    }
+    TraceSegment traceSegment = new TraceSegment(segment.spans, complete);
+    for (TailSamplingPolicy policy : policies) {
+      if (policy.keep(traceSegment)) {
+        count(kept, keptCounter);
+        bytes.addAndGet(-segment.bytes);
+        for (FinishedSpan span : segment.spans) {
+          sink.accept(span);
+        }
+        return;
+      }
+    }
+    count(dropped, droppedCounter);
+    reportSampled(segment);
+  }
+
+  private void reportSampled(Segment segment) {
+    bytes.addAndGet(-segment.bytes);
+    for (int i = segment.sampled.nextSetBit(0); i >= 0; i = segment.sampled.nextSetBit(i + 1)) {
+      sink.accept(segment.spans.get(i));
+    }
+  }
+
+  private void report(FinishedSpan span, boolean sampled) {
+    if (sampled) {
+      sink.accept(span);
+    }
+  }
+
+  private static void count(LongAdder adder, @Nullable DeltaCounter counter) {
+    adder.increment();
+    if (counter != null) {
+      counter.inc();
+    }
+  }
+
+  /** The spans of one trace, guarded by the segment itself. */
+  static final class Segment {
+    private final long openedAt;
+    private final List<FinishedSpan> spans = new ArrayList<>();
+    /** The indexes of the spans that were sampled when they finished. */
+    private final BitSet sampled = new BitSet();
+    /** The estimated bytes of the segment, including {@link #SEGMENT_BYTES}. */
+    private long bytes = SEGMENT_BYTES;
+    /** The number of started spans that have not finished. */
+    private int open;
+    private boolean closed;
+
+    Segment(long openedAt) {
+      this.openedAt = openedAt;
+    }
+
+    void add(FinishedSpan span, boolean spanSampled, long spanBytes) {
+      if (spanSampled) {
+        sampled.set(spans.size());
+      }
+      spans.add(span);
+      bytes += spanBytes;
+    }
+  }
+}
@@ -2,25 +2,19 @@ package com.wavefront.opentracing;
 
 import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.DeltaCounter;
 import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
-import com.wavefront.sdk.common.Constants;
 import com.wavefront.sdk.common.Pair;
 import com.wavefront.sdk.entities.tracing.SpanLog;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.ThreadSafe;
 
 import io.opentracing.Span;
 import io.opentracing.log.Fields;
@@ -33,75 +27,200 @@ import static com.wavefront.sdk.common.Constants.NULL_TAG_VAL;
 import static java.util.stream.Collectors.toMap;
 
 /**
- * Represents a thread-safe Wavefront trace span based on OpenTracing's {@link Span}.
+ * Represents a Wavefront trace span based on OpenTracing's {@link Span}.
+ *
+ * By default a span has a single writer: it must only be modified and read by one thread at a
+ * time, and is handed over to another thread through the usual happens-before edges, such as
+ * submitting a task to an executor. Its context is published through a volatile field, so that
+ * {@link #context()} and {@link #getBaggageItem(String)} can be called from any thread without
+ * locking. Spans that are modified by several threads at once must be built as thread-safe spans,
+ * see {@link WavefrontSpanBuilder#threadSafe()} and
+ * {@link WavefrontTracer.Builder#threadSafeSpans()}, which guard their state with the span's
+ * monitor.
  *
  * @author Vikram Raman (vikram@wavefront.com)
  */
-@ThreadSafe
 public class WavefrontSpan implements Span {
 
   private final WavefrontTracer tracer;
-  private final long startTimeMicros;
-  private final long startTimeNanos;
   @Nullable
-  private final List<Pair<String, String>> tags;
-  private final List<Reference> parents;
-  private final List<Reference> follows;
+  private final SpanRecycler recycler;
   @Nullable
   private final DeltaCounter spansDiscarded;
+  private long startTimeMicros;
+  private SpanTags tags;
+  private List<Reference> parents;
+  private List<Reference> follows;
 
-  @Nullable
-  private Map<String, Pair<String, String>> singleValuedTags;
-  private String operationName;
+  private volatile String operationName;
   private long durationMicroseconds;
-  private WavefrontSpanContext spanContext;
+  private volatile WavefrontSpanContext spanContext;
+  private boolean threadSafe;
   private Boolean forceSampling = null;
+  @Nullable
+  private SamplingRuleTable.Rule samplingRule;
+  @Nullable
+  private TailSamplingBuffer.Segment tailSamplingSegment;
+  // an unsampled span that defers converting its span logs, see WavefrontTracer#isLightweight
+  private volatile boolean lightweight = false;
   private boolean finished = false;
   private boolean isError = false;
   @Nullable
   private List<SpanLog> spanLogs;
+  // the span logs of a lightweight span, converted into spanLogs only if it is sampled
+  @Nullable
+  private List<DeferredSpanLog> deferredSpanLogs;
+  @Nullable
+  private volatile FinishedSpan finishedSpan;
+  private boolean recycled = false;
 
   // Store it as a member variable so that we can efficiently retrieve the component tag.
   private String componentTagValue = NULL_TAG_VAL;
 
-  private static Set<String> SINGLE_VALUED_TAG_KEYS = new HashSet<>(Arrays.asList(
-      Constants.APPLICATION_TAG_KEY, Constants.SERVICE_TAG_KEY, Constants.CLUSTER_TAG_KEY,
-      Constants.SHARD_TAG_KEY));
-
   WavefrontSpan(WavefrontTracer tracer, String operationName, WavefrontSpanContext spanContext,
-                long startTimeMicros, long startTimeNanos, List<Reference> parents,
-                List<Reference> follows, List<Pair<String, String>> tags) {
-    this.tracer = tracer;
-    this.operationName = operationName;
-    this.spanContext = spanContext;
-    this.startTimeMicros = startTimeMicros;
-    this.startTimeNanos = startTimeNanos;
-    this.parents = parents;
-    this.follows = follows;
+                long startTimeMicros, List<Reference> parents, List<Reference> follows,
+                @Nullable SpanTags tags, boolean threadSafe,
+                @Nullable SamplingRuleTable.Rule samplingRule,
+                @Nullable TailSamplingBuffer.Segment tailSamplingSegment, boolean lightweight) {
+    this(tracer, null);
+    init(operationName, spanContext, startTimeMicros, parents, follows, tags, threadSafe,
+        samplingRule, tailSamplingSegment, lightweight);
+  }
 
+  /**
+   * Creates a span to be pooled by the given recycler. It cannot be used until it is reused.
+   */
+  WavefrontSpan(WavefrontTracer tracer, @Nullable SpanRecycler recycler) {
+    this.tracer = tracer;
+    this.recycler = recycler;
+    if (recycler != null) {
+      this.recycled = true;
+    }
     spansDiscarded = tracer.getWfInternalReporter() == null ? null :
         tracer.getWfInternalReporter().newDeltaCounter(
             new MetricName("spans.discarded", Collections.emptyMap()));
+  }
+
+  private void init(String operationName, WavefrontSpanContext spanContext, long startTimeMicros,
+                    @Nullable List<Reference> parents, @Nullable List<Reference> follows,
+                    @Nullable SpanTags tags, boolean threadSafe,
+                    @Nullable SamplingRuleTable.Rule samplingRule,
+                    @Nullable TailSamplingBuffer.Segment tailSamplingSegment,
+                    boolean lightweight) {
+    this.threadSafe = threadSafe;
+    this.samplingRule = samplingRule;
+    this.tailSamplingSegment = tailSamplingSegment;
+    this.operationName = operationName;
+    this.spanContext = spanContext;
+    this.startTimeMicros = startTimeMicros;
 
-    List<Pair<String, String>> globalTags = tracer.getTags();
-    this.tags = (globalTags == null || globalTags.isEmpty()) && (tags == null || tags.isEmpty()) ?
-      null : new ArrayList<>();
-    this.singleValuedTags = null;
-    this.spanLogs = null;
-    if (globalTags != null) {
-      for (Pair<String, String> tag : globalTags) {
-        setTagObject(tag._1, tag._2);
+    if (recycler == null) {
+      this.parents = parents;
+      this.follows = follows;
+      this.tags = new SpanTags(tracer.getGlobalTags());
+    } else {
+      // a pooled span keeps its own lists, as the builder clears its lists once it is recycled
+      this.parents = copyReferences(parents, this.parents);
+      this.follows = copyReferences(follows, this.follows);
+      if (this.tags == null) {
+        this.tags = new SpanTags(tracer.getGlobalTags());
       }
     }
+
+    // the global tags are shared rather than copied, so only their effects are applied here
+    SpanTags globalTags = tracer.getGlobalTags();
+    if (globalTags.getComponentTagValue() != null) {
+      componentTagValue = globalTags.getComponentTagValue();
+    }
+    if (globalTags.isError()) {
+      isError = true;
+    }
+    if (globalTags.isDebug()) {
+      forceSampling = Boolean.TRUE;
+      this.spanContext = spanContext.withSamplingDecision(true);
+    }
+    this.lightweight = lightweight && forceSampling != Boolean.TRUE;
+    // the span is not shared yet, so there is no need to lock even for a thread-safe span
     if (tags != null) {
-      for (Pair<String, String> tag : tags) {
-        setTagObject(tag._1, tag._2);
+      for (int i = 0; i < tags.entries(); i++) {
+        String key = tags.keyAt(i);
+        if (key != null) {
+          addTag(key, tags.valueAt(i));
+        }
       }
     }
   }
 
+  /**
+   * Initializes a pooled span for a newly started span.
+   */
+  void reuse(String operationName, WavefrontSpanContext spanContext, long startTimeMicros,
+             @Nullable List<Reference> parents, @Nullable List<Reference> follows,
+             @Nullable SpanTags tags, boolean threadSafe,
+             @Nullable SamplingRuleTable.Rule samplingRule,
+             @Nullable TailSamplingBuffer.Segment tailSamplingSegment, boolean lightweight) {
+    recycled = false;
+    init(operationName, spanContext, startTimeMicros, parents, follows, tags, threadSafe,
+        samplingRule, tailSamplingSegment, lightweight);
+  }
+
+  /**
+   * Clears a pooled span before it goes back to its pool. It cannot be used until it is reused.
+   */
+  void recycle() {
+    recycled = true;
+    operationName = null;
+    spanContext = null;
+    durationMicroseconds = 0;
+    forceSampling = null;
+    samplingRule = null;
+    tailSamplingSegment = null;
+    lightweight = false;
+    finished = false;
+    isError = false;
+    finishedSpan = null;
+    componentTagValue = NULL_TAG_VAL;
+    if (tags != null) {
+      tags.clear();
+    }
+    if (spanLogs != null) {
+      spanLogs.clear();
+    }
+    if (deferredSpanLogs != null) {
+      deferredSpanLogs.clear();
+    }
+    if (parents != null) {
+      parents.clear();
+    }
+    if (follows != null) {
+      follows.clear();
+    }
+  }
+
+  @Nullable
+  private static List<Reference> copyReferences(@Nullable List<Reference> from,
+                                                @Nullable List<Reference> to) {
+    if (from == null || from.isEmpty()) {
+      return to;
+    }
+    if (to == null) {
+      to = new ArrayList<>(from.size());
+    }
+    for (int i = 0; i < from.size(); i++) {
+      to.add(from.get(i));
+    }
+    return to;
+  }
+
+  private void checkNotRecycled() {
+    if (recycled) {
+      throw new IllegalStateException("span used after finish() with span recycling enabled");
+    }
+  }
+
   @Override
-  public synchronized WavefrontSpanContext context() {
+  public WavefrontSpanContext context() {
+    checkNotRecycled();
     return spanContext;
   }
 
@@ -125,65 +244,80 @@ public class WavefrontSpan implements Span {
     return setTagObject(tag.getKey(), value);
   }
 
-  private synchronized WavefrontSpan setTagObject(String key, Object value) {
-    if (key != null && !key.isEmpty() && value != null && value.toString() != null &&
-        !(value.toString().isEmpty())) {
-      Pair<String, String> tag = Pair.of(key, value.toString());
-
-      // if tag should be single-valued, replace the previous value if it exists
-      if (isSingleValuedTagKey(key)) {
-        if (singleValuedTags == null) {
-          singleValuedTags = new HashMap<>();
-        }
-        if (singleValuedTags.containsKey(key)) {
-          tags.remove(singleValuedTags.get(key));
-        }
-        singleValuedTags.put(key, tag);
+  private WavefrontSpan setTagObject(String key, Object value) {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        setTagInternal(key, value);
       }
+    } else {
+      setTagInternal(key, value);
+    }
+    return this;
+  }
 
-      tags.add(tag);
+  private void setTagInternal(String key, Object value) {
+    Object tagValue = SpanTags.tagValue(value);
+    if (key != null && !key.isEmpty() && tagValue != null) {
+      key = tracer.internTagKey(key);
+      addTag(key, tracer.internTagValue(key, tagValue));
+    }
+  }
 
-      if (key.equals(COMPONENT_TAG_KEY)) {
-        componentTagValue = value.toString();
-      }
+  /**
+   * Adds a tag whose value was returned by {@link SpanTags#tagValue(Object)}. Typed values are
+   * stored as they are and only formatted when the span is reported.
+   */
+  private void addTag(String key, Object value) {
+    // the value of a single-valued tag replaces the previous value if it exists
+    tags.add(key, value);
 
-      // allow span to be reported if sampling.priority is > 0.
-      if (Tags.SAMPLING_PRIORITY.getKey().equals(key) && value instanceof Number) {
-        int priority = ((Number) value).intValue();
-        forceSampling = priority > 0 ? Boolean.TRUE : Boolean.FALSE;
+    if (key.equals(COMPONENT_TAG_KEY)) {
+      componentTagValue = SpanTags.stringValue(value);
+    }
+
+    // allow span to be reported if sampling.priority is > 0.
+    if (Tags.SAMPLING_PRIORITY.getKey().equals(key) && value instanceof Number) {
+      int priority = ((Number) value).intValue();
+      forceSampling = priority > 0 ? Boolean.TRUE : Boolean.FALSE;
+      spanContext = spanContext.withSamplingDecision(forceSampling);
+    }
+
+    // allow span to be reported if debug is set to true.
+    if (forceSampling == null || !forceSampling) {
+      if (key.equals(DEBUG_TAG_KEY) && (Boolean.TRUE.equals(value) || "true".equals(value))) {
+        forceSampling = Boolean.TRUE;
         spanContext = spanContext.withSamplingDecision(forceSampling);
       }
+    }
 
-      // allow span to be reported if debug is set to true.
-      if (forceSampling == null || !forceSampling) {
-        if (key.equals(DEBUG_TAG_KEY) && value != null && value.toString().equals("true")) {
-          forceSampling = Boolean.TRUE;
-          spanContext = spanContext.withSamplingDecision(forceSampling);
-        }
-      }
+    if (Tags.ERROR.getKey().equals(key)) {
+      isError = true;
+    }
 
-      if (Tags.ERROR.getKey().equals(key)) {
-        isError = true;
+    // allow span to be reported if error tag is set.
+    if (forceSampling == null && Tags.ERROR.getKey().equals(key)) {
+      if (Boolean.TRUE.equals(value)) {
+        forceSampling = Boolean.TRUE;
+        spanContext = spanContext.withSamplingDecision(forceSampling);
       }
+    }
 
-      // allow span to be reported if error tag is set.
-      if (forceSampling == null && Tags.ERROR.getKey().equals(key)) {
-        if (value instanceof Boolean && (Boolean) value) {
-          forceSampling = Boolean.TRUE;
-          spanContext = spanContext.withSamplingDecision(forceSampling);
-        }
-      }
+    // a sampled span is reported with the span logs it deferred
+    if (lightweight && forceSampling == Boolean.TRUE) {
+      lightweight = false;
+      convertDeferredSpanLogs();
     }
-    return this;
   }
 
   public boolean isError() {
+    checkNotRecycled();
     return isError;
   }
 
   @Override
   public WavefrontSpan log(Map<String, ?> map) {
-    updateSpanLogsInternal(getCurrentTimeMicros(), map);
+    updateSpanLogsInternal(tracer.currentTimeMicros(), map);
     return this;
   }
 
@@ -195,7 +329,8 @@ public class WavefrontSpan implements Span {
 
   @Override
   public WavefrontSpan log(String s) {
-    updateSpanLogsInternal(getCurrentTimeMicros(), Collections.singletonMap(Fields.EVENT, s));
+    updateSpanLogsInternal(tracer.currentTimeMicros(),
+        Collections.singletonMap(Fields.EVENT, s));
     return this;
   }
 
@@ -205,88 +340,254 @@ public class WavefrontSpan implements Span {
     return this;
   }
 
-  private synchronized WavefrontSpan updateSpanLogsInternal(
-      long currentTimeMicros, Map<String, ?> fields) {
+  private WavefrontSpan updateSpanLogsInternal(long currentTimeMicros, Map<String, ?> fields) {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        addSpanLog(currentTimeMicros, fields);
+      }
+    } else {
+      addSpanLog(currentTimeMicros, fields);
+    }
+    return this;
+  }
+
+  private void addSpanLog(long timestampMicros, @Nullable Map<String, ?> fields) {
+    if (lightweight) {
+      // span logs are only reported, so an unsampled span keeps the fields as they are
+      if (deferredSpanLogs == null) {
+        deferredSpanLogs = new ArrayList<>();
+      }
+      deferredSpanLogs.add(new DeferredSpanLog(timestampMicros, fields));
+      return;
+    }
+    addSpanLog(toSpanLog(timestampMicros, fields));
+  }
+
+  @Nullable
+  private static SpanLog toSpanLog(long timestampMicros, @Nullable Map<String, ?> fields) {
+    return fields == null ? null : new SpanLog(timestampMicros, fields.entrySet().stream().collect(
+        toMap(Map.Entry::getKey, entry -> Objects.toString(entry.getValue(), ""))));
+  }
+
+  private void convertDeferredSpanLogs() {
+    if (deferredSpanLogs != null && !deferredSpanLogs.isEmpty()) {
+      for (DeferredSpanLog deferred : deferredSpanLogs) {
+        addSpanLog(toSpanLog(deferred.timestampMicros, deferred.fields));
+      }
+      deferredSpanLogs.clear();
+    }
+  }
+
+  private void addSpanLog(@Nullable SpanLog spanLog) {
     if (spanLogs == null) {
       spanLogs = new ArrayList<>();
     }
-    if (fields != null) {
-      Map<String, String> finalFields = fields.entrySet().stream().collect(
-          toMap(Map.Entry::getKey, entry -> Objects.toString(entry.getValue(), "")));
-      spanLogs.add(new SpanLog(currentTimeMicros, finalFields));
+    if (spanLog != null) {
+      spanLogs.add(spanLog);
     }
-    return this;
   }
 
   @Override
-  public synchronized WavefrontSpan setBaggageItem(String key, String value) {
-    spanContext = spanContext.withBaggageItem(key, value);
+  public WavefrontSpan setBaggageItem(String key, String value) {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        spanContext = spanContext.withBaggageItem(key, value);
+      }
+    } else {
+      spanContext = spanContext.withBaggageItem(key, value);
+    }
     return this;
   }
 
   @Override
   @Nullable
-  public synchronized String getBaggageItem(String key) {
+  public String getBaggageItem(String key) {
+    checkNotRecycled();
     return this.spanContext.getBaggageItem(key);
   }
 
   @Override
-  public synchronized WavefrontSpan setOperationName(String s) {
+  public WavefrontSpan setOperationName(String s) {
+    checkNotRecycled();
     operationName = s;
     return this;
   }
 
   @Override
   public void finish() {
-    if (startTimeNanos != 0) {
-      long duration = System.nanoTime() - startTimeNanos;
-      doFinish(TimeUnit.NANOSECONDS.toMicros(duration));
-    } else {
-      // Ideally finish(finishTimeMicros) should be called if user provided startTimeMicros
-      finish(tracer.currentTimeMicros());
-    }
+    finish(tracer.currentTimeMicros());
   }
 
   @Override
   public void finish(long finishTimeMicros) {
+    checkNotRecycled();
     doFinish(finishTimeMicros-startTimeMicros);
   }
 
   private void doFinish(long durationMicros) {
-    synchronized (this) {
-      if (finished) {
-        return;
+    if (threadSafe) {
+      synchronized (this) {
+        if (!markFinished(durationMicros)) {
+          return;
+        }
       }
-      this.durationMicroseconds = durationMicros;
-      finished = true;
+    } else if (!markFinished(durationMicros)) {
+      return;
+    }
+    FinishPipeline finishPipeline = tracer.getFinishPipeline();
+    if (finishPipeline != null) {
+      finishPipeline.submit(this);
+    } else {
+      processFinish();
     }
+  }
 
-    // perform another sampling for duration based samplers
+  /**
+   * Samples and reports this finished span and its span-derived metrics, on the finishing thread
+   * or on a worker of the finish pipeline of the tracer.
+   */
+  void processFinish() {
+    long durationMicros = durationMicroseconds;
+    // perform another sampling for duration based samplers and sampling rules
     if (forceSampling == null && (!spanContext.isSampled() || !spanContext.getSamplingDecision())) {
-      boolean decision = tracer.sample(operationName,
-          spanContext.getTraceId().getLeastSignificantBits(), durationMicros/1000,
-          spanContext.isSampled() ? spanContext.getSamplingDecision() : true);
+      boolean defaultValue = spanContext.isSampled() ? spanContext.getSamplingDecision() : true;
+      boolean decision = samplingRule != null ?
+          samplingRule.sampleOnFinish(durationMicros, defaultValue) :
+          tracer.sampleOnFinish(operationName, spanContext.getTraceIdLow(), durationMicros / 1000,
+              defaultValue);
       spanContext = decision ? spanContext.withSamplingDecision(decision) : spanContext;
     }
-    // only report spans if the sampling decision allows it
-    if (spanContext.isSampled() && spanContext.getSamplingDecision()) {
+    boolean sampled = spanContext.isSampled() && spanContext.getSamplingDecision();
+    TailSamplingBuffer tailSamplingBuffer = tracer.getTailSamplingBuffer();
+    if (tailSamplingBuffer != null) {
+      // the spans of the trace segment are kept or dropped together once it is complete
+      finishedSpan = snapshot();
+      tailSamplingBuffer.spanFinished(finishedSpan, sampled, tailSamplingSegment);
+    } else if (sampled) {
+      // only report spans if the sampling decision allows it
+      finishedSpan = snapshot();
       tracer.reportSpan(this);
     } else if (spansDiscarded != null) {
       spansDiscarded.inc();
     }
     // irrespective of sampling, report wavefront-generated metrics/histograms to Wavefront
     tracer.reportWavefrontGeneratedData(this);
+    if (recycler != null) {
+      recycler.release(this);
+    }
+  }
+
+  /**
+   * Runs the bookkeeping of a finished span that the finish pipeline dropped: the span is not
+   * sampled or reported by itself, but still counts in the span-derived metrics and finishes its
+   * tail sampling segment, which may keep it.
+   */
+  void processDropped() {
+    TailSamplingBuffer tailSamplingBuffer = tracer.getTailSamplingBuffer();
+    if (tailSamplingBuffer != null) {
+      finishedSpan = snapshot();
+      tailSamplingBuffer.spanFinished(finishedSpan, false, tailSamplingSegment);
+    }
+    tracer.reportWavefrontGeneratedData(this);
+  }
+
+  private boolean markFinished(long durationMicros) {
+    checkNotRecycled();
+    if (finished) {
+      return false;
+    }
+    this.durationMicroseconds = durationMicros;
+    finished = true;
+    return true;
   }
 
-  public synchronized String getOperationName() {
+  /**
+   * Gets the immutable snapshot of this span that is handed to reporters. The snapshot is taken
+   * once when a reported span finishes; for any other span it reflects the current state.
+   *
+   * @return The snapshot of this span.
+   */
+  public FinishedSpan getFinishedSpan() {
+    checkNotRecycled();
+    FinishedSpan snapshot = finishedSpan;
+    if (snapshot != null) {
+      return snapshot;
+    }
+    if (threadSafe) {
+      synchronized (this) {
+        return snapshot();
+      }
+    }
+    return snapshot();
+  }
+
+  private FinishedSpan snapshot() {
+    convertDeferredSpanLogs();
+    long[] parentIds = spanIds(parents);
+    long[] followsIds = spanIds(follows);
+    String[] tagArray = tags.toArray();
+    long[] logTimestamps = null;
+    int[] logFieldEnds = null;
+    String[] logFields = null;
+    if (spanLogs != null && !spanLogs.isEmpty()) {
+      logTimestamps = new long[spanLogs.size()];
+      logFieldEnds = new int[spanLogs.size()];
+      int numFields = 0;
+      for (SpanLog spanLog : spanLogs) {
+        numFields += spanLog.getFields().size();
+      }
+      logFields = new String[numFields * 2];
+      int i = 0;
+      int j = 0;
+      for (SpanLog spanLog : spanLogs) {
+        logTimestamps[i] = spanLog.getTimestamp();
+        for (Map.Entry<String, String> field : spanLog.getFields().entrySet()) {
+          logFields[j++] = field.getKey();
+          logFields[j++] = field.getValue();
+        }
+        logFieldEnds[i++] = j;
+      }
+    }
+    return new FinishedSpan(operationName, startTimeMicros, durationMicroseconds,
+        spanContext.getTraceIdHigh(), spanContext.getTraceIdLow(), spanContext.getSpanIdHigh(),
+        spanContext.getSpanIdLow(), parentIds, followsIds, tagArray, logTimestamps, logFieldEnds,
+        logFields, isError);
+  }
+
+  @Nullable
+  private static long[] spanIds(@Nullable List<Reference> references) {
+    if (references == null || references.isEmpty()) {
+      return null;
+    }
+    long[] ids = new long[references.size() * 2];
+    int i = 0;
+    for (Reference reference : references) {
+      WavefrontSpanContext context = reference.getSpanContext();
+      ids[i++] = context.getSpanIdHigh();
+      ids[i++] = context.getSpanIdLow();
+    }
+    return ids;
+  }
+
+  public String getOperationName() {
+    checkNotRecycled();
     return operationName;
   }
 
   public long getStartTimeMicros() {
+    checkNotRecycled();
     return startTimeMicros;
   }
 
-  public synchronized long getDurationMicroseconds() {
+  public long getDurationMicroseconds() {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        return durationMicroseconds;
+      }
+    }
     return durationMicroseconds;
   }
 
@@ -295,11 +596,30 @@ public class WavefrontSpan implements Span {
    *
    * @return The list of tags.
    */
-  public synchronized List<Pair<String, String>> getTagsAsList() {
-    if (tags == null) {
-      return Collections.emptyList();
+  public List<Pair<String, String>> getTagsAsList() {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        return tags.toList();
+      }
+    }
+    return tags.toList();
+  }
+
+  /**
+   * Gets the tags whose key matches a filter, formatting only their values.
+   *
+   * @param keyFilter the filter of tag keys
+   * @return a new list of the matching tags
+   */
+  List<Pair<String, String>> getTagsAsList(Predicate<String> keyFilter) {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        return tags.toList(keyFilter);
+      }
     }
-    return Collections.unmodifiableList(tags);
+    return tags.toList(keyFilter);
   }
 
   /**
@@ -307,12 +627,22 @@ public class WavefrontSpan implements Span {
    *
    * @return The map of tags.
    */
-  public synchronized Map<String, Collection<String>> getTagsAsMap() {
-    if (tags == null) {
+  public Map<String, Collection<String>> getTagsAsMap() {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        return tagsAsMap();
+      }
+    }
+    return tagsAsMap();
+  }
+
+  private Map<String, Collection<String>> tagsAsMap() {
+    if (tags.size() == 0) {
       return Collections.emptyMap();
     }
     return Collections.unmodifiableMap(
-        tags.stream().collect(
+        tags.toList().stream().collect(
             Collectors.groupingBy(
                 p -> p._1,
                 Collectors.mapping(p -> p._2, Collectors.toList())
@@ -326,11 +656,16 @@ public class WavefrontSpan implements Span {
    *
    * @return The list of span logs.
    */
-  public synchronized List<SpanLog> getSpanLogs() {
-    if (spanLogs == null) {
-      return Collections.emptyList();
+  public List<SpanLog> getSpanLogs() {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        convertDeferredSpanLogs();
+        return spanLogs == null ? Collections.emptyList() : Collections.unmodifiableList(spanLogs);
+      }
     }
-    return Collections.unmodifiableList(spanLogs);
+    convertDeferredSpanLogs();
+    return spanLogs == null ? Collections.emptyList() : Collections.unmodifiableList(spanLogs);
   }
 
   /**
@@ -340,14 +675,23 @@ public class WavefrontSpan implements Span {
    * @return The tag value.
    */
   @Nullable
-  public synchronized String getSingleValuedTagValue(String key) {
-    if (singleValuedTags == null || !singleValuedTags.containsKey(key)) {
-      return null;
+  public String getSingleValuedTagValue(String key) {
+    checkNotRecycled();
+    if (threadSafe) {
+      synchronized (this) {
+        return singleValuedTagValue(key);
+      }
     }
-    return singleValuedTags.get(key)._2;
+    return singleValuedTagValue(key);
+  }
+
+  @Nullable
+  private String singleValuedTagValue(String key) {
+    return tags.getSingleValued(key);
   }
 
   public List<Reference> getParents() {
+    checkNotRecycled();
     if (parents == null) {
       return Collections.emptyList();
     }
@@ -355,6 +699,7 @@ public class WavefrontSpan implements Span {
   }
 
   public List<Reference> getFollows() {
+    checkNotRecycled();
     if (follows == null) {
       return Collections.emptyList();
     }
@@ -362,6 +707,7 @@ public class WavefrontSpan implements Span {
   }
 
   public String getComponentTagValue() {
+    checkNotRecycled();
     return componentTagValue;
   }
 
@@ -378,13 +724,6 @@ public class WavefrontSpan implements Span {
         '}';
   }
 
-  /**
-   * Provides current system time in micros.
-   */
-  private long getCurrentTimeMicros() {
-    return System.currentTimeMillis() * 1000;
-  }
-
   /**
    * Returns a boolean indicated whether the given tag key must be single-valued or not.
    *
@@ -392,6 +731,18 @@ public class WavefrontSpan implements Span {
    * @return true if the key must be single-valued, false otherwise.
    */
   public static boolean isSingleValuedTagKey(String key) {
-    return SINGLE_VALUED_TAG_KEYS.contains(key);
+    return SpanTags.slotOf(key) >= 0;
+  }
+
+  /** A span log whose fields have not been converted to strings yet. */
+  private static final class DeferredSpanLog {
+    private final long timestampMicros;
+    @Nullable
+    private final Map<String, ?> fields;
+
+    private DeferredSpanLog(long timestampMicros, @Nullable Map<String, ?> fields) {
+      this.timestampMicros = timestampMicros;
+      this.fields = fields;
+    }
   }
 }
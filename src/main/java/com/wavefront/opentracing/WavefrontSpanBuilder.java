@@ -1,13 +1,9 @@
 package com.wavefront.opentracing;
 
-import com.wavefront.sdk.common.Pair;
+import com.wavefront.opentracing.id.IdGenerator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ThreadLocalRandom;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -32,8 +28,12 @@ public class WavefrontSpanBuilder implements Tracer.SpanBuilder {
   /** The tracer to report spans to. */
   private final WavefrontTracer tracer;
 
+  /** The pool this builder and its spans are recycled to, if span recycling is enabled. */
+  @Nullable
+  private final SpanRecycler recycler;
+
   /** The operation name. Required for every span per opentracing spec. */
-  private final String operationName;
+  private String operationName;
 
   /** The list of parent references. */
   private List<Reference> parents = null;
@@ -43,13 +43,27 @@ public class WavefrontSpanBuilder implements Tracer.SpanBuilder {
 
   private long startTimeMicros;
   private boolean ignoreActiveSpan = false;
+  private boolean threadSafe;
 
   private boolean useFullSpanId = true;
-  private final List<Pair<String, String>> tags = new ArrayList<>();
+  private final SpanTags tags = new SpanTags(null);
+  private boolean recycled = false;
 
   public WavefrontSpanBuilder(String operationName, WavefrontTracer tracer) {
     this.operationName = operationName;
     this.tracer = tracer;
+    this.recycler = null;
+    this.threadSafe = tracer.isThreadSafeSpans();
+  }
+
+  /**
+   * Creates a builder to be pooled by the given recycler.
+   */
+  WavefrontSpanBuilder(WavefrontTracer tracer, SpanRecycler recycler) {
+    this.tracer = tracer;
+    this.recycler = recycler;
+    this.recycled = true;
+    this.threadSafe = tracer.isThreadSafeSpans();
   }
 
   @Override
@@ -64,6 +78,7 @@ public class WavefrontSpanBuilder implements Tracer.SpanBuilder {
 
   @Override
   public Tracer.SpanBuilder addReference(String type, SpanContext spanContext) {
+    checkNotRecycled();
     if (!(spanContext instanceof WavefrontSpanContext) ||
         (!References.CHILD_OF.equals(type) && !References.FOLLOWS_FROM.equals(type))) {
       return this;
@@ -85,10 +100,24 @@ public class WavefrontSpanBuilder implements Tracer.SpanBuilder {
 
   @Override
   public Tracer.SpanBuilder ignoreActiveSpan() {
+    checkNotRecycled();
     this.ignoreActiveSpan = true;
     return this;
   }
 
+  /**
+   * Builds a span that can be modified by several threads at once, guarding its state with the
+   * span's monitor. By default spans are built thread-safe only if the tracer was built with
+   * {@link WavefrontTracer.Builder#threadSafeSpans()}.
+   *
+   * @return {@code this}
+   */
+  public WavefrontSpanBuilder threadSafe() {
+    checkNotRecycled();
+    this.threadSafe = true;
+    return this;
+  }
+
   @Override
   public Tracer.SpanBuilder withTag(String key, String value) {
     return setTagObject(key, value);
@@ -110,68 +139,121 @@ public class WavefrontSpanBuilder implements Tracer.SpanBuilder {
   }
 
   private Tracer.SpanBuilder setTagObject(String key, Object value) {
-    if (key != null && !key.isEmpty() && value != null) {
-      tags.add(Pair.of(key, value.toString()));
+    checkNotRecycled();
+    // typed values are kept as they are, so that the span can read them and only format them
+    // once it is reported
+    Object tagValue = SpanTags.tagValue(value);
+    if (key != null && !key.isEmpty() && tagValue != null) {
+      key = tracer.internTagKey(key);
+      tags.add(key, tracer.internTagValue(key, tagValue));
     }
     return this;
   }
 
   @Override
   public Tracer.SpanBuilder withStartTimestamp(long startMicros) {
+    checkNotRecycled();
     this.startTimeMicros = startMicros;
     return this;
   }
 
   @Override
   public Span start() {
-    long startTimeNanos = 0;
+    checkNotRecycled();
     if (startTimeMicros == 0) {
       startTimeMicros = tracer.currentTimeMicros();
-      startTimeNanos = System.nanoTime();
     }
     WavefrontSpanContext ctx = createSpanContext();
+    SamplingRuleTable.Rule samplingRule = tracer.matchSamplingRule(operationName, tags);
     if (!ctx.isSampled()) {
       // this indicates a root span and that no decision has been inherited from a parent span.
       // perform head based sampling as no sampling decision has been obtained for this span yet.
-      boolean decision = tracer.sample(operationName, ctx.getTraceId().getLeastSignificantBits(), 0);
+      boolean decision = samplingRule != null ?
+          samplingRule.sampleOnStart(ctx.getTraceIdLow()) :
+          tracer.sampleOnStart(operationName, ctx.getTraceIdLow());
       ctx = ctx.withSamplingDecision(decision);
     }
-    return new WavefrontSpan(tracer, operationName, ctx, startTimeMicros, startTimeNanos, parents,
-        follows, tags);
+    TailSamplingBuffer tailSamplingBuffer = tracer.getTailSamplingBuffer();
+    TailSamplingBuffer.Segment tailSamplingSegment = tailSamplingBuffer == null ? null :
+        tailSamplingBuffer.spanStarted(ctx.getTraceIdLow());
+    boolean lightweight = tracer.isLightweight(ctx, samplingRule);
+    if (recycler == null) {
+      return new WavefrontSpan(tracer, operationName, ctx, startTimeMicros, parents, follows,
+          tags, threadSafe, samplingRule, tailSamplingSegment, lightweight);
+    }
+    // the pooled span copies the references and tags, so this builder can be reused right away
+    WavefrontSpan span = recycler.acquireSpan();
+    span.reuse(operationName, ctx, startTimeMicros, parents, follows, tags, threadSafe,
+        samplingRule, tailSamplingSegment, lightweight);
+    recycler.release(this);
+    return span;
+  }
+
+  /**
+   * Prepares a pooled builder for building a new span.
+   */
+  void reuse(String operationName) {
+    this.operationName = operationName;
+    recycled = false;
+  }
+
+  /**
+   * Clears this builder before it goes back to its pool. It cannot be used until it is reused.
+   */
+  void recycle() {
+    operationName = null;
+    if (parents != null) {
+      parents.clear();
+    }
+    if (follows != null) {
+      follows.clear();
+    }
+    startTimeMicros = 0;
+    ignoreActiveSpan = false;
+    threadSafe = tracer.isThreadSafeSpans();
+    tags.clear();
+    recycled = true;
+  }
+
+  private void checkNotRecycled() {
+    if (recycled) {
+      throw new IllegalStateException("span builder used after start() with span recycling " +
+          "enabled");
+    }
   }
 
   private WavefrontSpanContext createSpanContext() {
-    UUID spanId = generateSpanId();
+    IdGenerator idGenerator = tracer.getIdGenerator();
+    // Generate a span id that can be represented in 64 bits unless 128 bits are configured,
+    // allowing lossless conversion and propagation to systems such as Zipkin and OpenTelemetry
+    // (which specify 64-bit span ids)
+    long spanIdHigh = tracer.isUseSpanId128Bit() ? idGenerator.nextId() : 0L;
+    long spanIdLow = idGenerator.nextId();
     WavefrontSpanContext traceCtx = traceAncestry();
-    UUID traceId = (traceCtx == null) ? UUID.randomUUID() : traceCtx.getTraceId();
-    Boolean sampling = (traceCtx == null) ? null : traceCtx.getSamplingDecision();
-    return new WavefrontSpanContext(traceId, spanId, getBaggage(), sampling);
+    if (traceCtx == null) {
+      return new WavefrontSpanContext(idGenerator.nextTraceIdHigh(), idGenerator.nextId(),
+          spanIdHigh, spanIdLow, getBaggage(), null);
+    }
+    return new WavefrontSpanContext(traceCtx, spanIdHigh, spanIdLow, getBaggage(),
+        traceCtx.getSamplingDecision());
   }
 
-  @Nullable
-  private Map<String, String> getBaggage() {
-    return addItems(follows, addItems(parents, null));
+  private Baggage getBaggage() {
+    return addItems(follows, addItems(parents, Baggage.EMPTY));
   }
 
   /**
-   * Gets a map containing baggage items of all the given references.
+   * Gets the baggage with the baggage items of all the given references added.
    *
    * @param references the list of references to process
-   * @param baggage the map to add items to, can be null in which case a new map is created/returned
-   * @return the map containing baggage items from all references
+   * @param baggage the baggage to add items to
+   * @return the baggage containing the items of all references, which is the baggage of the
+   *         reference itself when only one reference has baggage
    */
-  @Nullable
-  private Map<String, String> addItems(List<Reference> references,
-                                       @Nullable Map<String, String> baggage) {
-    if (references != null && !references.isEmpty()) {
+  private static Baggage addItems(List<Reference> references, Baggage baggage) {
+    if (references != null) {
       for (Reference ref : references) {
-        Map<String, String> refBaggage = ref.getSpanContext().getBaggage();
-        if (refBaggage != null && !refBaggage.isEmpty()) {
-          if (baggage == null) {
-            baggage = new HashMap<>();
-          }
-          baggage.putAll(refBaggage);
-        }
+        baggage = baggage.withAll(ref.getSpanContext().getBaggage());
       }
     }
     return baggage;
@@ -196,16 +278,4 @@ public class WavefrontSpanBuilder implements Tracer.SpanBuilder {
     // root span if parentSpan is null
     return parentSpan == null ? null : ((WavefrontSpanContext) parentSpan.context());
   }
-
-  private UUID generateSpanId() {
-    if (tracer.isUseSpanId128Bit()) return UUID.randomUUID();
-
-    // Generate a span id that can be represented in 64 bits, allowing lossless conversion and
-    // propagation to systems such as Zipkin and OpenTelemetry (which specify 64-bit span ids)
-    long id;
-    do {
-      id = ThreadLocalRandom.current().nextLong();
-    } while (id == 0);
-    return new UUID(0L, id);
-  }
 }
@@ -1,7 +1,7 @@
 package com.wavefront.opentracing;
 
-import java.util.Collections;
-import java.util.HashMap;
+import com.wavefront.opentracing.id.Ids;
+
 import java.util.Map;
 import java.util.UUID;
 
@@ -16,37 +16,85 @@ import io.opentracing.SpanContext;
  */
 public class WavefrontSpanContext implements SpanContext {
 
-  private final UUID traceId;
-  private final UUID spanId;
+  private final long traceIdHigh;
+  private final long traceIdLow;
+  private final long spanIdHigh;
+  private final long spanIdLow;
   private final Boolean samplingDecision;
-  private final Map<String, String> baggage;
+  private final Baggage baggage;
+
+  // created on first use, racy but idempotent since UUIDs and strings are immutable
+  @Nullable
+  private UUID traceId;
+  @Nullable
+  private UUID spanId;
+  @Nullable
+  private String traceIdString;
+  @Nullable
+  private String spanIdString;
 
   public WavefrontSpanContext(UUID traceId, UUID spanId) {
     this(traceId, spanId, null, null);
   }
 
   public WavefrontSpanContext(UUID traceId, UUID spanId, Map<String, String> baggage, Boolean decision) {
+    this(traceId.getMostSignificantBits(), traceId.getLeastSignificantBits(),
+        spanId.getMostSignificantBits(), spanId.getLeastSignificantBits(), baggage, decision);
     this.traceId = traceId;
     this.spanId = spanId;
+  }
+
+  /**
+   * Creates a context from the most and least significant bits of its 128-bit ids.
+   */
+  public WavefrontSpanContext(long traceIdHigh, long traceIdLow, long spanIdHigh, long spanIdLow,
+                              @Nullable Map<String, String> baggage, @Nullable Boolean decision) {
+    this.traceIdHigh = traceIdHigh;
+    this.traceIdLow = traceIdLow;
+    this.spanIdHigh = spanIdHigh;
+    this.spanIdLow = spanIdLow;
     this.samplingDecision = decision;
 
-    // expected that most contexts will have no bagagge items except when propagated
-    this.baggage = (baggage == null) ? Collections.emptyMap() : baggage;
+    // expected that most contexts will have no bagagge items except when propagated, and that
+    // child contexts are given the baggage of their parent, which is shared rather than copied
+    this.baggage = Baggage.copyOf(baggage);
+  }
+
+  /**
+   * Creates the context of a span of the same trace as another context, sharing the trace id
+   * objects the other context already created.
+   */
+  WavefrontSpanContext(WavefrontSpanContext traceContext, long spanIdHigh, long spanIdLow,
+                       @Nullable Map<String, String> baggage, @Nullable Boolean decision) {
+    this(traceContext.traceIdHigh, traceContext.traceIdLow, spanIdHigh, spanIdLow, baggage,
+        decision);
+    this.traceId = traceContext.traceId;
+    this.traceIdString = traceContext.traceIdString;
   }
 
   @Override
   public String toTraceId() {
-    return traceId.toString();
+    String string = traceIdString;
+    if (string == null) {
+      string = Ids.toUuidString(traceIdHigh, traceIdLow);
+      traceIdString = string;
+    }
+    return string;
   }
 
   @Override
   public String toSpanId() {
-    return spanId.toString();
+    String string = spanIdString;
+    if (string == null) {
+      string = Ids.toUuidString(spanIdHigh, spanIdLow);
+      spanIdString = string;
+    }
+    return string;
   }
 
   @Override
   public Iterable<Map.Entry<String, String>> baggageItems() {
-    return Collections.unmodifiableMap(baggage).entrySet();
+    return baggage.entrySet();
   }
 
   @Nullable
@@ -55,26 +103,58 @@ public class WavefrontSpanContext implements SpanContext {
   }
 
   public WavefrontSpanContext withBaggageItem(String key, String value) {
-    Map<String, String> items = new HashMap<>(baggage);
-    items.put(key, value);
-    return new WavefrontSpanContext(traceId, spanId, items, samplingDecision);
+    return withIdsOf(new WavefrontSpanContext(this, spanIdHigh, spanIdLow,
+        baggage.with(key, value), samplingDecision));
   }
 
-  Map<String, String> getBaggage() {
-    // protected method for internal use. don't wrap within unmodifiable for memory efficiency.
+  Baggage getBaggage() {
+    // protected method for internal use, the baggage is immutable.
     return baggage;
   }
 
   WavefrontSpanContext withSamplingDecision(boolean decision) {
-    return new WavefrontSpanContext(traceId, spanId, baggage, Boolean.valueOf(decision));
+    return withIdsOf(new WavefrontSpanContext(this, spanIdHigh, spanIdLow, baggage,
+        Boolean.valueOf(decision)));
+  }
+
+  private WavefrontSpanContext withIdsOf(WavefrontSpanContext copy) {
+    copy.spanId = spanId;
+    copy.spanIdString = spanIdString;
+    return copy;
   }
 
   public UUID getTraceId() {
-    return traceId;
+    UUID id = traceId;
+    if (id == null) {
+      id = new UUID(traceIdHigh, traceIdLow);
+      traceId = id;
+    }
+    return id;
   }
 
   public UUID getSpanId() {
-    return spanId;
+    UUID id = spanId;
+    if (id == null) {
+      id = new UUID(spanIdHigh, spanIdLow);
+      spanId = id;
+    }
+    return id;
+  }
+
+  public long getTraceIdHigh() {
+    return traceIdHigh;
+  }
+
+  public long getTraceIdLow() {
+    return traceIdLow;
+  }
+
+  public long getSpanIdHigh() {
+    return spanIdHigh;
+  }
+
+  public long getSpanIdLow() {
+    return spanIdLow;
   }
 
   public boolean isSampled() {
@@ -89,8 +169,8 @@ public class WavefrontSpanContext implements SpanContext {
   @Override
   public String toString() {
     return "WavefrontSpanContext{" +
-        "traceId=" + traceId +
-        ", spanId=" + spanId +
+        "traceId=" + toTraceId() +
+        ", spanId=" + toSpanId() +
         '}';
   }
 }
@@ -1,13 +1,19 @@
 package com.wavefront.opentracing;
 
-import com.wavefront.internal.SpanDerivedMetricsUtils;
 import com.wavefront.internal.reporter.WavefrontInternalReporter;
 import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
+import com.wavefront.opentracing.clock.AnchoredNanoClock;
+import com.wavefront.opentracing.clock.Clock;
+import com.wavefront.opentracing.id.IdGenerator;
+import com.wavefront.opentracing.id.SecureRandomIdGenerator;
 import com.wavefront.opentracing.propagation.Propagator;
 import com.wavefront.opentracing.propagation.PropagatorRegistry;
 import com.wavefront.opentracing.reporting.CompositeReporter;
 import com.wavefront.opentracing.reporting.Reporter;
 import com.wavefront.opentracing.reporting.WavefrontSpanReporter;
+import com.wavefront.opentracing.sampling.RateLimitingSampler;
+import com.wavefront.opentracing.sampling.SamplingRule;
+import com.wavefront.opentracing.sampling.TailSamplingPolicy;
 import com.wavefront.sdk.appagent.jvm.reporter.WavefrontJvmReporter;
 import com.wavefront.sdk.common.Pair;
 import com.wavefront.sdk.common.Utils;
@@ -27,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,6 +47,7 @@ import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.opentracing.propagation.Format;
+import io.opentracing.tag.Tags;
 import io.opentracing.util.ThreadLocalScopeManager;
 
 import static com.wavefront.sdk.common.Constants.APPLICATION_TAG_KEY;
@@ -61,8 +69,18 @@ public class WavefrontTracer implements Tracer, Closeable {
   private final ScopeManager scopeManager;
   private final PropagatorRegistry registry;
   private final Reporter reporter;
-  private final List<Pair<String, String>> tags;
+  private final SpanTags globalTags;
   private final List<Sampler> samplers;
+  private final Sampler[] earlySamplers;
+  private final Sampler[] lateSamplers;
+  @Nullable
+  private final SamplingRuleTable samplingRuleTable;
+  @Nullable
+  private final TailSamplingBuffer tailSamplingBuffer;
+  @Nullable
+  private final FinishPipeline finishPipeline;
+  @Nullable
+  private final SpanBatcher spanBatcher;
 
   @Nullable
   private final WavefrontSpanReporter wfSpanReporter;
@@ -71,18 +89,34 @@ public class WavefrontTracer implements Tracer, Closeable {
   @Nullable
   private final WavefrontInternalReporter wfDerivedReporter;
   @Nullable
+  private final RedMetrics redMetrics;
+  @Nullable
   private final HeartbeaterService heartbeaterService;
   @Nullable
   private final WavefrontJvmReporter wfJvmReporter;
   private final Supplier<Long> reportFrequencyMillis;
   private final ApplicationTags applicationTags;
   private final Set<String> redMetricsCustomTagKeys;
+  // the only span tags read by the span-derived RED metrics
+  private final Predicate<String> redMetricsTagFilter;
   private final boolean addCustomTagsToHeartbeatMetric;
 
   private final boolean useSpanId128Bit;
+  private final IdGenerator idGenerator;
+  private final Clock clock;
+  private final boolean threadSafeSpans;
+  private final boolean lightweightUnsampledSpans;
+  @Nullable
+  private final SpanRecycler spanRecycler;
+  @Nullable
+  private final TagInterner tagInterner;
+  private final Set<String> lowCardinalityTagKeys;
 
   private final static Pattern WHITESPACE = Pattern.compile("[\\s]+");
 
+  // the time that flushing and closing wait for the finish pipeline
+  private final static long FINISH_PIPELINE_DRAIN_MILLIS = 5000L;
+
   private final static String WAVEFRONT_GENERATED_COMPONENT = "wavefront-generated";
   private final static String OPENTRACING_COMPONENT = "opentracing";
   private final static String JAVA_COMPONENT = "java";
@@ -91,13 +125,36 @@ public class WavefrontTracer implements Tracer, Closeable {
     scopeManager = builder.scopeManager;
     this.registry = builder.registry;
     this.reporter = builder.reporter;
-    this.tags = builder.tags;
+    this.globalTags = SpanTags.frozen(builder.tags);
     this.samplers = builder.samplers;
+    this.earlySamplers = samplers.stream().filter(Sampler::isEarly).toArray(Sampler[]::new);
+    this.lateSamplers = samplers.stream().filter(s -> !s.isEarly()).toArray(Sampler[]::new);
+    this.samplingRuleTable = builder.samplingRules.isEmpty() ? null :
+        new SamplingRuleTable(builder.samplingRules, globalTags);
+    this.tailSamplingBuffer = builder.tailSamplingPolicies.isEmpty() ? null :
+        new TailSamplingBuffer(builder.tailSamplingPolicies, builder.tailSamplingTimeoutMillis,
+            builder.tailSamplingMaxBytes, this::reportFinishedSpan);
+    this.finishPipeline = builder.asyncFinish ?
+        new FinishPipeline(builder.finishWorkers, builder.finishQueueCapacity) : null;
+    this.spanBatcher = builder.spanBatchSize > 0 ? new SpanBatcher(reporter,
+        builder.spanBatchSize, builder.spanBatchMaxDelayMillis) : null;
     this.applicationTags = builder.applicationTags;
     this.reportFrequencyMillis = builder.reportingFrequencyMillis;
     this.redMetricsCustomTagKeys = builder.redMetricsCustomTagKeys;
+    this.redMetricsTagFilter = key -> redMetricsCustomTagKeys.contains(key) ||
+        Tags.HTTP_STATUS.getKey().equalsIgnoreCase(key);
     this.addCustomTagsToHeartbeatMetric = builder.addCustomTagsToHeartbeatMetric;
     this.useSpanId128Bit = builder.useSpanId128Bit;
+    this.idGenerator = builder.idGenerator;
+    this.clock = builder.clock != null ? builder.clock : new AnchoredNanoClock();
+    this.threadSafeSpans = builder.threadSafeSpans;
+    this.lightweightUnsampledSpans = builder.lightweightUnsampledSpans;
+    this.spanRecycler = builder.recycleSpans ?
+        new SpanRecycler(this, builder.detectUseAfterRecycle) : null;
+    this.tagInterner = builder.tagInterningCapacity > 0 ?
+        new TagInterner(builder.tagInterningCapacity) : null;
+    this.lowCardinalityTagKeys = new HashSet<>(builder.lowCardinalityTagKeys);
+    this.lowCardinalityTagKeys.addAll(redMetricsCustomTagKeys);
     /**
      * Tracing spans will be converted to metrics and histograms and will be reported to Wavefront
      * only if you use the WavefrontSpanReporter
@@ -108,12 +165,33 @@ public class WavefrontTracer implements Tracer, Closeable {
           builder.includeJvmMetrics);
       wfInternalReporter = tuple.wfInternalReporter;
       wfDerivedReporter = tuple.wfDerivedReporter;
+      redMetrics = new RedMetrics(wfDerivedReporter,
+          addCustomTagsToHeartbeatMetric ? tuple.heartbeaterService : null,
+          wfSpanReporter.getSource(), redMetricsCustomTagKeys, RedMetrics.MAX_IDENTITIES);
       wfJvmReporter = tuple.wfJvmReporter;
       heartbeaterService = tuple.heartbeaterService;
       wfSpanReporter.setMetricsReporter(wfInternalReporter);
+      // the same strings that spans carry, for the reporter to recognize them
+      wfSpanReporter.setGlobalTags(globalTags.toList());
+      if (tailSamplingBuffer != null) {
+        tailSamplingBuffer.setMetricsReporter(wfInternalReporter);
+      }
+      if (finishPipeline != null) {
+        finishPipeline.setMetricsReporter(wfInternalReporter);
+      }
+      for (Sampler sampler : samplers) {
+        if (sampler instanceof RateLimitingSampler) {
+          ((RateLimitingSampler) sampler).setMetricsReporter(wfInternalReporter);
+        }
+      }
+      if (tagInterner != null) {
+        wfInternalReporter.newGauge(new MetricName("tags.interner.hit_rate",
+            Collections.emptyMap()), () -> tagInterner::hitRate);
+      }
     } else {
       wfInternalReporter = null;
       wfDerivedReporter = null;
+      redMetrics = null;
       wfJvmReporter = null;
       heartbeaterService = null;
     }
@@ -215,6 +293,9 @@ public class WavefrontTracer implements Tracer, Closeable {
 
   @Override
   public SpanBuilder buildSpan(String operationName) {
+    if (spanRecycler != null) {
+      return spanRecycler.acquireBuilder(operationName);
+    }
     return new WavefrontSpanBuilder(operationName, this);
   }
 
@@ -241,13 +322,35 @@ public class WavefrontTracer implements Tracer, Closeable {
   }
 
   boolean sample(String operationName, long traceId, long duration, boolean defaultValue) {
+    // the samplers of the other partition are not consulted at all
+    return sample(duration == 0 ? earlySamplers : lateSamplers, operationName, traceId, duration,
+        defaultValue);
+  }
+
+  /**
+   * Samples a root span that is starting, with the early samplers only.
+   */
+  boolean sampleOnStart(String operationName, long traceId) {
+    return sample(earlySamplers, operationName, traceId, 0, true);
+  }
+
+  /**
+   * Samples a span that has finished, with the late samplers only. The early samplers already
+   * decided when the trace started, whatever the duration of the span, and may keep state such
+   * as the tokens of a rate limit.
+   */
+  boolean sampleOnFinish(String operationName, long traceId, long durationMillis,
+                         boolean defaultValue) {
+    return sample(lateSamplers, operationName, traceId, durationMillis, defaultValue);
+  }
+
+  private boolean sample(Sampler[] partition, String operationName, long traceId, long duration,
+                         boolean defaultValue) {
     if (samplers == null || samplers.isEmpty()) {
       return defaultValue;
     }
-    boolean earlySampling = (duration == 0);
-    for (Sampler sampler : samplers) {
-      boolean doSample = earlySampling == sampler.isEarly();
-      if (doSample && sampler.sample(operationName, traceId, duration)) {
+    for (Sampler sampler : partition) {
+      if (sampler.sample(operationName, traceId, duration)) {
         if (logger.isLoggable(Level.FINER)) {
           logger.finer(sampler.getClass().getSimpleName() + "=" + true +
               " op=" + operationName);
@@ -262,30 +365,34 @@ public class WavefrontTracer implements Tracer, Closeable {
     return false;
   }
 
+  /**
+   * Finds the first sampling rule matching a span that is starting.
+   *
+   * @param operationName the operation name of the span
+   * @param tags          the tags set on the span builder
+   * @return the rule, or null if there are no sampling rules or none matches
+   */
+  @Nullable
+  SamplingRuleTable.Rule matchSamplingRule(String operationName, SpanTags tags) {
+    return samplingRuleTable == null ? null : samplingRuleTable.match(operationName, tags);
+  }
+
   void reportWavefrontGeneratedData(WavefrontSpan span) {
-    if (wfSpanReporter == null || wfDerivedReporter == null) {
+    if (redMetrics == null) {
       // WavefrontSpanReporter not set, so no tracing spans will be reported as metrics/histograms.
       return;
     }
 
-    Pair<Map<String, String>, String> heartbeatMetricKey =
-        SpanDerivedMetricsUtils.reportWavefrontGeneratedData(
-            wfDerivedReporter,
-            span.getOperationName(),
-            getSingleValuedTagValueOrDefault(span, APPLICATION_TAG_KEY, applicationTags.getApplication()),
-            getSingleValuedTagValueOrDefault(span, SERVICE_TAG_KEY, applicationTags.getService()),
-            getSingleValuedTagValueOrDefault(span, CLUSTER_TAG_KEY, applicationTags.getCluster()),
-            getSingleValuedTagValueOrDefault(span, SHARD_TAG_KEY, applicationTags.getCluster()),
-            wfSpanReporter.getSource(),
-            span.getComponentTagValue(),
-            span.isError(),
-            span.getDurationMicroseconds(),
-            redMetricsCustomTagKeys,
-            span.getTagsAsList()
-        );
-    if (heartbeaterService != null && addCustomTagsToHeartbeatMetric) {
-      heartbeaterService.reportCustomTags(heartbeatMetricKey._1);
-    }
+    redMetrics.report(
+        span.getOperationName(),
+        getSingleValuedTagValueOrDefault(span, APPLICATION_TAG_KEY, applicationTags.getApplication()),
+        getSingleValuedTagValueOrDefault(span, SERVICE_TAG_KEY, applicationTags.getService()),
+        getSingleValuedTagValueOrDefault(span, CLUSTER_TAG_KEY, applicationTags.getCluster()),
+        getSingleValuedTagValueOrDefault(span, SHARD_TAG_KEY, applicationTags.getCluster()),
+        span.getComponentTagValue(),
+        span.isError(),
+        span.getDurationMicroseconds(),
+        span.getTagsAsList(redMetricsTagFilter));
   }
 
   private String getSingleValuedTagValueOrDefault(WavefrontSpan span, String key,
@@ -295,7 +402,28 @@ public class WavefrontTracer implements Tracer, Closeable {
   }
 
   void reportSpan(WavefrontSpan span) {
+    if (spanBatcher != null) {
+      spanBatcher.add(span.getFinishedSpan());
+      return;
+    }
     // reporter will flush it to Wavefront/proxy
+    try {
+      if (spanRecycler != null) {
+        // the span is recycled once reported, so the reporter must not keep it
+        reporter.report(span.getFinishedSpan());
+      } else {
+        reporter.report(span);
+      }
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Error reporting span", ex);
+    }
+  }
+
+  private void reportFinishedSpan(FinishedSpan span) {
+    if (spanBatcher != null) {
+      spanBatcher.add(span);
+      return;
+    }
     try {
       reporter.report(span);
     } catch (IOException ex) {
@@ -303,23 +431,96 @@ public class WavefrontTracer implements Tracer, Closeable {
     }
   }
 
+  /**
+   * Gets the buffer that holds finished spans until their trace segment is complete.
+   *
+   * @return the buffer, or null if tail sampling is not enabled
+   */
+  @Nullable
+  TailSamplingBuffer getTailSamplingBuffer() {
+    return tailSamplingBuffer;
+  }
+
+  /**
+   * Gets the pipeline that processes finished spans on worker threads.
+   *
+   * @return the pipeline, or null if spans are processed on the finishing thread
+   */
+  @Nullable
+  FinishPipeline getFinishPipeline() {
+    return finishPipeline;
+  }
+
+  /**
+   * Gets whether a starting span can be a lightweight span, which is the case when it is not
+   * sampled and neither a late sampler, its sampling rule nor tail sampling can sample it once it
+   * finishes. Only tags that force sampling can still sample it.
+   *
+   * @param spanContext  the context of the starting span, holding its early sampling decision
+   * @param samplingRule the sampling rule matching the span, or null if none matches
+   */
+  boolean isLightweight(WavefrontSpanContext spanContext,
+                        @Nullable SamplingRuleTable.Rule samplingRule) {
+    if (!lightweightUnsampledSpans || tailSamplingBuffer != null || !spanContext.isSampled() ||
+        spanContext.getSamplingDecision()) {
+      return false;
+    }
+    return samplingRule != null ? !samplingRule.samplesOnFinish() : lateSamplers.length == 0;
+  }
+
   long currentTimeMicros() {
-    return System.currentTimeMillis() * 1000;
+    return clock.currentTimeMicros();
   }
 
   /**
-   * Gets the list of global tags to be added to all spans.
+   * Gets the global tags to be added to all spans, shared by the spans as the prefix of their
+   * tags.
    *
-   * @return the list of global tags
+   * @return the frozen global tags
    */
-  List<Pair<String, String>> getTags() {
-    return tags;
+  SpanTags getGlobalTags() {
+    return globalTags;
   }
 
   boolean isUseSpanId128Bit(){
     return useSpanId128Bit;
   }
 
+  IdGenerator getIdGenerator() {
+    return idGenerator;
+  }
+
+  boolean isThreadSafeSpans() {
+    return threadSafeSpans;
+  }
+
+  /**
+   * Gets the shared instance of a tag key when tag interning is enabled.
+   */
+  String internTagKey(String key) {
+    return tagInterner == null ? key : tagInterner.intern(key);
+  }
+
+  /**
+   * Gets the shared instance of a tag value when tag interning is enabled and the key is a
+   * low-cardinality key. Values that are not strings are returned as they are.
+   *
+   * @param key   the tag key
+   * @param value the tag value, as returned by {@link SpanTags#tagValue(Object)}
+   */
+  @Nullable
+  Object internTagValue(String key, @Nullable Object value) {
+    if (tagInterner == null || !(value instanceof String) || !lowCardinalityTagKeys.contains(key)) {
+      return value;
+    }
+    return tagInterner.intern((String) value);
+  }
+
+  @Nullable
+  TagInterner getTagInterner() {
+    return tagInterner;
+  }
+
   /**
    * A builder for {@link WavefrontTracer} instances.
    */
@@ -331,6 +532,11 @@ public class WavefrontTracer implements Tracer, Closeable {
     // application metadata, will not have repeated tags and will be low cardinality tags
     private final ApplicationTags applicationTags;
     private final List<Sampler> samplers;
+    private final List<SamplingRule> samplingRules = new ArrayList<>();
+    private final List<TailSamplingPolicy> tailSamplingPolicies = new ArrayList<>();
+    // Default to 30s and 64MiB
+    private long tailSamplingTimeoutMillis = 30000L;
+    private long tailSamplingMaxBytes = 64L * 1024 * 1024;
     // Default to 1min
     private Supplier<Long> reportingFrequencyMillis = () -> 60000L;
     private final Set<String> redMetricsCustomTagKeys = new HashSet<>();
@@ -339,6 +545,22 @@ public class WavefrontTracer implements Tracer, Closeable {
     private boolean addCustomTagsToHeartbeatMetric = true;
 
     private boolean useSpanId128Bit = true;
+    private IdGenerator idGenerator = new SecureRandomIdGenerator();
+    @Nullable
+    private Clock clock = null;
+    private boolean threadSafeSpans = false;
+    private boolean lightweightUnsampledSpans = false;
+    private boolean recycleSpans = false;
+    private boolean detectUseAfterRecycle = false;
+    private boolean asyncFinish = false;
+    private int finishWorkers;
+    private int finishQueueCapacity;
+    private int spanBatchSize = 0;
+    private long spanBatchMaxDelayMillis;
+    private int tagInterningCapacity = 0;
+    private final Set<String> lowCardinalityTagKeys = new HashSet<>(Arrays.asList(
+        APPLICATION_TAG_KEY, SERVICE_TAG_KEY, CLUSTER_TAG_KEY, SHARD_TAG_KEY,
+        Tags.COMPONENT.getKey(), Tags.HTTP_METHOD.getKey(), Tags.DB_TYPE.getKey()));
     /**
      * Constructor.
      */
@@ -421,6 +643,73 @@ public class WavefrontTracer implements Tracer, Closeable {
       return this;
     }
 
+    /**
+     * Sampling rule deciding whether the spans it matches are sampled, instead of the samplers.
+     *
+     * Rules can be added by calling this method multiple times. The first rule matching a span
+     * decides, and spans matching no rule are sampled by the samplers. The rules are compiled
+     * when the tracer is built, so that finding the rule of a span costs a single lookup.
+     *
+     * @return {@code this}
+     */
+    public Builder withSamplingRule(SamplingRule rule) {
+      if (rule == null) {
+        throw new IllegalArgumentException("invalid sampling rule");
+      }
+      this.samplingRules.add(rule);
+      return this;
+    }
+
+    /**
+     * Tail sampling policy keeping all the spans of a trace segment, which are the spans of one
+     * trace started by this tracer, once all of them have finished.
+     *
+     * Policies can be chained by calling this method multiple times, and a segment is kept if any
+     * policy keeps it. Adding a policy enables tail sampling: finished spans are held until their
+     * segment is complete or times out, and the spans of segments that no policy keeps are
+     * reported by their own sampling decision. Requires a reporter that supports
+     * {@link Reporter#report(FinishedSpan)}, which all built-in reporters do; see
+     * {@link Reporter#supportsFinishedSpans()}.
+     *
+     * @return {@code this}
+     */
+    public Builder withTailSamplingPolicy(TailSamplingPolicy policy) {
+      if (policy == null) {
+        throw new IllegalArgumentException("invalid tail sampling policy");
+      }
+      this.tailSamplingPolicies.add(policy);
+      return this;
+    }
+
+    /**
+     * Time after which a trace segment whose spans have not all finished is decided with the
+     * spans it has. Defaults to 30 seconds.
+     *
+     * @return {@code this}
+     */
+    public Builder tailSamplingTimeout(long timeout, TimeUnit unit) {
+      if (timeout <= 0) {
+        throw new IllegalArgumentException("invalid tail sampling timeout: " + timeout);
+      }
+      this.tailSamplingTimeoutMillis = Math.max(1, unit.toMillis(timeout));
+      return this;
+    }
+
+    /**
+     * Cap on the estimated memory of the spans held for tail sampling. A segment that would grow
+     * the buffer past the cap is evicted, reporting its spans by their own sampling decision.
+     * Defaults to 64 MiB.
+     *
+     * @return {@code this}
+     */
+    public Builder tailSamplingMaxBytes(long maxBytes) {
+      if (maxBytes <= 0) {
+        throw new IllegalArgumentException("invalid tail sampling max bytes: " + maxBytes);
+      }
+      this.tailSamplingMaxBytes = maxBytes;
+      return this;
+    }
+
     /**
      * Scope manager to use for span management.
      *
@@ -493,6 +782,181 @@ public class WavefrontTracer implements Tracer, Closeable {
       return this;
     }
 
+    /**
+     * Sets the generator of trace ids and span ids. Defaults to a
+     * {@link SecureRandomIdGenerator}, whose ids are unpredictable. A
+     * {@link com.wavefront.opentracing.id.ThreadLocalRandomIdGenerator} does not contend between
+     * threads, but its ids can be guessed, so only use it when that is acceptable.
+     *
+     * @param idGenerator the id generator
+     * @return {@code this}
+     */
+    public Builder withIdGenerator(IdGenerator idGenerator) {
+      if (idGenerator == null) {
+        throw new IllegalArgumentException("invalid id generator");
+      }
+      this.idGenerator = idGenerator;
+      return this;
+    }
+
+    /**
+     * Sets the clock giving the start, finish and log timestamps of spans. Defaults to an
+     * {@link AnchoredNanoClock}, which has microsecond resolution and is monotonic.
+     *
+     * @param clock the clock
+     * @return {@code this}
+     */
+    public Builder withClock(Clock clock) {
+      if (clock == null) {
+        throw new IllegalArgumentException("invalid clock");
+      }
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Build every span as a thread-safe span that can be modified by several threads at once. By
+     * default a span must only be used by one thread at a time, apart from its context, and only
+     * spans built with {@link WavefrontSpanBuilder#threadSafe()} are thread-safe.
+     *
+     * @return {@code this}
+     */
+    public Builder threadSafeSpans() {
+      this.threadSafeSpans = true;
+      return this;
+    }
+
+    /**
+     * Recycle span builders and spans through thread-local pools instead of allocating new ones
+     * for every span. Only enable this if the application follows these ownership rules:
+     * <ul>
+     * <li>a span builder is not used after {@link SpanBuilder#start()} returns;</li>
+     * <li>a span is finished exactly once, and neither the span nor the collections it returned
+     * are used after {@code finish()} returns, including through an active scope;</li>
+     * </ul>
+     * Reporters are handed the {@link FinishedSpan} snapshot of each span instead of the span, so
+     * the reporter must support snapshots, see {@link Reporter#supportsFinishedSpans()}. Span
+     * contexts are not recycled and can be kept.
+     *
+     * @param detectUseAfterRecycle if true, recycled instances are never reused, so that any use
+     *                              after recycling throws {@link IllegalStateException}; meant
+     *                              for tests and debugging
+     * @return {@code this}
+     */
+    public Builder recycleSpans(boolean detectUseAfterRecycle) {
+      this.recycleSpans = true;
+      this.detectUseAfterRecycle = detectUseAfterRecycle;
+      return this;
+    }
+
+    /**
+     * Process finished spans on worker threads, so that {@code finish()} only records the end
+     * time of a span and queues it. The workers run the late sampling, the tail sampling or
+     * reporting, and the span-derived metrics. The spans of a trace are processed by the same
+     * worker in the order they finished.
+     *
+     * A span finished while the queue of its worker is full is dropped and counted by the
+     * {@code finish_pipeline.spans.dropped} internal metric. A dropped span is not sampled or
+     * reported by itself, but the finishing thread still counts it in the span-derived metrics
+     * and, with tail sampling, adds it unsampled to its trace segment, which is reported if a
+     * policy keeps the segment. {@link WavefrontTracer#flush()} and
+     * {@link WavefrontTracer#close()} wait for the queued spans to be processed. Cannot be
+     * combined with {@link #recycleSpans(boolean)} unless spans are processed synchronously.
+     *
+     * @param workers       the number of worker threads, or 0 to process spans synchronously
+     *                      on the finishing thread through the same pipeline, meant for tests
+     * @param queueCapacity the number of spans each worker can queue
+     * @return {@code this}
+     */
+    public Builder asyncFinish(int workers, int queueCapacity) {
+      if (workers < 0) {
+        throw new IllegalArgumentException("invalid finish workers: " + workers);
+      }
+      if (queueCapacity < 1) {
+        throw new IllegalArgumentException("invalid finish queue capacity: " + queueCapacity);
+      }
+      this.asyncFinish = true;
+      this.finishWorkers = workers;
+      this.finishQueueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * Collect the finished spans of each thread in a buffer of its own, and hand the buffer over
+     * to the reporter through {@link Reporter#report(List)} once it holds the given number of
+     * spans, or once its oldest span has waited for the maximum delay. The reporter is then
+     * called once per batch instead of once per span. {@link WavefrontTracer#flush()} and
+     * {@link WavefrontTracer#close()} hand over the partial batches. Requires a reporter that
+     * supports {@link Reporter#report(FinishedSpan)}, which all built-in reporters do; see
+     * {@link Reporter#supportsFinishedSpans()}.
+     *
+     * @param batchSize the number of spans after which a batch is handed over
+     * @param maxDelay  the time after which a batch that is not full is handed over
+     * @param unit      the unit of the maximum delay
+     * @return {@code this}
+     */
+    public Builder batchFinishedSpans(int batchSize, long maxDelay, TimeUnit unit) {
+      if (batchSize < 1) {
+        throw new IllegalArgumentException("invalid span batch size: " + batchSize);
+      }
+      if (maxDelay <= 0) {
+        throw new IllegalArgumentException("invalid span batch max delay: " + maxDelay);
+      }
+      this.spanBatchSize = batchSize;
+      this.spanBatchMaxDelayMillis = Math.max(1, unit.toMillis(maxDelay));
+      return this;
+    }
+
+    /**
+     * Start spans that are not sampled, and that nothing but a tag forcing sampling could sample
+     * once they finish, as lightweight spans. A lightweight span keeps the fields of its span
+     * logs as they are, and only converts them to strings if it is sampled, so that unsampled
+     * spans cost little more than their RED metrics. The field maps passed to
+     * {@code log(...)} must therefore not be modified afterwards.
+     *
+     * A lightweight span that is forced to be sampled by the {@code sampling.priority},
+     * {@code debug} or {@code error} tag becomes a full span, and is reported with every tag and
+     * span log, including those added before it was sampled.
+     *
+     * @return {@code this}
+     */
+    public Builder lightweightUnsampledSpans() {
+      this.lightweightUnsampledSpans = true;
+      return this;
+    }
+
+    /**
+     * Share one instance of every tag key, and of the values of low-cardinality tag keys, among
+     * all spans, through a bounded dictionary that evicts rarely seen strings. This saves memory
+     * when many spans are buffered with equal tags that the application creates as new strings,
+     * at the cost of a lookup per tag. The hit rate of the dictionary is reported as the
+     * {@code tags.interner.hit_rate} internal metric.
+     *
+     * @param capacity the maximum number of strings held, rounded up to a power of two and to
+     *                 at least 2, or 0 to disable interning
+     * @return {@code this}
+     */
+    public Builder internTags(int capacity) {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("invalid interning capacity: " + capacity);
+      }
+      this.tagInterningCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Intern the values of the given tag keys when tags are interned, in addition to the values
+     * of the application tags, {@code component}, {@code http.method}, {@code db.type} and
+     * {@link #redMetricsCustomTagKeys(Set)}. Only set keys whose values have few distinct values.
+     *
+     * @param lowCardinalityTagKeys the tag keys whose values are interned
+     * @return {@code this}
+     */
+    public Builder lowCardinalityTagKeys(Set<String> lowCardinalityTagKeys) {
+      this.lowCardinalityTagKeys.addAll(lowCardinalityTagKeys);
+      return this;
+    }
+
     /**
      * Visible for testing only.
      *
@@ -508,8 +972,26 @@ public class WavefrontTracer implements Tracer, Closeable {
      * Builds and returns the WavefrontTracer instance based on the provided configuration.
      *
      * @return a {@link WavefrontTracer}
+     * @throws IllegalArgumentException if the configuration is invalid, such as span recycling,
+     *                                  tail sampling or batching of finished spans with a
+     *                                  reporter that does not support finished span snapshots
      */
     public WavefrontTracer build() {
+      if (recycleSpans && asyncFinish && finishWorkers > 0) {
+        // spans would be released to the pools of the workers, which never start spans
+        throw new IllegalArgumentException(
+            "invalid configuration: spans cannot be recycled with asynchronous finish");
+      }
+      if ((!tailSamplingPolicies.isEmpty() || spanBatchSize > 0) &&
+          !reporter.supportsFinishedSpans()) {
+        throw new IllegalArgumentException("invalid configuration: tail sampling and batching " +
+            "of finished spans require a reporter that supports finished span snapshots");
+      }
+      if (recycleSpans && !reporter.supportsFinishedSpans()) {
+        // the reporter would be handed live spans, which are cleared and reused once reported
+        throw new IllegalArgumentException("invalid configuration: span recycling requires a " +
+            "reporter that supports finished span snapshots");
+      }
       applyApplicationTags();
       this.redMetricsCustomTagKeys.add(SPAN_KIND.getKey());
       return new WavefrontTracer(this);
@@ -518,6 +1000,15 @@ public class WavefrontTracer implements Tracer, Closeable {
 
   @Override
   public void close() {
+    if (finishPipeline != null) {
+      finishPipeline.close(FINISH_PIPELINE_DRAIN_MILLIS);
+    }
+    if (tailSamplingBuffer != null) {
+      tailSamplingBuffer.close();
+    }
+    if (spanBatcher != null) {
+      spanBatcher.close();
+    }
     this.flush();
     try {
       this.reporter.close();
@@ -543,6 +1034,12 @@ public class WavefrontTracer implements Tracer, Closeable {
    * Flush data inside reporters.
    */
   public void flush() {
+    if (finishPipeline != null && !finishPipeline.drain(FINISH_PIPELINE_DRAIN_MILLIS)) {
+      logger.warning("Timed out waiting for the finish pipeline to process finished spans");
+    }
+    if (spanBatcher != null) {
+      spanBatcher.flushAll();
+    }
     this.reporter.flush();
 
     if (wfInternalReporter != null) {
@@ -0,0 +1,40 @@
+package com.wavefront.opentracing.clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microsecond clock that reads {@link System#nanoTime()}, anchored once to the wall clock when
+ * created. Its timestamps are monotonic, so durations are accurate even if the wall clock is
+ * adjusted, and are as cheap to get as {@code nanoTime()}. This is the default clock.
+ *
+ * As the clock does not follow later adjustments of the wall clock, its timestamps drift from the
+ * wall clock by the drift of {@code nanoTime()}, typically a few milliseconds per day.
+ */
+public final class AnchoredNanoClock implements Clock {
+
+  /** The longest time spent waiting for the wall clock to tick when anchoring. */
+  private static final long MAX_ANCHOR_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  private final long anchorMicros;
+  private final long anchorNanos;
+
+  public AnchoredNanoClock() {
+    // anchor at a tick of the millisecond wall clock, so that the anchor is accurate to a few
+    // microseconds rather than to a millisecond
+    long millis = System.currentTimeMillis();
+    long waitStart = System.nanoTime();
+    long nanos = waitStart;
+    long tickMillis = millis;
+    while (tickMillis == millis && nanos - waitStart < MAX_ANCHOR_WAIT_NANOS) {
+      tickMillis = System.currentTimeMillis();
+      nanos = System.nanoTime();
+    }
+    this.anchorMicros = TimeUnit.MILLISECONDS.toMicros(tickMillis);
+    this.anchorNanos = nanos;
+  }
+
+  @Override
+  public long currentTimeMicros() {
+    return anchorMicros + (System.nanoTime() - anchorNanos) / 1000;
+  }
+}
@@ -0,0 +1,19 @@
+package com.wavefront.opentracing.clock;
+
+/**
+ * Source of the start, finish and log timestamps of spans, set with
+ * {@link com.wavefront.opentracing.WavefrontTracer.Builder#withClock(Clock)}.
+ *
+ * The duration of a span is the difference between two timestamps, so the clock should not go
+ * backwards. Tests can plug in a virtual clock, for example one reading an {@code AtomicLong}.
+ */
+@FunctionalInterface
+public interface Clock {
+
+  /**
+   * Returns the current time.
+   *
+   * @return the number of microseconds since the epoch
+   */
+  long currentTimeMicros();
+}
@@ -0,0 +1,29 @@
+package com.wavefront.opentracing.id;
+
+/**
+ * Generates the trace ids and span ids of new spans.
+ *
+ * A span id is either 64 bits, or 128 bits made of two ids, as configured with
+ * {@link com.wavefront.opentracing.WavefrontTracer.Builder#useSpanId128Bit(boolean)}. A trace id
+ * is always 128 bits. Implementations are called concurrently by every thread that starts spans,
+ * so they must be thread-safe and should not contend.
+ */
+public interface IdGenerator {
+
+  /**
+   * Generates a new random id.
+   *
+   * @return the id, never 0
+   */
+  long nextId();
+
+  /**
+   * Generates the most significant 64 bits of a new trace id, whose least significant 64 bits
+   * are generated by {@link #nextId()}.
+   *
+   * @return the most significant bits, by default a random id
+   */
+  default long nextTraceIdHigh() {
+    return nextId();
+  }
+}
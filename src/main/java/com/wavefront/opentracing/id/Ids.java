@@ -0,0 +1,131 @@
+package com.wavefront.opentracing.id;
+
+import java.util.UUID;
+
+/**
+ * Formats and parses 128-bit trace ids and span ids held as two longs, without creating
+ * {@link UUID} or {@link java.math.BigInteger} instances.
+ */
+public final class Ids {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  private static final int UUID_LENGTH = 36;
+
+  private Ids() {
+  }
+
+  /**
+   * Formats an id as {@link UUID#toString()} does.
+   *
+   * @param high the most significant bits of the id
+   * @param low  the least significant bits of the id
+   * @return the id in the 8-4-4-4-12 hex digit form
+   */
+  public static String toUuidString(long high, long low) {
+    char[] chars = new char[UUID_LENGTH];
+    putHex(chars, 0, 8, high >>> 32);
+    chars[8] = '-';
+    putHex(chars, 9, 4, high >>> 16);
+    chars[13] = '-';
+    putHex(chars, 14, 4, high);
+    chars[18] = '-';
+    putHex(chars, 19, 4, low >>> 48);
+    chars[23] = '-';
+    putHex(chars, 24, 12, low);
+    return new String(chars);
+  }
+
+  /**
+   * Parses the most significant bits of an id formatted as {@link UUID#toString()} does.
+   *
+   * @throws IllegalArgumentException if the string is not a valid UUID
+   */
+  public static long parseUuidHigh(String uuid) {
+    if (!isCanonicalUuid(uuid)) {
+      return UUID.fromString(uuid).getMostSignificantBits();
+    }
+    return (parseHex(uuid, 0, 8) << 32) | (parseHex(uuid, 9, 13) << 16) | parseHex(uuid, 14, 18);
+  }
+
+  /**
+   * Parses the least significant bits of an id formatted as {@link UUID#toString()} does.
+   *
+   * @throws IllegalArgumentException if the string is not a valid UUID
+   */
+  public static long parseUuidLow(String uuid) {
+    if (!isCanonicalUuid(uuid)) {
+      return UUID.fromString(uuid).getLeastSignificantBits();
+    }
+    return (parseHex(uuid, 19, 23) << 48) | parseHex(uuid, 24, 36);
+  }
+
+  /**
+   * Formats an id as an unsigned hex number without leading zeros, as used by Jaeger.
+   *
+   * @param high the most significant bits of the id
+   * @param low  the least significant bits of the id
+   * @return the hex digits of the id
+   */
+  public static String toHexString(long high, long low) {
+    if (high == 0) {
+      return Long.toHexString(low);
+    }
+    int highDigits = 16 - Long.numberOfLeadingZeros(high) / 4;
+    char[] chars = new char[highDigits + 16];
+    putHex(chars, 0, highDigits, high);
+    putHex(chars, highDigits, 16, low);
+    return new String(chars);
+  }
+
+  /**
+   * Parses the most significant bits of an id formatted as an unsigned hex number, which are 0 if
+   * the number has no more than 16 digits.
+   *
+   * @throws NumberFormatException if the string is not a hex number
+   */
+  public static long parseHexHigh(String hex) {
+    int length = checkNotEmpty(hex);
+    return length <= 16 ? 0 : parseHex(hex, Math.max(0, length - 32), length - 16);
+  }
+
+  /**
+   * Parses the least significant bits of an id formatted as an unsigned hex number.
+   *
+   * @throws NumberFormatException if the string is not a hex number
+   */
+  public static long parseHexLow(String hex) {
+    int length = checkNotEmpty(hex);
+    return parseHex(hex, Math.max(0, length - 16), length);
+  }
+
+  private static boolean isCanonicalUuid(String uuid) {
+    return uuid.length() == UUID_LENGTH && uuid.charAt(8) == '-' && uuid.charAt(13) == '-' &&
+        uuid.charAt(18) == '-' && uuid.charAt(23) == '-';
+  }
+
+  private static int checkNotEmpty(String hex) {
+    if (hex.isEmpty()) {
+      throw new NumberFormatException("invalid id: empty string");
+    }
+    return hex.length();
+  }
+
+  private static void putHex(char[] chars, int offset, int digits, long value) {
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      chars[i] = HEX_DIGITS[(int) value & 0xF];
+      value >>>= 4;
+    }
+  }
+
+  private static long parseHex(String string, int from, int to) {
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = Character.digit(string.charAt(i), 16);
+      if (digit < 0) {
+        throw new NumberFormatException("invalid id: " + string);
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,23 @@
+package com.wavefront.opentracing.id;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates unpredictable ids with one {@link SecureRandom} shared by all threads, as
+ * {@link java.util.UUID#randomUUID()} does. This is the default generator of the tracer. The
+ * shared generator contends when many threads start spans, and may block while the operating
+ * system gathers entropy.
+ */
+public final class SecureRandomIdGenerator implements IdGenerator {
+
+  private final SecureRandom random = new SecureRandom();
+
+  @Override
+  public long nextId() {
+    long id;
+    do {
+      id = random.nextLong();
+    } while (id == 0);
+    return id;
+  }
+}
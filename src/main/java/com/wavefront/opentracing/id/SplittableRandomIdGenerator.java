@@ -0,0 +1,43 @@
+package com.wavefront.opentracing.id;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+
+/**
+ * Generates ids with one {@link SplittableRandom} per thread, each split from a root generator
+ * that is seeded once from {@link SecureRandom}. The per-thread streams are statistically
+ * independent, and generation only contends when a thread generates its first id.
+ */
+public final class SplittableRandomIdGenerator implements IdGenerator {
+
+  private final SplittableRandom root;
+  private final ThreadLocal<SplittableRandom> randoms;
+
+  public SplittableRandomIdGenerator() {
+    this(new SecureRandom().nextLong());
+  }
+
+  /**
+   * @param seed the seed of the root generator, for reproducible ids in tests
+   */
+  public SplittableRandomIdGenerator(long seed) {
+    this.root = new SplittableRandom(seed);
+    this.randoms = ThreadLocal.withInitial(this::split);
+  }
+
+  private SplittableRandom split() {
+    synchronized (root) {
+      return root.split();
+    }
+  }
+
+  @Override
+  public long nextId() {
+    SplittableRandom random = randoms.get();
+    long id;
+    do {
+      id = random.nextLong();
+    } while (id == 0);
+    return id;
+  }
+}
@@ -0,0 +1,22 @@
+package com.wavefront.opentracing.id;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates ids with {@link ThreadLocalRandom}, whose state is held by the calling thread, so
+ * that generation takes no lock and threads never contend.
+ *
+ * The ids are not meant to be unpredictable, so this generator has to be chosen explicitly over
+ * the default {@link SecureRandomIdGenerator}.
+ */
+public final class ThreadLocalRandomIdGenerator implements IdGenerator {
+
+  @Override
+  public long nextId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    return id;
+  }
+}
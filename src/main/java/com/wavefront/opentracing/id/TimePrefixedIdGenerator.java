@@ -0,0 +1,25 @@
+package com.wavefront.opentracing.id;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates trace ids whose most significant 32 bits are the time of generation in seconds since
+ * the epoch, followed by 96 random bits, like the trace ids of AWS X-Ray. Such ids sort by the
+ * time their trace started, which keeps the trace ids of an index or key-value store close
+ * together. Span ids are random.
+ */
+public final class TimePrefixedIdGenerator implements IdGenerator {
+
+  private final ThreadLocalRandomIdGenerator random = new ThreadLocalRandomIdGenerator();
+
+  @Override
+  public long nextId() {
+    return random.nextId();
+  }
+
+  @Override
+  public long nextTraceIdHigh() {
+    long seconds = System.currentTimeMillis() / 1000;
+    return (seconds << 32) | (ThreadLocalRandom.current().nextInt() & 0xFFFFFFFFL);
+  }
+}
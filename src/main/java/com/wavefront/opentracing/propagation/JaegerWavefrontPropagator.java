@@ -1,6 +1,7 @@
 package com.wavefront.opentracing.propagation;
 
 import com.wavefront.opentracing.WavefrontSpanContext;
+import com.wavefront.opentracing.id.Ids;
 
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
@@ -56,8 +57,9 @@ public class JaegerWavefrontPropagator implements Propagator<TextMap> {
   @Nullable
   @Override
   public WavefrontSpanContext extract(TextMap carrier) {
-    UUID traceId = null;
-    UUID spanId = null;
+    String traceId = null;
+    long spanIdHigh = 0;
+    long spanIdLow = 0;
     String parentId = null;
     Boolean samplingDecision = null;
     Map<String, String> baggage = new HashMap<>();
@@ -68,23 +70,23 @@ public class JaegerWavefrontPropagator implements Propagator<TextMap> {
         if (traceData == null) {
           continue;
         }
-        traceId = toUuid(traceData[0]);
-        spanId = toUuid(traceData[1]);
+        traceId = traceData[0];
+        spanIdHigh = Ids.parseHexHigh(traceData[1]);
+        spanIdLow = Ids.parseHexLow(traceData[1]);
         // setting parentId as current spanId
-        parentId = spanId.toString();
+        parentId = Ids.toUuidString(spanIdHigh, spanIdLow);
         samplingDecision = traceData[3].equals("1");
       } else if (k.startsWith(baggagePrefix.toLowerCase())) {
         baggage.put(strippedPrefix(entry.getKey()), entry.getValue());
       }
     }
 
-    if (traceId == null || spanId == null) {
+    if (traceId == null) {
       return null;
     }
-    if (parentId.trim().length() > 0 && !"null".equals(parentId)) {
-      baggage.put(PARENT_ID_KEY, parentId);
-    }
-    return new WavefrontSpanContext(traceId, spanId, baggage, samplingDecision);
+    baggage.put(PARENT_ID_KEY, parentId);
+    return new WavefrontSpanContext(Ids.parseHexHigh(traceId), Ids.parseHexLow(traceId),
+        spanIdHigh, spanIdLow, baggage, samplingDecision);
   }
 
   @Override
@@ -134,13 +136,14 @@ public class JaegerWavefrontPropagator implements Propagator<TextMap> {
    * @return formatted header as string
    */
   private String contextToTraceIdHeader(WavefrontSpanContext context) {
-    BigInteger traceId = uuidToBigInteger(context.getTraceId());
-    BigInteger spanId = uuidToBigInteger(context.getSpanId());
-    BigInteger parentId;
-    try {
-      parentId = uuidToBigInteger(UUID.fromString(context.getBaggageItem(PARENT_ID_KEY)));
-    } catch (Exception e) {
-      parentId = BigInteger.ZERO;
+    String parentId = "0";
+    String parentUuid = context.getBaggageItem(PARENT_ID_KEY);
+    if (parentUuid != null) {
+      try {
+        parentId = Ids.toHexString(Ids.parseUuidHigh(parentUuid), Ids.parseUuidLow(parentUuid));
+      } catch (IllegalArgumentException e) {
+        // not a Wavefront span id, send no parent as before
+      }
     }
     Boolean samplingDecision = context.getSamplingDecision();
     if (samplingDecision == null) {
@@ -148,9 +151,9 @@ public class JaegerWavefrontPropagator implements Propagator<TextMap> {
     }
 
     StringBuilder outCtx = new StringBuilder();
-    outCtx.append(traceId.toString(16)).append(":").
-        append(spanId.toString(16)).append(":").
-        append(parentId.toString(16)).append(":").
+    outCtx.append(Ids.toHexString(context.getTraceIdHigh(), context.getTraceIdLow())).append(":").
+        append(Ids.toHexString(context.getSpanIdHigh(), context.getSpanIdLow())).append(":").
+        append(parentId).append(":").
         append(samplingDecision ? "1" : "0");
     return outCtx.toString();
   }
@@ -172,22 +175,6 @@ public class JaegerWavefrontPropagator implements Propagator<TextMap> {
     return new BigInteger(1, bb.array());
   }
 
-  /**
-   * Parses a full (low + high) traceId, trimming the lower 64 bits.
-   * Inspired by {@code io.jaegertracing.internal.propagation}
-   *
-   * @param hexString a full traceId
-   * @return the long value of the higher 64 bits for a 128 bit traceId or 0 for 64 bit traceIds
-   */
-  private static long high(String hexString) {
-    if (hexString.length() <= 16) {
-      return 0L;
-    }
-    int highLength = hexString.length() - 16;
-    String highString = hexString.substring(0, highLength);
-    return new BigInteger(highString, 16).longValue();
-  }
-
   /**
    * Constructs UUID for traceId/spanId represented as hexString consisting  of (low + high) 64 bits.
    *
@@ -198,9 +185,7 @@ public class JaegerWavefrontPropagator implements Propagator<TextMap> {
    * @return UUID for traceId/spanId as expected by WavefrontSpanContext
    */
   UUID toUuid(String id) {
-    long idLow = new BigInteger(id, 16).longValue();
-    long idHigh = high(id);
-    return new UUID(idHigh, idLow);
+    return new UUID(Ids.parseHexHigh(id), Ids.parseHexLow(id));
   }
 
   /**
@@ -1,11 +1,11 @@
 package com.wavefront.opentracing.propagation;
 
 import com.wavefront.opentracing.WavefrontSpanContext;
+import com.wavefront.opentracing.id.Ids;
 
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
 
 import javax.annotation.Nullable;
 
@@ -25,8 +25,8 @@ public class TextMapPropagator implements Propagator<TextMap> {
 
   @Override
   public void inject(WavefrontSpanContext spanContext, TextMap carrier) {
-    carrier.put(TRACE_ID, spanContext.getTraceId().toString());
-    carrier.put(SPAN_ID, spanContext.getSpanId().toString());
+    carrier.put(TRACE_ID, spanContext.toTraceId());
+    carrier.put(SPAN_ID, spanContext.toSpanId());
     for (Map.Entry<String, String> entry : spanContext.baggageItems()) {
       carrier.put(BAGGAGE_PREFIX + entry.getKey(), entry.getValue());
     }
@@ -39,8 +39,8 @@ public class TextMapPropagator implements Propagator<TextMap> {
   @Override
   public WavefrontSpanContext extract(TextMap carrier) {
 
-    UUID traceId = null;
-    UUID spanId = null;
+    String traceId = null;
+    String spanId = null;
     Map<String, String> baggage = null;
     Boolean sampling = null;
 
@@ -49,9 +49,9 @@ public class TextMapPropagator implements Propagator<TextMap> {
       String key = entry.getKey().toLowerCase(Locale.ROOT);
 
       if (TRACE_ID.equals(key)) {
-        traceId = UUID.fromString(entry.getValue());
+        traceId = entry.getValue();
       } else if (SPAN_ID.equals(key)) {
-        spanId = UUID.fromString(entry.getValue());
+        spanId = entry.getValue();
       } else if (SAMPLE.equals(key)) {
         sampling = Boolean.valueOf(entry.getValue());
       } else if (key.startsWith(BAGGAGE_PREFIX)) {
@@ -65,7 +65,8 @@ public class TextMapPropagator implements Propagator<TextMap> {
     if (traceId == null || spanId == null) {
       return null;
     }
-    return new WavefrontSpanContext(traceId, spanId, baggage, sampling);
+    return new WavefrontSpanContext(Ids.parseUuidHigh(traceId), Ids.parseUuidLow(traceId),
+        Ids.parseUuidHigh(spanId), Ids.parseUuidLow(spanId), baggage, sampling);
   }
 
   private static String stripPrefix(String key) {
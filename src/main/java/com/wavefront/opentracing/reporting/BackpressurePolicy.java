@@ -0,0 +1,34 @@
+package com.wavefront.opentracing.reporting;
+
+/**
+ * What {@link WavefrontSpanReporter} does with a span reported while the in-memory buffer of its
+ * sending worker is full.
+ */
+public enum BackpressurePolicy {
+
+  /**
+   * Drop the span being reported. Counted by {@code reporter.spans.dropped}.
+   */
+  DROP_NEWEST,
+
+  /**
+   * Evict the oldest buffered span to make room for the span being reported. Counted by
+   * {@code reporter.spans.evicted}.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Block the reporting thread until there is room in the buffer, up to the configured block
+   * timeout, then drop the span. Blocked reports and the time spent blocking are counted by
+   * {@code reporter.spans.blocked} and {@code reporter.blocked_time.micros}, spans dropped after
+   * the timeout by {@code reporter.spans.dropped}.
+   */
+  BLOCK_WITH_TIMEOUT,
+
+  /**
+   * Send the span on the reporting thread, bypassing the buffer. Spans sent this way may be sent
+   * out of order with the buffered spans of their trace. Counted by
+   * {@code reporter.spans.caller_runs}.
+   */
+  CALLER_RUNS
+}
@@ -1,5 +1,6 @@
 package com.wavefront.opentracing.reporting;
 
+import com.wavefront.opentracing.FinishedSpan;
 import com.wavefront.opentracing.WavefrontSpan;
 
 import java.io.IOException;
@@ -34,6 +35,33 @@ public class CompositeReporter implements Reporter {
     }
   }
 
+  @Override
+  public void report(FinishedSpan span) throws IOException {
+    for (Reporter reporter : reporters) {
+      reporter.report(span);
+    }
+  }
+
+  @Override
+  public void report(List<FinishedSpan> spans) throws IOException {
+    for (Reporter reporter : reporters) {
+      reporter.report(spans);
+    }
+  }
+
+  /**
+   * Supports finished span snapshots if all of its reporters do.
+   */
+  @Override
+  public boolean supportsFinishedSpans() {
+    for (Reporter reporter : reporters) {
+      if (!reporter.supportsFinishedSpans()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public int getFailureCount() {
     int result = 0;
@@ -0,0 +1,350 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Overflow tier of {@link WavefrontSpanReporter} that stores spans in memory-mapped segment files
+ * under a directory, so that spans that do not fit in the in-memory buffer survive both outages
+ * and restarts without using heap.
+ *
+ * Spans are appended to the newest segment and consumed in order from the oldest one. Each
+ * segment starts with a header holding a magic number, the read and write positions and the
+ * number of unread spans, followed by length-prefixed {@link SpanCodec} records. The header is
+ * updated after every write and read, so segments left behind by a previous process are picked
+ * up where they were left off. When adding a segment would exceed the byte cap, the oldest
+ * segment is deleted along with its unread spans.
+ *
+ * A spill holds an exclusive lock on a file in its directory while it is open, so that two
+ * reporters never share a directory and replay or overwrite each other's segments.
+ */
+@ThreadSafe
+final class DiskSpill implements Closeable {
+  private static final Logger logger = Logger.getLogger(DiskSpill.class.getName());
+
+  private static final int MAGIC = 0x57465350;
+  private static final int HEADER_BYTES = 16;
+  private static final int READ_POS_OFFSET = 4;
+  private static final int WRITE_POS_OFFSET = 8;
+  private static final int PENDING_OFFSET = 12;
+  private static final String FILE_PREFIX = "spans-";
+  private static final String FILE_SUFFIX = ".spill";
+  private static final String LOCK_FILE = "spill.lock";
+  private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+  private static final int MAX_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+  private final File directory;
+  private final long maxBytes;
+  private final int segmentBytes;
+  private final LongConsumer evictionListener;
+  private final FileChannel lockChannel;
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private long nextSequence = 0;
+  private ByteBuffer scratch = ByteBuffer.allocate(4096);
+  private boolean closed = false;
+
+  /**
+   * Opens the spill, recovering the segments left in the directory by a previous process.
+   *
+   * @param directory        the directory holding the segment files, created if missing
+   * @param maxBytes         the maximum total size of the segment files
+   * @param evictionListener called with the number of unread spans in every evicted segment
+   * @throws IOException if the directory is used by another spill, or the directory or an
+   *                     existing segment cannot be opened
+   */
+  DiskSpill(File directory, long maxBytes, LongConsumer evictionListener) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("cannot create directory " + directory);
+    }
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    // keep segments small relative to the cap so that eviction discards little at a time
+    this.segmentBytes = (int) Math.max(MIN_SEGMENT_BYTES, Math.min(MAX_SEGMENT_BYTES,
+        maxBytes / 8));
+    this.evictionListener = evictionListener;
+    this.lockChannel = lock(directory);
+    try {
+      recover();
+    } catch (IOException | RuntimeException ex) {
+      lockChannel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Appends a span, evicting the oldest segments if needed to stay under the byte cap.
+   *
+   * @return {@code false} if the span is too large for a segment or could not be written
+   */
+  synchronized boolean offer(FinishedSpan span) {
+    if (closed) {
+      return false;
+    }
+    int maxSize = SpanCodec.maxEncodedSize(span);
+    if (scratch.capacity() < maxSize) {
+      scratch = ByteBuffer.allocate(Math.max(maxSize, scratch.capacity() * 2));
+    }
+    scratch.clear();
+    SpanCodec.encode(span, scratch);
+    scratch.flip();
+    int recordBytes = 4 + scratch.remaining();
+    if (HEADER_BYTES + recordBytes > segmentBytes) {
+      return false;
+    }
+    Segment tail = segments.peekLast();
+    if (tail == null || tail.writePos + recordBytes > tail.capacity()) {
+      try {
+        while (!segments.isEmpty() &&
+            (segments.size() + 1) * (long) segmentBytes > maxBytes) {
+          evict(segments.pollFirst());
+        }
+        tail = createSegment();
+      } catch (IOException ex) {
+        logger.log(Level.WARNING, "Error creating spill segment", ex);
+        return false;
+      }
+      segments.addLast(tail);
+    }
+    tail.buffer.putInt(tail.writePos, scratch.remaining());
+    ByteBuffer target = tail.buffer.duplicate();
+    target.position(tail.writePos + 4);
+    target.put(scratch);
+    tail.writePos += recordBytes;
+    tail.pending++;
+    tail.writeHeader();
+    return true;
+  }
+
+  /**
+   * Removes and returns the oldest span, or returns {@code null} if the spill is empty.
+   */
+  @Nullable
+  synchronized FinishedSpan poll() {
+    while (!closed) {
+      Segment head = segments.peekFirst();
+      if (head == null) {
+        return null;
+      }
+      if (head.readPos < head.writePos) {
+        int length = head.buffer.getInt(head.readPos);
+        int start = head.readPos + 4;
+        if (length <= 0 || length > head.writePos - start) {
+          logger.warning("Discarding corrupt spill segment " + head.file);
+          segments.pollFirst();
+          evict(head);
+          continue;
+        }
+        ByteBuffer record = head.buffer.duplicate();
+        record.position(start);
+        record.limit(start + length);
+        head.readPos = start + length;
+        head.pending--;
+        if (head.readPos == head.writePos && head == segments.peekLast()) {
+          // rewind the write segment once it is drained instead of rolling over to a new one
+          head.readPos = HEADER_BYTES;
+          head.writePos = HEADER_BYTES;
+        }
+        head.writeHeader();
+        try {
+          return SpanCodec.decode(record);
+        } catch (IllegalArgumentException ex) {
+          logger.log(Level.WARNING, "Discarding corrupt spilled span", ex);
+          continue;
+        }
+      }
+      if (head == segments.peekLast()) {
+        return null;
+      }
+      segments.pollFirst();
+      delete(head);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of unread spans.
+   */
+  synchronized long size() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.pending;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the total size of the segment files.
+   */
+  synchronized long bytes() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      bytes += segment.capacity();
+    }
+    return bytes;
+  }
+
+  /**
+   * Flushes the segments to disk. The segment files are kept for the next process to replay.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Segment segment : segments) {
+      segment.buffer.force();
+    }
+    segments.clear();
+    try {
+      // closing the channel releases the lock
+      lockChannel.close();
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Error releasing spill directory lock", ex);
+    }
+  }
+
+  private static FileChannel lock(File directory) throws IOException {
+    FileChannel channel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    FileLock lock;
+    try {
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException ex) {
+      // held by another spill of this process
+      lock = null;
+    }
+    if (lock == null) {
+      channel.close();
+      throw new IOException("spill directory " + directory + " is in use by another reporter");
+    }
+    return channel;
+  }
+
+  private void recover() throws IOException {
+    File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) &&
+        name.endsWith(FILE_SUFFIX));
+    if (files == null) {
+      throw new IOException("cannot list directory " + directory);
+    }
+    List<Segment> recovered = new ArrayList<>();
+    for (File file : files) {
+      long sequence;
+      try {
+        sequence = Long.parseLong(file.getName().substring(FILE_PREFIX.length(),
+            file.getName().length() - FILE_SUFFIX.length()));
+      } catch (NumberFormatException ex) {
+        continue;
+      }
+      if (file.length() < HEADER_BYTES || file.length() > MAX_SEGMENT_BYTES) {
+        logger.warning("Discarding invalid spill segment " + file);
+        delete(file);
+        continue;
+      }
+      Segment segment = new Segment(sequence, file, map(file, (int) file.length()));
+      if (!segment.readHeader()) {
+        logger.warning("Discarding invalid spill segment " + file);
+        delete(file);
+        continue;
+      }
+      recovered.add(segment);
+      nextSequence = Math.max(nextSequence, sequence + 1);
+    }
+    recovered.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+    segments.addAll(recovered);
+    while (segments.size() > 1 && bytes() > maxBytes) {
+      evict(segments.pollFirst());
+    }
+  }
+
+  private Segment createSegment() throws IOException {
+    long sequence = nextSequence++;
+    File file = new File(directory, String.format("%s%020d%s", FILE_PREFIX, sequence,
+        FILE_SUFFIX));
+    Segment segment = new Segment(sequence, file, map(file, segmentBytes));
+    segment.readPos = HEADER_BYTES;
+    segment.writePos = HEADER_BYTES;
+    segment.pending = 0;
+    segment.buffer.putInt(0, MAGIC);
+    segment.writeHeader();
+    return segment;
+  }
+
+  private void evict(Segment segment) {
+    if (segment.pending > 0) {
+      evictionListener.accept(segment.pending);
+    }
+    delete(segment);
+  }
+
+  private void delete(Segment segment) {
+    // the mapping is released once the buffer is garbage collected
+    delete(segment.file);
+  }
+
+  private static void delete(File file) {
+    if (!file.delete() && file.exists()) {
+      logger.warning("Cannot delete spill segment " + file);
+    }
+  }
+
+  private static MappedByteBuffer map(File file, int size) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(size);
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private static final class Segment {
+    private final long sequence;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private int readPos;
+    private int writePos;
+    private int pending;
+
+    private Segment(long sequence, File file, MappedByteBuffer buffer) {
+      this.sequence = sequence;
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    private int capacity() {
+      return buffer.capacity();
+    }
+
+    private boolean readHeader() {
+      readPos = buffer.getInt(READ_POS_OFFSET);
+      writePos = buffer.getInt(WRITE_POS_OFFSET);
+      pending = buffer.getInt(PENDING_OFFSET);
+      return buffer.getInt(0) == MAGIC && readPos >= HEADER_BYTES && readPos <= writePos &&
+          writePos <= capacity() && pending >= 0;
+    }
+
+    private void writeHeader() {
+      buffer.putInt(READ_POS_OFFSET, readPos);
+      buffer.putInt(WRITE_POS_OFFSET, writePos);
+      buffer.putInt(PENDING_OFFSET, pending);
+    }
+  }
+}
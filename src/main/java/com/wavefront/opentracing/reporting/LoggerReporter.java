@@ -1,9 +1,8 @@
 package com.wavefront.opentracing.reporting;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.wavefront.opentracing.Reference;
+import com.wavefront.opentracing.FinishedSpan;
 import com.wavefront.opentracing.WavefrontSpan;
-import com.wavefront.opentracing.WavefrontSpanContext;
 import com.wavefront.sdk.common.Utils;
 import com.wavefront.sdk.entities.tracing.SpanLog;
 
@@ -12,7 +11,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
 
 import static com.wavefront.sdk.common.Utils.spanLogsToLineData;
 
@@ -35,35 +35,54 @@ public class LoggerReporter implements Reporter {
     if (!logger.isTraceEnabled()) {
       return;
     }
-    WavefrontSpanContext ctx = span.context();
-    List<Reference> parentRefs = span.getParents();
-    List<Reference> followsRefs = span.getFollows();
+    report(span.getFinishedSpan(), span.context().getSamplingDecision());
+  }
 
-    List<UUID> parents = parentRefs == null ? null : parentRefs.stream().
-        map(Reference::getSpanContext).
-        map(WavefrontSpanContext::getSpanId).
-        collect(Collectors.toList());
+  @Override
+  public void report(FinishedSpan span) {
+    if (!logger.isTraceEnabled()) {
+      return;
+    }
+    report(span, null);
+  }
 
-    List<UUID> follows = followsRefs == null ? null : followsRefs.stream().
-        map(Reference::getSpanContext).
-        map(WavefrontSpanContext::getSpanId).
-        collect(Collectors.toList());
+  @Override
+  public void report(List<FinishedSpan> spans) {
+    if (!logger.isTraceEnabled()) {
+      return;
+    }
+    for (FinishedSpan span : spans) {
+      report(span, null);
+    }
+  }
 
+  private void report(FinishedSpan span, @Nullable Boolean samplingDecision) {
     List<SpanLog> spanLogs = span.getSpanLogs();
+    UUID traceId = span.getTraceId();
+    UUID spanId = span.getSpanId();
 
     String spanLine = Utils.tracingSpanToLineData(span.getOperationName(),
-        span.getStartTimeMicros(), span.getDurationMicroseconds(), source, ctx.getTraceId(),
-        ctx.getSpanId(), parents, follows, span.getTagsAsList(), spanLogs, "unknown");
-    logger.trace("Finished span: sampling={} {}", ctx.getSamplingDecision(), spanLine);
+        span.getStartTimeMicros(), span.getDurationMicros(), source, traceId, spanId,
+        span.getParents(), span.getFollows(), span.getTagsAsList(), spanLogs, "unknown");
+    if (samplingDecision != null) {
+      logger.trace("Finished span: sampling={} {}", samplingDecision, spanLine);
+    } else {
+      logger.trace("Finished span: {}", spanLine);
+    }
     if (!spanLogs.isEmpty()) {
       try {
-        logger.trace("SpanLogs: {}", spanLogsToLineData(ctx.getTraceId(), ctx.getSpanId(), spanLogs));
+        logger.trace("SpanLogs: {}", spanLogsToLineData(traceId, spanId, spanLogs));
       } catch (JsonProcessingException e) {
         logger.trace("Error processing the span logs: {}", e.getMessage(), e);
       }
     }
   }
 
+  @Override
+  public boolean supportsFinishedSpans() {
+    return true;
+  }
+
   @Override
   public int getFailureCount() {
     // no-op
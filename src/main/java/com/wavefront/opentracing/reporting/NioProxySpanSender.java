@@ -0,0 +1,570 @@
+package com.wavefront.opentracing.reporting;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.wavefront.opentracing.FinishedSpan;
+import com.wavefront.sdk.common.Pair;
+import com.wavefront.sdk.common.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sends finished spans to the tracing port of a Wavefront proxy over a non-blocking socket
+ * channel, in place of {@link com.wavefront.sdk.common.WavefrontSender#sendSpan}.
+ *
+ * Spans are encoded by a {@link SpanLineEncoder} straight into pooled direct buffers. A dedicated
+ * thread writes the buffers to the proxy once they are full, on every flush interval, and on
+ * {@link #flush()}. A line never spans two buffers, so that buffers are dropped, and writing
+ * resumes on a new connection, at line boundaries.
+ *
+ * When the connection fails, the thread reconnects with an exponential backoff. In the meantime
+ * spans are buffered up to the maximum number of buffers, beyond which the buffers of the oldest
+ * spans are dropped.
+ */
+class NioProxySpanSender implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(NioProxySpanSender.class.getName());
+  private static final long MIN_RECONNECT_DELAY_MILLIS = 100;
+  private static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+  // the time that flushing and closing wait for the buffered spans to be written
+  private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+
+  private static final int DISCONNECTED = 0;
+  private static final int CONNECTING = 1;
+  private static final int CONNECTED = 2;
+
+  private final String host;
+  private final int port;
+  private final int bufferBytes;
+  private final int maxBuffers;
+  private final long flushIntervalNanos;
+  private final LongConsumer droppedSpans;
+
+  private final Object lock = new Object();
+  // guarded by lock
+  private final SpanLineEncoder encoder;
+  private final ArrayDeque<Chunk> pool = new ArrayDeque<>();
+  private final ArrayDeque<Chunk> pending = new ArrayDeque<>();
+  @Nullable
+  private Chunk current;
+  /** The chunk that the sending thread is writing. */
+  @Nullable
+  private Chunk writing;
+  private int allocated;
+  private int lineStart;
+  private volatile boolean closed;
+  private volatile long closeDeadlineNanos;
+
+  // only accessed by the sending thread
+  private final Selector selector;
+  private final Thread thread;
+  @Nullable
+  private SocketChannel channel;
+  @Nullable
+  private SelectionKey key;
+  private long reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+  private long nextConnectNanos = System.nanoTime();
+  private volatile int state = DISCONNECTED;
+
+  private final AtomicInteger failures = new AtomicInteger();
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  /**
+   * @param host            the host of the proxy
+   * @param port            the tracing port of the proxy
+   * @param source          the source of the spans
+   * @param bufferBytes     the size of each buffer
+   * @param maxBuffers      the maximum number of buffers, at least 2
+   * @param flushInterval   the time after which a buffer that is not full is written, in
+   *                        milliseconds
+   * @param droppedSpans    receives the number of spans whenever spans are dropped
+   */
+  NioProxySpanSender(String host, int port, String source, int bufferBytes, int maxBuffers,
+                     long flushInterval, LongConsumer droppedSpans) {
+    this.host = host;
+    this.port = port;
+    this.encoder = new SpanLineEncoder(source);
+    this.bufferBytes = bufferBytes;
+    this.maxBuffers = Math.max(2, maxBuffers);
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+    this.droppedSpans = droppedSpans;
+    try {
+      this.selector = Selector.open();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    this.thread = new Thread(this::run, "wavefront-proxy-span-sender");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Sets the tags that the tracer adds to every span, which are then encoded once.
+   */
+  void setGlobalTags(List<Pair<String, String>> tags) {
+    synchronized (lock) {
+      encoder.setGlobalTags(tags);
+    }
+  }
+
+  /**
+   * Encodes a span, and its span logs, into the buffers to be written.
+   *
+   * @param span            the span
+   * @param includeSpanLogs whether to send the span logs of the span
+   * @throws IOException              if the sender is closed
+   * @throws IllegalArgumentException if the span has no name, or a tag with no key or value
+   */
+  void send(FinishedSpan span, boolean includeSpanLogs) throws IOException {
+    boolean wakeUp;
+    synchronized (lock) {
+      if (closed) {
+        throw new IOException("attempt to send using closed sender");
+      }
+      int sealed = pending.size();
+      encode(span, includeSpanLogs);
+      wakeUp = pending.size() > sealed;
+    }
+    if (wakeUp) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Encodes a batch of spans, and their span logs, into the buffers to be written, taking the
+   * lock and waking up the sending thread once for the whole batch. Spans that cannot be encoded
+   * are counted as dropped.
+   *
+   * @param spans           the spans
+   * @param includeSpanLogs whether to send the span logs of the spans
+   * @throws IOException if the sender is closed
+   */
+  void send(List<FinishedSpan> spans, boolean includeSpanLogs) throws IOException {
+    boolean wakeUp;
+    synchronized (lock) {
+      if (closed) {
+        throw new IOException("attempt to send using closed sender");
+      }
+      int sealed = pending.size();
+      for (FinishedSpan span : spans) {
+        try {
+          encode(span, includeSpanLogs);
+        } catch (IllegalArgumentException ex) {
+          drop(1);
+          logger.log(Level.WARNING, "invalid span, dropping span: " + span, ex);
+        }
+      }
+      wakeUp = pending.size() > sealed;
+    }
+    if (wakeUp) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Writes the buffered spans, waiting a bounded time for them to be written unless the proxy
+   * is unreachable.
+   */
+  void flush() {
+    synchronized (lock) {
+      seal();
+    }
+    selector.wakeup();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+    synchronized (lock) {
+      while (hasData() && state != DISCONNECTED) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return;
+        }
+        try {
+          lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered spans, waiting a bounded time for them to be written, and closes the
+   * connection. The spans that could not be written are counted as dropped.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closeDeadlineNanos = System.nanoTime() +
+          TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+      closed = true;
+      seal();
+    }
+    selector.wakeup();
+    try {
+      thread.join(DRAIN_TIMEOUT_MILLIS + 1000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  int getFailureCount() {
+    return failures.get();
+  }
+
+  long getSentCount() {
+    return sent.sum();
+  }
+
+  long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  /** Encodes a span, and its span logs, queueing the chunks that were filled. */
+  private void encode(FinishedSpan span, boolean includeSpanLogs) {
+    Chunk chunk = encodeSpan(span, includeSpanLogs);
+    chunk.spans++;
+    byte[] spanLogsLine = null;
+    if (includeSpanLogs && span.getSpanLogCount() > 0) {
+      spanLogsLine = spanLogsLine(span, chunk.buffer);
+    }
+    if (chunk != current) {
+      enqueue(chunk);
+    }
+    if (spanLogsLine != null) {
+      append(spanLogsLine);
+    }
+  }
+
+  /**
+   * Encodes the line of a span at the end of the current chunk, in a new chunk if it does not
+   * fit, or in a chunk of its own if it is larger than a chunk. Sets {@link #lineStart}.
+   *
+   * @return the chunk holding the line
+   */
+  private Chunk encodeSpan(FinishedSpan span, boolean includeSpanLogs) {
+    Chunk chunk = currentChunk();
+    if (tryEncode(span, includeSpanLogs, chunk.buffer)) {
+      return chunk;
+    }
+    if (chunk.buffer.position() > 0) {
+      seal();
+      chunk = currentChunk();
+      if (tryEncode(span, includeSpanLogs, chunk.buffer)) {
+        return chunk;
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(bufferBytes * 2);
+    while (!tryEncode(span, includeSpanLogs, buffer)) {
+      buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+    }
+    return new Chunk(buffer);
+  }
+
+  private boolean tryEncode(FinishedSpan span, boolean includeSpanLogs, ByteBuffer buffer) {
+    int start = buffer.position();
+    try {
+      encoder.encode(span, includeSpanLogs, buffer);
+      lineStart = start;
+      return true;
+    } catch (BufferOverflowException ex) {
+      buffer.position(start);
+      return false;
+    } catch (RuntimeException ex) {
+      buffer.position(start);
+      throw ex;
+    }
+  }
+
+  /**
+   * Formats the span logs of a span that was just encoded, as
+   * {@link com.wavefront.sdk.common.WavefrontSender#sendSpan} sends them.
+   */
+  @Nullable
+  private byte[] spanLogsLine(FinishedSpan span, ByteBuffer buffer) {
+    byte[] spanLine = new byte[buffer.position() - lineStart];
+    for (int i = 0; i < spanLine.length; i++) {
+      spanLine[i] = buffer.get(lineStart + i);
+    }
+    try {
+      return Utils.spanLogsToLineData(span.getTraceId(), span.getSpanId(), span.getSpanLogs(),
+          new String(spanLine, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+    } catch (JsonProcessingException ex) {
+      logger.log(Level.WARNING, "unable to serialize span logs to json: traceId:" +
+          span.getTraceId() + " spanId:" + span.getSpanId(), ex);
+      return null;
+    }
+  }
+
+  /** Appends a line, starting a new chunk if it does not fit. */
+  private void append(byte[] line) {
+    Chunk chunk = currentChunk();
+    if (chunk.buffer.remaining() < line.length) {
+      seal();
+      if (line.length > bufferBytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        buffer.position(line.length);
+        enqueue(new Chunk(buffer));
+        return;
+      }
+      chunk = currentChunk();
+    }
+    chunk.buffer.put(line);
+  }
+
+  private Chunk currentChunk() {
+    if (current != null) {
+      return current;
+    }
+    Chunk chunk = pool.poll();
+    if (chunk == null && allocated >= maxBuffers) {
+      // make room by dropping the oldest spans that are not being written
+      Chunk oldest;
+      while (chunk == null && (oldest = pending.poll()) != null) {
+        drop(oldest.spans);
+        chunk = recycle(oldest) ? pool.poll() : null;
+      }
+    }
+    if (chunk == null) {
+      chunk = new Chunk(ByteBuffer.allocateDirect(bufferBytes));
+      allocated++;
+    }
+    current = chunk;
+    return chunk;
+  }
+
+  /** Queues the current chunk to be written, if it holds any line. */
+  private void seal() {
+    if (current != null && current.buffer.position() > 0) {
+      Chunk chunk = current;
+      current = null;
+      enqueue(chunk);
+    }
+  }
+
+  /** Queues a chunk to be written, flipping its buffer for reading. */
+  private void enqueue(Chunk chunk) {
+    chunk.buffer.flip();
+    pending.add(chunk);
+  }
+
+  /**
+   * Returns a written or dropped chunk to the pool.
+   *
+   * @return false if the chunk is not pooled
+   */
+  private boolean recycle(Chunk chunk) {
+    if (!chunk.buffer.isDirect() || chunk.buffer.capacity() != bufferBytes) {
+      return false;
+    }
+    chunk.buffer.clear();
+    chunk.spans = 0;
+    pool.add(chunk);
+    return true;
+  }
+
+  private void drop(int spans) {
+    if (spans > 0) {
+      dropped.add(spans);
+      droppedSpans.accept(spans);
+    }
+  }
+
+  private boolean hasData() {
+    return writing != null || !pending.isEmpty();
+  }
+
+  private void run() {
+    long nextFlushNanos = System.nanoTime() + flushIntervalNanos;
+    while (true) {
+      long now = System.nanoTime();
+      boolean hasData;
+      synchronized (lock) {
+        if (now - nextFlushNanos >= 0) {
+          seal();
+          nextFlushNanos = now + flushIntervalNanos;
+        }
+        hasData = hasData();
+      }
+      if (closed && (!hasData || now - closeDeadlineNanos >= 0)) {
+        break;
+      }
+      try {
+        if (channel == null && hasData && now - nextConnectNanos >= 0) {
+          connect();
+        }
+        if (state == CONNECTED) {
+          write();
+        }
+        long timeoutNanos = nextFlushNanos - now;
+        if (channel == null && hasData) {
+          timeoutNanos = Math.min(timeoutNanos, nextConnectNanos - now);
+        }
+        if (closed) {
+          timeoutNanos = Math.min(timeoutNanos, closeDeadlineNanos - now);
+        }
+        selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+        if (key != null && key.isValid() && key.isConnectable() &&
+            selector.selectedKeys().contains(key)) {
+          if (channel.finishConnect()) {
+            key.interestOps(0);
+            connected();
+          }
+        }
+        selector.selectedKeys().clear();
+      } catch (IOException | UnresolvedAddressException ex) {
+        disconnect(ex);
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Error sending spans to the proxy", t);
+      }
+    }
+    closeChannel();
+    try {
+      selector.close();
+    } catch (IOException ex) {
+      // no-op
+    }
+    synchronized (lock) {
+      if (writing != null) {
+        drop(writing.spans);
+        writing = null;
+      }
+      Chunk chunk;
+      while ((chunk = pending.poll()) != null) {
+        drop(chunk.spans);
+      }
+      lock.notifyAll();
+    }
+  }
+
+  private void connect() throws IOException {
+    SocketChannel socketChannel = SocketChannel.open();
+    try {
+      socketChannel.configureBlocking(false);
+      boolean connected = socketChannel.connect(new InetSocketAddress(host, port));
+      key = socketChannel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT);
+    } catch (IOException | UnresolvedAddressException ex) {
+      socketChannel.close();
+      throw ex;
+    }
+    channel = socketChannel;
+    if (socketChannel.isConnected()) {
+      connected();
+    } else {
+      state = CONNECTING;
+    }
+  }
+
+  private void connected() {
+    reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+    state = CONNECTED;
+  }
+
+  /**
+   * Writes the queued chunks until they are all written or the socket cannot take more, in
+   * which case the thread waits for the socket to be writable.
+   */
+  private void write() throws IOException {
+    while (true) {
+      Chunk chunk;
+      synchronized (lock) {
+        if (writing == null) {
+          writing = pending.poll();
+        }
+        chunk = writing;
+        if (chunk == null) {
+          key.interestOps(0);
+          lock.notifyAll();
+          return;
+        }
+      }
+      channel.write(chunk.buffer);
+      if (chunk.buffer.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_WRITE);
+        return;
+      }
+      synchronized (lock) {
+        writing = null;
+        sent.add(chunk.spans);
+        recycle(chunk);
+      }
+    }
+  }
+
+  private void disconnect(Exception ex) {
+    failures.incrementAndGet();
+    if (logger.isLoggable(Level.WARNING)) {
+      logger.warning("Error sending spans to the proxy at " + host + ":" + port + ", retrying in " +
+          reconnectDelayMillis + " ms: " + ex);
+    }
+    closeChannel();
+    synchronized (lock) {
+      if (writing != null) {
+        // the line cut off by the failure is lost, the next line goes to the new connection
+        skipToLineStart(writing.buffer);
+      }
+      lock.notifyAll();
+    }
+    nextConnectNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reconnectDelayMillis);
+    reconnectDelayMillis = Math.min(MAX_RECONNECT_DELAY_MILLIS, reconnectDelayMillis * 2);
+  }
+
+  private void closeChannel() {
+    state = DISCONNECTED;
+    if (key != null) {
+      key.cancel();
+      key = null;
+    }
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException ex) {
+        // no-op
+      }
+      channel = null;
+    }
+  }
+
+  private static void skipToLineStart(ByteBuffer buffer) {
+    int position = buffer.position();
+    if (position == 0 || buffer.get(position - 1) == '\n') {
+      return;
+    }
+    while (position < buffer.limit() && buffer.get(position++) != '\n') {
+      // skip the rest of the line
+    }
+    buffer.position(position);
+  }
+
+  /** A buffer of whole lines, and the number of spans among them. */
+  private static final class Chunk {
+    private final ByteBuffer buffer;
+    private int spans;
+
+    Chunk(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded {@link BlockingQueue} of spans that stores its elements encoded in direct
+ * {@link ByteBuffer} slabs instead of on the heap.
+ *
+ * Spans are encoded with {@link SpanCodec} on the offering thread and appended to the newest slab
+ * as length-prefixed records. They are decoded again when polled. Slabs are allocated as the
+ * backlog grows, up to the byte cap, and recycled once fully consumed, so a steady backlog causes
+ * no allocation beyond the decoded spans. The queue is bounded both in spans and in bytes.
+ *
+ * A span whose record does not fit in a slab can never be queued, so every method adding one
+ * throws {@link IllegalArgumentException} instead of waiting or reporting the queue as full.
+ */
+@ThreadSafe
+final class OffHeapSpanQueue extends AbstractQueue<FinishedSpan>
+    implements BlockingQueue<FinishedSpan> {
+
+  private static final ThreadLocal<ByteBuffer> SCRATCH =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
+
+  private final int capacity;
+  private final int slabBytes;
+  private final int maxSlabs;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final Deque<Slab> slabs = new ArrayDeque<>();
+  private final Deque<ByteBuffer> freeSlabs = new ArrayDeque<>();
+  private int allocatedSlabs = 0;
+  private int count = 0;
+  private long usedBytes = 0;
+
+  /**
+   * @param capacity  the maximum number of spans in the queue
+   * @param maxBytes  the maximum number of bytes of off-heap memory used by the queue
+   * @param slabBytes the size of a slab, which bounds the size of an encoded span
+   * @throws IllegalArgumentException if a size is not positive or the slab size exceeds the
+   *                                  byte cap
+   */
+  OffHeapSpanQueue(int capacity, long maxBytes, int slabBytes) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("invalid capacity");
+    }
+    if (slabBytes <= 0 || slabBytes > maxBytes) {
+      throw new IllegalArgumentException("invalid slab size");
+    }
+    this.capacity = capacity;
+    this.slabBytes = slabBytes;
+    this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, maxBytes / slabBytes);
+  }
+
+  @Override
+  public boolean offer(FinishedSpan span) {
+    ByteBuffer record = encode(span);
+    checkFits(record);
+    lock.lock();
+    try {
+      return append(record);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(FinishedSpan span) throws InterruptedException {
+    ByteBuffer record = encode(span);
+    checkFits(record);
+    lock.lockInterruptibly();
+    try {
+      while (!append(record)) {
+        notFull.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(FinishedSpan span, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    ByteBuffer record = encode(span);
+    checkFits(record);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (!append(record)) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  @Nullable
+  public FinishedSpan poll() {
+    byte[] record;
+    lock.lock();
+    try {
+      record = removeRecord();
+    } finally {
+      lock.unlock();
+    }
+    return record == null ? null : SpanCodec.decode(ByteBuffer.wrap(record));
+  }
+
+  @Override
+  public FinishedSpan take() throws InterruptedException {
+    byte[] record;
+    lock.lockInterruptibly();
+    try {
+      while ((record = removeRecord()) == null) {
+        notEmpty.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+    return SpanCodec.decode(ByteBuffer.wrap(record));
+  }
+
+  @Override
+  @Nullable
+  public FinishedSpan poll(long timeout, TimeUnit unit) throws InterruptedException {
+    byte[] record;
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while ((record = removeRecord()) == null) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+    } finally {
+      lock.unlock();
+    }
+    return SpanCodec.decode(ByteBuffer.wrap(record));
+  }
+
+  @Override
+  @Nullable
+  public FinishedSpan peek() {
+    lock.lock();
+    try {
+      for (Slab slab : slabs) {
+        if (slab.readPos < slab.writePos) {
+          return SpanCodec.decode(slab.record(slab.readPos));
+        }
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super FinishedSpan> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super FinishedSpan> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException();
+    }
+    List<byte[]> records = new ArrayList<>(Math.min(maxElements, 64));
+    lock.lock();
+    try {
+      byte[] record;
+      while (records.size() < maxElements && (record = removeRecord()) != null) {
+        records.add(record);
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (byte[] record : records) {
+      c.add(SpanCodec.decode(ByteBuffer.wrap(record)));
+    }
+    return records.size();
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  /**
+   * Returns the number of bytes used by the encoded spans in the queue.
+   */
+  long usedBytes() {
+    lock.lock();
+    try {
+      return usedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Iterator<FinishedSpan> iterator() {
+    List<FinishedSpan> snapshot = new ArrayList<>();
+    lock.lock();
+    try {
+      for (Slab slab : slabs) {
+        int pos = slab.readPos;
+        while (pos < slab.writePos) {
+          ByteBuffer record = slab.record(pos);
+          pos += 4 + record.remaining();
+          snapshot.add(SpanCodec.decode(record));
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  /**
+   * Encodes a span into the calling thread's scratch buffer, which is returned flipped.
+   */
+  private static ByteBuffer encode(FinishedSpan span) {
+    if (span == null) {
+      throw new NullPointerException();
+    }
+    ByteBuffer scratch = SCRATCH.get();
+    int maxSize = SpanCodec.maxEncodedSize(span);
+    if (scratch.capacity() < maxSize) {
+      scratch = ByteBuffer.allocate(Math.max(maxSize, scratch.capacity() * 2));
+      SCRATCH.set(scratch);
+    }
+    scratch.clear();
+    SpanCodec.encode(span, scratch);
+    scratch.flip();
+    return scratch;
+  }
+
+  private void checkFits(ByteBuffer record) {
+    if (4 + record.remaining() > slabBytes) {
+      throw new IllegalArgumentException("span too large for the off-heap queue");
+    }
+  }
+
+  private boolean append(ByteBuffer record) {
+    int recordBytes = 4 + record.remaining();
+    if (count >= capacity) {
+      return false;
+    }
+    Slab tail = slabs.peekLast();
+    if (tail == null || tail.writePos + recordBytes > slabBytes) {
+      ByteBuffer buffer = freeSlabs.pollFirst();
+      if (buffer == null) {
+        if (allocatedSlabs >= maxSlabs) {
+          return false;
+        }
+        buffer = ByteBuffer.allocateDirect(slabBytes);
+        allocatedSlabs++;
+      }
+      tail = new Slab(buffer);
+      slabs.addLast(tail);
+    }
+    tail.buffer.putInt(tail.writePos, record.remaining());
+    ByteBuffer target = tail.buffer.duplicate();
+    target.position(tail.writePos + 4);
+    target.put(record.duplicate());
+    tail.writePos += recordBytes;
+    count++;
+    usedBytes += recordBytes;
+    notEmpty.signal();
+    return true;
+  }
+
+  @Nullable
+  private byte[] removeRecord() {
+    while (true) {
+      Slab head = slabs.peekFirst();
+      if (head == null) {
+        return null;
+      }
+      if (head.readPos < head.writePos) {
+        ByteBuffer record = head.record(head.readPos);
+        byte[] bytes = new byte[record.remaining()];
+        record.get(bytes);
+        head.readPos += 4 + bytes.length;
+        count--;
+        usedBytes -= 4 + bytes.length;
+        if (head.readPos == head.writePos && head == slabs.peekLast()) {
+          // reuse the only slab from the start rather than rolling over to a new one
+          head.readPos = 0;
+          head.writePos = 0;
+        }
+        notFull.signalAll();
+        return bytes;
+      }
+      if (head == slabs.peekLast()) {
+        return null;
+      }
+      slabs.pollFirst();
+      freeSlabs.addLast(head.buffer);
+    }
+  }
+
+  private static final class Slab {
+    private final ByteBuffer buffer;
+    private int readPos = 0;
+    private int writePos = 0;
+
+    private Slab(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    private ByteBuffer record(int pos) {
+      int length = buffer.getInt(pos);
+      ByteBuffer record = buffer.duplicate();
+      record.position(pos + 4);
+      record.limit(pos + 4 + length);
+      return record;
+    }
+  }
+}
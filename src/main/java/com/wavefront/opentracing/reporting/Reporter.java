@@ -1,9 +1,11 @@
 package com.wavefront.opentracing.reporting;
 
+import com.wavefront.opentracing.FinishedSpan;
 import com.wavefront.opentracing.WavefrontSpan;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Interface for reporting finished spans.
@@ -13,13 +15,56 @@ import java.io.IOException;
 public interface Reporter extends Closeable {
 
   /**
-   * Report opentracing span to Wavefront
+   * Report opentracing span to Wavefront. The span must not be kept after this method returns,
+   * as a tracer that recycles spans reuses it for another span.
    *
    * @param span OpenTracing span
    * @throws IOException
    */
   void report(WavefrontSpan span) throws IOException;
 
+  /**
+   * Report the immutable snapshot of a finished span. The built-in reporters implement
+   * {@link #report(WavefrontSpan)} by reporting {@link WavefrontSpan#getFinishedSpan()}, so
+   * that they never read the live span after it is handed over. Only called on reporters whose
+   * {@link #supportsFinishedSpans()} returns true.
+   *
+   * @param span snapshot of a finished span
+   * @throws IOException
+   * @throws UnsupportedOperationException if this reporter only supports live spans
+   */
+  default void report(FinishedSpan span) throws IOException {
+    throw new UnsupportedOperationException(getClass().getName() +
+        " does not support reporting finished span snapshots");
+  }
+
+  /**
+   * Whether this reporter implements {@link #report(FinishedSpan)}. The tracer options that hand
+   * reporters snapshots instead of live spans, such as tail sampling and batching of finished
+   * spans, are rejected for reporters that do not. Defaults to false.
+   *
+   * @return true if this reporter supports finished span snapshots
+   */
+  default boolean supportsFinishedSpans() {
+    return false;
+  }
+
+  /**
+   * Report a batch of immutable snapshots of finished spans, such as the spans a tracer collects
+   * per thread when it batches finished spans. The list must not be kept after this method
+   * returns, as the caller reuses it for the next batch. The default implementation reports the
+   * spans one by one through {@link #report(FinishedSpan)}.
+   *
+   * @param spans snapshots of finished spans
+   * @throws IOException
+   * @throws UnsupportedOperationException if this reporter only supports live spans
+   */
+  default void report(List<FinishedSpan> spans) throws IOException {
+    for (FinishedSpan span : spans) {
+      report(span);
+    }
+  }
+
   /**
    * Get total failure count reported by this reporter
    *
@@ -0,0 +1,223 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import io.opentracing.tag.Tags;
+
+/**
+ * Binary encoding of {@link FinishedSpan}, used to store spans outside of the heap.
+ */
+final class SpanCodec {
+
+  /** The number of entries of the per-thread cache of encoded operation names and tags. */
+  private static final int ENCODED_CACHE_SIZE = 256;
+  /** The length of the longest string kept in the cache. */
+  private static final int MAX_CACHED_LENGTH = 128;
+
+  private static final ThreadLocal<EncodedStrings> ENCODED_STRINGS =
+      ThreadLocal.withInitial(EncodedStrings::new);
+
+  private SpanCodec() {
+  }
+
+  /**
+   * Returns an upper bound of the number of bytes {@link #encode} writes for the given span.
+   */
+  static int maxEncodedSize(FinishedSpan span) {
+    int size = stringSize(span.getOperationName()) + 8 + 8 + 16 + 16;
+    size += 4 + 16 * span.getParentCount();
+    size += 4 + 16 * span.getFollowsCount();
+    size += 4;
+    for (int i = 0; i < span.getTagCount(); i++) {
+      size += stringSize(span.getTagKey(i)) + stringSize(span.getTagValue(i));
+    }
+    size += 4;
+    for (int i = 0; i < span.getSpanLogCount(); i++) {
+      size += 8 + 4;
+      for (String field : span.getSpanLogFields(i)) {
+        size += stringSize(field);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Writes the span at the current position of the buffer, which must have at least
+   * {@link #maxEncodedSize} bytes remaining.
+   */
+  static void encode(FinishedSpan span, ByteBuffer buffer) {
+    EncodedStrings encodedStrings = ENCODED_STRINGS.get();
+    putString(buffer, encodedStrings.get(span.getOperationName()));
+    buffer.putLong(span.getStartTimeMicros());
+    buffer.putLong(span.getDurationMicros());
+    buffer.putLong(span.getTraceIdHigh());
+    buffer.putLong(span.getTraceIdLow());
+    buffer.putLong(span.getSpanIdHigh());
+    buffer.putLong(span.getSpanIdLow());
+    buffer.putInt(span.getParentCount());
+    for (int i = 0; i < span.getParentCount(); i++) {
+      putUuid(buffer, span.getParentId(i));
+    }
+    buffer.putInt(span.getFollowsCount());
+    for (int i = 0; i < span.getFollowsCount(); i++) {
+      putUuid(buffer, span.getFollowsId(i));
+    }
+    buffer.putInt(span.getTagCount());
+    for (int i = 0; i < span.getTagCount(); i++) {
+      putString(buffer, encodedStrings.get(span.getTagKey(i)));
+      putString(buffer, encodedStrings.get(span.getTagValue(i)));
+    }
+    buffer.putInt(span.getSpanLogCount());
+    for (int i = 0; i < span.getSpanLogCount(); i++) {
+      String[] fields = span.getSpanLogFields(i);
+      buffer.putLong(span.getSpanLogTimestamp(i));
+      buffer.putInt(fields.length / 2);
+      for (String field : fields) {
+        putString(buffer, field);
+      }
+    }
+  }
+
+  /**
+   * Reads a span written by {@link #encode} from the current position of the buffer.
+   *
+   * @throws IllegalArgumentException if the bytes do not hold a valid span
+   */
+  static FinishedSpan decode(ByteBuffer buffer) {
+    try {
+      String operationName = getString(buffer);
+      long startTimeMicros = buffer.getLong();
+      long durationMicros = buffer.getLong();
+      long traceIdHigh = buffer.getLong();
+      long traceIdLow = buffer.getLong();
+      long spanIdHigh = buffer.getLong();
+      long spanIdLow = buffer.getLong();
+      long[] parentIds = getIds(buffer);
+      long[] followsIds = getIds(buffer);
+      String[] tags = getStrings(buffer, 2 * getCount(buffer));
+      int numLogs = getCount(buffer);
+      long[] logTimestamps = new long[numLogs];
+      int[] logFieldEnds = new int[numLogs];
+      List<String> logFields = new ArrayList<>();
+      boolean error = false;
+      for (int i = 0; i < numLogs; i++) {
+        logTimestamps[i] = buffer.getLong();
+        int numFields = getCount(buffer);
+        for (int j = 0; j < 2 * numFields; j++) {
+          logFields.add(getString(buffer));
+        }
+        logFieldEnds[i] = logFields.size();
+      }
+      for (int i = 0; i < tags.length; i += 2) {
+        error |= Tags.ERROR.getKey().equals(tags[i]);
+      }
+      return new FinishedSpan(operationName, startTimeMicros, durationMicros, traceIdHigh,
+          traceIdLow, spanIdHigh, spanIdLow, parentIds, followsIds, tags, logTimestamps,
+          logFieldEnds, logFields.toArray(new String[0]), error);
+    } catch (BufferUnderflowException ex) {
+      throw new IllegalArgumentException("truncated span", ex);
+    }
+  }
+
+  private static int stringSize(@Nullable String s) {
+    // worst case of three bytes per UTF-16 char avoids encoding the string twice
+    return 4 + (s == null ? 0 : 3 * s.length());
+  }
+
+  private static void putString(ByteBuffer buffer, @Nullable String s) {
+    if (s == null) {
+      buffer.putInt(-1);
+      return;
+    }
+    putString(buffer, s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void putString(ByteBuffer buffer, @Nullable byte[] bytes) {
+    if (bytes == null) {
+      buffer.putInt(-1);
+      return;
+    }
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
+
+  @Nullable
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > buffer.remaining()) {
+      throw new IllegalArgumentException("invalid string length");
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void putUuid(ByteBuffer buffer, UUID uuid) {
+    buffer.putLong(uuid.getMostSignificantBits());
+    buffer.putLong(uuid.getLeastSignificantBits());
+  }
+
+  private static long[] getIds(ByteBuffer buffer) {
+    int count = getCount(buffer);
+    long[] ids = new long[2 * count];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = buffer.getLong();
+    }
+    return ids;
+  }
+
+  private static String[] getStrings(ByteBuffer buffer, int count) {
+    String[] strings = new String[count];
+    for (int i = 0; i < count; i++) {
+      strings[i] = getString(buffer);
+    }
+    return strings;
+  }
+
+  private static int getCount(ByteBuffer buffer) {
+    int count = buffer.getInt();
+    // every element takes at least 4 bytes, so a larger count only comes from corrupt data
+    if (count < 0 || count > buffer.remaining() / 4) {
+      throw new IllegalArgumentException("invalid count");
+    }
+    return count;
+  }
+
+  /**
+   * Direct-mapped cache of the UTF-8 encoding of recently encoded strings, compared by identity.
+   * Operation names and tags are mostly literals or interned by the tracer, so the same instances
+   * recur from span to span and are only encoded once.
+   */
+  private static final class EncodedStrings {
+    private final String[] strings = new String[ENCODED_CACHE_SIZE];
+    private final byte[][] bytes = new byte[ENCODED_CACHE_SIZE][];
+
+    @Nullable
+    byte[] get(@Nullable String s) {
+      if (s == null) {
+        return null;
+      }
+      if (s.length() > MAX_CACHED_LENGTH) {
+        return s.getBytes(StandardCharsets.UTF_8);
+      }
+      int index = s.hashCode() & (ENCODED_CACHE_SIZE - 1);
+      if (strings[index] != s) {
+        strings[index] = s;
+        bytes[index] = s.getBytes(StandardCharsets.UTF_8);
+      }
+      return bytes[index];
+    }
+  }
+}
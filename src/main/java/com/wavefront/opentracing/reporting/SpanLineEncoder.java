@@ -0,0 +1,236 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+import com.wavefront.sdk.common.Pair;
+import com.wavefront.sdk.common.Utils;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.wavefront.sdk.common.Constants.SPAN_LOG_KEY;
+
+/**
+ * Encodes finished spans into the Wavefront tracing span line format, byte for byte as
+ * {@link Utils#tracingSpanToLineData} formats them, directly into a {@link ByteBuffer}.
+ *
+ * The source, the global tags and the sanitized tag keys are encoded once, and everything else
+ * is encoded without intermediate strings. The global tags of a span are recognized by being the
+ * same strings, in the same order, at the start of its tags, which is where the tracer puts
+ * them. Not thread-safe.
+ */
+class SpanLineEncoder {
+
+  private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+  private static final byte[] TRACE_ID = ascii(" traceId=");
+  private static final byte[] SPAN_ID = ascii(" spanId=");
+  private static final byte[] PARENT = ascii(" parent=");
+  private static final byte[] FOLLOWS_FROM = ascii(" followsFrom=");
+  private static final byte[] SPAN_LOGS_TAG = utf8(" " + Utils.sanitize(SPAN_LOG_KEY) + "=" +
+      Utils.sanitize("true"));
+  private static final int KEY_CACHE_SIZE = 256;
+
+  private final byte[] source;
+  private String[] globalKeys = new String[0];
+  private String[] globalValues = new String[0];
+  private byte[][] encodedGlobalTags = new byte[0][];
+  // direct-mapped cache of the encoded tag keys, by identity
+  private final String[] cachedKeys = new String[KEY_CACHE_SIZE];
+  private final byte[][] encodedKeys = new byte[KEY_CACHE_SIZE][];
+  private final byte[] digits = new byte[20];
+
+  /**
+   * @param source the source of the spans
+   * @throws IllegalArgumentException if the source is blank
+   */
+  SpanLineEncoder(String source) {
+    if (source == null || source.isEmpty()) {
+      throw new IllegalArgumentException("span source cannot be blank");
+    }
+    this.source = utf8(" source=" + Utils.sanitizeValue(source));
+  }
+
+  /**
+   * Sets the tags that the tracer adds to every span, which are then encoded once.
+   */
+  void setGlobalTags(List<Pair<String, String>> tags) {
+    String[] keys = new String[tags.size()];
+    String[] values = new String[tags.size()];
+    byte[][] encoded = new byte[tags.size()][];
+    for (int i = 0; i < tags.size(); i++) {
+      keys[i] = tags.get(i)._1;
+      values[i] = tags.get(i)._2;
+      if (keys[i] != null && !keys[i].isEmpty() && values[i] != null && !values[i].isEmpty()) {
+        encoded[i] = utf8(" " + Utils.sanitize(keys[i]) + "=" + Utils.sanitizeValue(values[i]));
+      }
+    }
+    globalKeys = keys;
+    globalValues = values;
+    encodedGlobalTags = encoded;
+  }
+
+  /**
+   * Encodes the line of a span, including its trailing newline, at the position of the buffer.
+   * The position of the buffer is undefined if an exception is thrown.
+   *
+   * @param span            the span
+   * @param includeSpanLogs whether the span logs of the span are sent
+   * @param out             the buffer to encode into
+   * @throws BufferOverflowException  if the line does not fit into the buffer
+   * @throws IllegalArgumentException if the span has no name, or a tag with no key or value
+   */
+  void encode(FinishedSpan span, boolean includeSpanLogs, ByteBuffer out) {
+    String name = span.getOperationName();
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException("span name cannot be blank");
+    }
+    putValue(name, out);
+    out.put(source);
+    out.put(TRACE_ID);
+    putUuid(span.getTraceIdHigh(), span.getTraceIdLow(), out);
+    out.put(SPAN_ID);
+    putUuid(span.getSpanIdHigh(), span.getSpanIdLow(), out);
+    for (int i = 0; i < span.getParentCount(); i++) {
+      out.put(PARENT);
+      putUuid(span.getParentIdHigh(i), span.getParentIdLow(i), out);
+    }
+    for (int i = 0; i < span.getFollowsCount(); i++) {
+      out.put(FOLLOWS_FROM);
+      putUuid(span.getFollowsIdHigh(i), span.getFollowsIdLow(i), out);
+    }
+    int global = 0;
+    for (int i = 0; i < span.getTagCount(); i++) {
+      String key = span.getTagKey(i);
+      String value = span.getTagValue(i);
+      // the global tags come first, except those that the span overrides
+      byte[] encoded = null;
+      while (encoded == null && global < globalKeys.length) {
+        if (key == globalKeys[global] && value == globalValues[global]) {
+          encoded = encodedGlobalTags[global];
+        }
+        global++;
+      }
+      if (encoded != null) {
+        out.put(encoded);
+        continue;
+      }
+      if (key == null || key.isEmpty()) {
+        throw new IllegalArgumentException("span tag key cannot be blank");
+      }
+      if (value == null || value.isEmpty()) {
+        throw new IllegalArgumentException("span tag value cannot be blank for tag key: " + key);
+      }
+      out.put((byte) ' ');
+      out.put(encodedKey(key));
+      out.put((byte) '=');
+      putValue(value, out);
+    }
+    if (includeSpanLogs && span.getSpanLogCount() > 0) {
+      out.put(SPAN_LOGS_TAG);
+    }
+    out.put((byte) ' ');
+    putLong(span.getStartTimeMicros() / 1000, out);
+    out.put((byte) ' ');
+    putLong(span.getDurationMicros() / 1000, out);
+    out.put((byte) '\n');
+  }
+
+  private byte[] encodedKey(String key) {
+    int index = System.identityHashCode(key) & (KEY_CACHE_SIZE - 1);
+    if (cachedKeys[index] == key) {
+      return encodedKeys[index];
+    }
+    byte[] encoded = utf8(Utils.sanitize(key));
+    cachedKeys[index] = key;
+    encodedKeys[index] = encoded;
+    return encoded;
+  }
+
+  /** Encodes a value as {@link Utils#sanitizeValue} does. */
+  private static void putValue(String value, ByteBuffer out) {
+    int start = 0;
+    int end = value.length();
+    while (start < end && value.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && value.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    out.put((byte) '"');
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        out.put((byte) '\\');
+        out.put((byte) '"');
+      } else if (c == '\n') {
+        out.put((byte) '\\');
+        out.put((byte) 'n');
+      } else if (c < 0x80) {
+        out.put((byte) c);
+      } else if (c < 0x800) {
+        out.put((byte) (0xc0 | (c >> 6)));
+        out.put((byte) (0x80 | (c & 0x3f)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < end &&
+          Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        out.put((byte) (0xf0 | (codePoint >> 18)));
+        out.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+        out.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+        out.put((byte) (0x80 | (codePoint & 0x3f)));
+      } else if (Character.isSurrogate(c)) {
+        // as String.getBytes replaces unpaired surrogates
+        out.put((byte) '?');
+      } else {
+        out.put((byte) (0xe0 | (c >> 12)));
+        out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+        out.put((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+    out.put((byte) '"');
+  }
+
+  /** Encodes an id as {@link java.util.UUID#toString()} does. */
+  private static void putUuid(long high, long low, ByteBuffer out) {
+    putHex(high >>> 32, 8, out);
+    out.put((byte) '-');
+    putHex(high >>> 16, 4, out);
+    out.put((byte) '-');
+    putHex(high, 4, out);
+    out.put((byte) '-');
+    putHex(low >>> 48, 4, out);
+    out.put((byte) '-');
+    putHex(low, 12, out);
+  }
+
+  private static void putHex(long value, int digits, ByteBuffer out) {
+    for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+      out.put(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+    }
+  }
+
+  private void putLong(long value, ByteBuffer out) {
+    if (value == Long.MIN_VALUE) {
+      out.put(ascii(Long.toString(value)));
+      return;
+    }
+    if (value < 0) {
+      out.put((byte) '-');
+      value = -value;
+    }
+    int i = digits.length;
+    do {
+      digits[--i] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+    out.put(digits, i, digits.length - i);
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] utf8(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
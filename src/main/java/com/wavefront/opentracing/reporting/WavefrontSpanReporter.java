@@ -2,23 +2,32 @@ package com.wavefront.opentracing.reporting;
 
 import com.wavefront.internal.reporter.WavefrontInternalReporter;
 import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.DeltaCounter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.Histogram;
 import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
-import com.wavefront.opentracing.Reference;
+import com.wavefront.opentracing.FinishedSpan;
 import com.wavefront.opentracing.WavefrontSpan;
-import com.wavefront.opentracing.WavefrontSpanContext;
+import com.wavefront.opentracing.reporting.queue.BlockingWaitStrategy;
+import com.wavefront.opentracing.reporting.queue.RingBufferQueue;
+import com.wavefront.opentracing.reporting.queue.WaitStrategy;
+import com.wavefront.sdk.common.Pair;
 import com.wavefront.sdk.common.WavefrontSender;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import java.util.UUID;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
 
 import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
 
@@ -29,14 +38,27 @@ import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
  */
 public class WavefrontSpanReporter implements Reporter, Runnable {
   private static final Logger logger = Logger.getLogger(WavefrontSpanReporter.class.getName());
+  private static final long SPILL_POLL_MILLIS = 100;
+  private static final int MIN_SLAB_BYTES = 64 * 1024;
+  private static final int MAX_SLAB_BYTES = 4 * 1024 * 1024;
+  private static final int PROXY_BUFFER_BYTES = 64 * 1024;
+  private static final int PROXY_MAX_BUFFERS = 64;
+  private static final long PROXY_FLUSH_INTERVAL_MILLIS = 1000;
 
   private final WavefrontSender wavefrontSender;
   private final String source;
-  private final LinkedBlockingQueue<WavefrontSpan> spanBuffer;
-  private final Thread sendingThread;
+  private final Worker[] workers;
   private final Random random;
   private final float logPercent;
   private final boolean reportSpanLogs;
+  private final int batchSize;
+  private final long batchLingerNanos;
+  private final BackpressurePolicy backpressurePolicy;
+  private final long blockTimeoutNanos;
+  @Nullable
+  private final DiskSpill spill;
+  @Nullable
+  private final NioProxySpanSender proxySpanSender;
 
   /**
    * Users create a WavefrontSpanReporter and provide it to the tracer, which upon initialization
@@ -46,6 +68,16 @@ public class WavefrontSpanReporter implements Reporter, Runnable {
   private DeltaCounter spansDropped;
   private DeltaCounter spansReceived;
   private DeltaCounter reportErrors;
+  private DeltaCounter spansEvicted;
+  private DeltaCounter spansOversized;
+  private DeltaCounter spansBlocked;
+  private DeltaCounter blockedTimeMicros;
+  private DeltaCounter spansCallerRuns;
+  private DeltaCounter spillWritten;
+  private DeltaCounter spillReplayed;
+  private DeltaCounter spillEvicted;
+  private Histogram batchSizes;
+  private Histogram batchLingerMillis;
 
   private volatile boolean stop = false;
 
@@ -54,6 +86,17 @@ public class WavefrontSpanReporter implements Reporter, Runnable {
     private int maxQueueSize = 50000;
     private float logPercent = 0.1f;
     private boolean reportSpanLogs = true;
+    private Supplier<? extends WaitStrategy> waitStrategy = BlockingWaitStrategy::new;
+    private int numWorkers = 1;
+    private int batchSize = 1;
+    private long batchLingerMillis = 0;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.DROP_NEWEST;
+    private long blockTimeoutMillis = 100;
+    private String spillDirectory = null;
+    private long spillMaxBytes = 256L * 1024 * 1024;
+    private long offHeapQueueBytes = 0;
+    private String proxyHost = null;
+    private int proxyTracingPort;
 
     public Builder() {
       this.source = getDefaultSource();
@@ -80,6 +123,7 @@ public class WavefrontSpanReporter implements Reporter, Runnable {
 
     /**
      * Set max queue size of in-memory buffer. Incoming spans are dropped if buffer is full.
+     * With more than one sending worker, the capacity is split evenly between the workers.
      *
      * @param maxQueueSize Max queue size of in-memory buffer
      * @return {@code this}
@@ -108,6 +152,191 @@ public class WavefrontSpanReporter implements Reporter, Runnable {
       return this;
     }
 
+    /**
+     * Set the strategy the sending workers use to wait for spans when their in-memory buffer is
+     * empty. The supplier is called once per worker. Defaults to {@link BlockingWaitStrategy}.
+     *
+     * @param waitStrategy supplier of the wait strategy, such as
+     *                     {@code ParkingWaitStrategy::new} or {@code SpinThenParkWaitStrategy::new}
+     * @return {@code this}
+     */
+    public Builder withWaitStrategy(Supplier<? extends WaitStrategy> waitStrategy) {
+      if (waitStrategy == null) {
+        throw new IllegalArgumentException("invalid wait strategy");
+      }
+      this.waitStrategy = waitStrategy;
+      return this;
+    }
+
+    /**
+     * Set the number of sending workers. Each worker owns a thread and an in-memory buffer, and
+     * all spans of a trace are routed to the same worker so that they are sent in order.
+     * Defaults to 1.
+     *
+     * @param numWorkers the number of sending workers
+     * @return {@code this}
+     * @throws IllegalArgumentException if the number of workers is not greater than 0
+     */
+    public Builder withNumWorkers(int numWorkers) {
+      if (numWorkers <= 0) {
+        throw new IllegalArgumentException("invalid number of workers");
+      }
+      this.numWorkers = numWorkers;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of spans the sending thread drains from the in-memory buffer and
+     * hands to the sender at once. Defaults to 1, which sends every span as soon as it is taken.
+     * The proxy span sender encodes a batch in one go, while the WavefrontSender is still handed
+     * the spans of a batch one by one.
+     *
+     * @param batchSize the maximum number of spans in a batch
+     * @return {@code this}
+     * @throws IllegalArgumentException if the batch size is not greater than 0
+     */
+    public Builder withBatchSize(int batchSize) {
+      if (batchSize <= 0) {
+        throw new IllegalArgumentException("invalid batch size");
+      }
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Set how long the sending thread waits for more spans to fill a batch before sending a
+     * partial batch. Defaults to 0, which sends whatever is buffered without waiting. Only has an
+     * effect when the batch size is greater than 1.
+     *
+     * @param batchLingerMillis the maximum time to wait for a batch to fill, in milliseconds
+     * @return {@code this}
+     * @throws IllegalArgumentException if the linger time is negative
+     */
+    public Builder withBatchLingerMillis(long batchLingerMillis) {
+      if (batchLingerMillis < 0) {
+        throw new IllegalArgumentException("invalid batch linger millis");
+      }
+      this.batchLingerMillis = batchLingerMillis;
+      return this;
+    }
+
+    /**
+     * Set what happens to a span reported while the in-memory buffer is full. Defaults to
+     * {@link BackpressurePolicy#DROP_NEWEST}.
+     *
+     * @param backpressurePolicy the backpressure policy
+     * @return {@code this}
+     */
+    public Builder withBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+      if (backpressurePolicy == null) {
+        throw new IllegalArgumentException("invalid backpressure policy");
+      }
+      this.backpressurePolicy = backpressurePolicy;
+      return this;
+    }
+
+    /**
+     * Set how long a report blocks on a full buffer before the span is dropped, when using
+     * {@link BackpressurePolicy#BLOCK_WITH_TIMEOUT}. Defaults to 100 ms.
+     *
+     * @param blockTimeoutMillis the maximum time to block, in milliseconds
+     * @return {@code this}
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public Builder withBlockTimeoutMillis(long blockTimeoutMillis) {
+      if (blockTimeoutMillis < 0) {
+        throw new IllegalArgumentException("invalid block timeout millis");
+      }
+      this.blockTimeoutMillis = blockTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Keep the in-memory buffer outside of the Java heap, encoded in direct byte buffers of at
+     * most the given total size. Spans are encoded on the reporting thread and decoded by the
+     * sending worker, so a large backlog does not churn the old generation. The buffer remains
+     * bounded by the max queue size as well. The wait strategy does not apply to an off-heap
+     * buffer. Disabled by default.
+     *
+     * The buffer of each worker is made of slabs of a sixteenth of its share of the size, from
+     * 64 KB to 4 MB. A span too large for a slab is dropped without evicting any buffered span,
+     * and counted by the {@code reporter.spans.oversized} internal metric.
+     *
+     * @param offHeapQueueBytes the maximum size of the off-heap buffer across all workers, at
+     *                          least 1 MB
+     * @return {@code this}
+     * @throws IllegalArgumentException if the size is less than 1 MB
+     */
+    public Builder withOffHeapQueueBytes(long offHeapQueueBytes) {
+      if (offHeapQueueBytes < 1024 * 1024) {
+        throw new IllegalArgumentException("invalid off-heap queue bytes");
+      }
+      this.offHeapQueueBytes = offHeapQueueBytes;
+      return this;
+    }
+
+    /**
+     * Enable spilling spans that do not fit in the in-memory buffer to memory-mapped files in
+     * the given directory. Spilled spans are sent once the in-memory buffer drains, including
+     * spans spilled by a previous process using the same directory. Spans are only subject to the
+     * backpressure policy if they cannot be spilled.
+     * Spans still in the in-memory buffer when the reporter is closed are spilled as well.
+     *
+     * The spill is shared by the sending workers, so replayed spans are sent by whichever worker
+     * is idle, and do not keep the order of the spans of a trace. Only one reporter can use a
+     * directory at a time, which is enforced with a lock file in the directory.
+     *
+     * @param spillDirectory the directory holding the spill files, created if missing
+     * @return {@code this}
+     */
+    public Builder withSpillDirectory(String spillDirectory) {
+      if (spillDirectory == null || spillDirectory.isEmpty()) {
+        throw new IllegalArgumentException("invalid spill directory");
+      }
+      this.spillDirectory = spillDirectory;
+      return this;
+    }
+
+    /**
+     * Set the maximum size of the spill files. Once reached, the oldest spilled spans are evicted
+     * to make room for new ones. Defaults to 256 MB.
+     *
+     * @param spillMaxBytes the maximum size of the spill files, at least 1 MB
+     * @return {@code this}
+     * @throws IllegalArgumentException if the size is less than 1 MB
+     */
+    public Builder withSpillMaxBytes(long spillMaxBytes) {
+      if (spillMaxBytes < 1024 * 1024) {
+        throw new IllegalArgumentException("invalid spill max bytes");
+      }
+      this.spillMaxBytes = spillMaxBytes;
+      return this;
+    }
+
+    /**
+     * Send spans straight to the tracing port of a Wavefront proxy over a non-blocking socket,
+     * instead of through the WavefrontSender, which is still used for everything else. Spans are
+     * encoded into reusable off-heap buffers, encoding the source and the global tags of the
+     * tracer only once, and written in batches. The sender reconnects when the connection
+     * fails. Disabled by default.
+     *
+     * @param proxyHost        the host of the proxy
+     * @param proxyTracingPort the tracing port of the proxy
+     * @return {@code this}
+     * @throws IllegalArgumentException if the host is blank or the port is invalid
+     */
+    public Builder withProxySpanSender(String proxyHost, int proxyTracingPort) {
+      if (proxyHost == null || proxyHost.isEmpty()) {
+        throw new IllegalArgumentException("invalid proxy host");
+      }
+      if (proxyTracingPort <= 0 || proxyTracingPort > 65535) {
+        throw new IllegalArgumentException("invalid proxy tracing port");
+      }
+      this.proxyHost = proxyHost;
+      this.proxyTracingPort = proxyTracingPort;
+      return this;
+    }
+
     /**
      * Disable the reporting of span logs.
      *
@@ -123,80 +352,396 @@ public class WavefrontSpanReporter implements Reporter, Runnable {
      * WavefrontSender that can send those spans either be a via proxy or direct ingestion.
      *
      * @return {@link WavefrontSpanReporter}
+     * @throws IllegalArgumentException if the spill directory cannot be opened
      */
     public WavefrontSpanReporter build(WavefrontSender wavefrontSender) {
       return new WavefrontSpanReporter(wavefrontSender, this.source, this.maxQueueSize,
-          this.logPercent, this.reportSpanLogs);
+          this.logPercent, this.reportSpanLogs, this.waitStrategy, this.numWorkers,
+          this.batchSize, this.batchLingerMillis, this.backpressurePolicy,
+          this.blockTimeoutMillis, this.spillDirectory, this.spillMaxBytes,
+          this.offHeapQueueBytes, this.proxyHost, this.proxyTracingPort);
     }
   }
 
   private WavefrontSpanReporter(WavefrontSender wavefrontSender, String source, int maxQueueSize,
-                                float logPercent, boolean reportSpanLogs) {
+                                float logPercent, boolean reportSpanLogs,
+                                Supplier<? extends WaitStrategy> waitStrategy, int numWorkers,
+                                int batchSize, long batchLingerMillis,
+                                BackpressurePolicy backpressurePolicy, long blockTimeoutMillis,
+                                @Nullable String spillDirectory, long spillMaxBytes,
+                                long offHeapQueueBytes, @Nullable String proxyHost,
+                                int proxyTracingPort) {
     this.wavefrontSender = wavefrontSender;
     this.source = source;
-    this.spanBuffer = new LinkedBlockingQueue<>(maxQueueSize);
     this.random = new Random();
     this.logPercent = logPercent;
     this.reportSpanLogs = reportSpanLogs;
+    this.batchSize = batchSize;
+    this.batchLingerNanos = TimeUnit.MILLISECONDS.toNanos(batchLingerMillis);
+    this.backpressurePolicy = backpressurePolicy;
+    this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+    if (spillDirectory == null) {
+      this.spill = null;
+    } else {
+      try {
+        this.spill = new DiskSpill(new File(spillDirectory), spillMaxBytes, evicted -> {
+          if (metricsReporter != null) {
+            spillEvicted.inc(evicted);
+          }
+        });
+      } catch (IOException ex) {
+        throw new IllegalArgumentException("invalid spill directory: " + ex.getMessage(), ex);
+      }
+    }
+    if (proxyHost == null) {
+      this.proxySpanSender = null;
+    } else {
+      this.proxySpanSender = new NioProxySpanSender(proxyHost, proxyTracingPort, source,
+          PROXY_BUFFER_BYTES, PROXY_MAX_BUFFERS, PROXY_FLUSH_INTERVAL_MILLIS, dropped -> {
+            if (metricsReporter != null) {
+              spansDropped.inc(dropped);
+            }
+          });
+    }
 
-    sendingThread = new Thread(this, "wavefrontSpanReporter");
-    sendingThread.setDaemon(true);
-    sendingThread.start();
+    workers = new Worker[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      // split the capacity evenly, handing the remainder to the first workers
+      int capacity = maxQueueSize / numWorkers + (i < maxQueueSize % numWorkers ? 1 : 0);
+      capacity = Math.max(1, capacity);
+      String threadName = numWorkers == 1 ? "wavefrontSpanReporter" :
+          "wavefrontSpanReporter-" + i;
+      BlockingQueue<FinishedSpan> spanBuffer;
+      if (offHeapQueueBytes > 0) {
+        long workerBytes = offHeapQueueBytes / numWorkers;
+        // small slabs relative to the cap, but large enough for spans with many tags
+        int slabBytes = (int) Math.min(workerBytes, Math.max(MIN_SLAB_BYTES,
+            Math.min(MAX_SLAB_BYTES, workerBytes / 16)));
+        spanBuffer = new OffHeapSpanQueue(capacity, workerBytes, slabBytes);
+      } else {
+        spanBuffer = new RingBufferQueue<>(capacity, waitStrategy.get());
+      }
+      workers[i] = new Worker(spanBuffer, threadName);
+    }
+    for (Worker worker : workers) {
+      worker.thread.start();
+    }
   }
 
-  @Override
-  public void run() {
-    while (!stop) {
-      try {
-        WavefrontSpan span = spanBuffer.take();
-        send(span);
-      } catch (InterruptedException ex) {
-        if (logger.isLoggable(Level.INFO)) {
-          logger.info("reporting thread interrupted");
+  /**
+   * A sending thread and the in-memory buffer it drains.
+   */
+  private final class Worker implements Runnable {
+    private final BlockingQueue<FinishedSpan> spanBuffer;
+    private final Thread thread;
+
+    private Worker(BlockingQueue<FinishedSpan> spanBuffer, String threadName) {
+      this.spanBuffer = spanBuffer;
+      this.thread = new Thread(this, threadName);
+      this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      List<FinishedSpan> batch = new ArrayList<>(Math.min(batchSize, 1024));
+      while (!stop) {
+        try {
+          FinishedSpan span = nextSpan();
+          if (span == null) {
+            continue;
+          }
+          batch.add(span);
+          if (batchSize > 1) {
+            fillBatch(batch);
+          }
+          send(batch);
+        } catch (InterruptedException ex) {
+          if (logger.isLoggable(Level.INFO)) {
+            logger.info("reporting thread interrupted");
+          }
+        } catch (Throwable ex) {
+          logger.log(Level.WARNING, "Error processing buffer", ex);
+        } finally {
+          batch.clear();
         }
-      } catch (Throwable ex) {
-        logger.log(Level.WARNING, "Error processing buffer", ex);
       }
     }
+
+    /**
+     * Takes the next span from the buffer. With a spill, replays spilled spans while the buffer
+     * is empty and waits a bounded time for new spans so that newly spilled spans are noticed.
+     */
+    @Nullable
+    private FinishedSpan nextSpan() throws InterruptedException {
+      if (spill == null) {
+        return spanBuffer.take();
+      }
+      FinishedSpan span = spanBuffer.poll();
+      if (span != null || replaySpill()) {
+        return span;
+      }
+      return spanBuffer.poll(SPILL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean replaySpill() {
+      int replayed = 0;
+      FinishedSpan spilledSpan;
+      while (replayed < batchSize && (spilledSpan = spill.poll()) != null) {
+        send(spilledSpan);
+        replayed++;
+      }
+      if (replayed > 0 && metricsReporter != null) {
+        spillReplayed.inc(replayed);
+      }
+      return replayed > 0;
+    }
+
+    /**
+     * Tops up a batch holding its first span from the buffer, waiting up to the linger time for
+     * the batch to fill.
+     */
+    private void fillBatch(List<FinishedSpan> batch) throws InterruptedException {
+      spanBuffer.drainTo(batch, batchSize - batch.size());
+      if (batch.size() >= batchSize || batchLingerNanos == 0) {
+        return;
+      }
+      long start = System.nanoTime();
+      long deadline = start + batchLingerNanos;
+      while (batch.size() < batchSize) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          break;
+        }
+        FinishedSpan span = spanBuffer.poll(remaining, TimeUnit.NANOSECONDS);
+        if (span == null) {
+          break;
+        }
+        batch.add(span);
+        spanBuffer.drainTo(batch, batchSize - batch.size());
+      }
+      if (metricsReporter != null) {
+        batchLingerMillis.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    }
+  }
+
+  /**
+   * Runs the sending loop of the first worker on the calling thread until the reporter is
+   * closed, as an additional consumer of its buffer.
+   *
+   * @deprecated the reporter starts its own sending threads, so there is no need to run it, and
+   *             an additional consumer does not keep the spans of a trace in order
+   */
+  @Deprecated
+  @Override
+  public void run() {
+    workers[0].run();
   }
 
   @Override
   public void report(WavefrontSpan span) {
+    report(span.getFinishedSpan());
+  }
+
+  @Override
+  public void report(FinishedSpan span) {
     if (metricsReporter != null) {
       spansReceived.inc();
     }
-    if (!spanBuffer.offer(span)) {
-      if (metricsReporter != null) {
-        spansDropped.inc();
+    enqueue(workerFor(span).spanBuffer, span);
+  }
+
+  @Override
+  public boolean supportsFinishedSpans() {
+    return true;
+  }
+
+  /**
+   * Reports a batch of spans, inserting the spans of each worker into its in-memory buffer at
+   * once when the buffer is not off-heap.
+   */
+  @Override
+  public void report(List<FinishedSpan> spans) {
+    if (metricsReporter != null) {
+      spansReceived.inc(spans.size());
+    }
+    if (workers.length == 1) {
+      enqueueAll(workers[0].spanBuffer, spans);
+      return;
+    }
+    List<List<FinishedSpan>> spansByWorker = new ArrayList<>(workers.length);
+    for (int i = 0; i < workers.length; i++) {
+      spansByWorker.add(null);
+    }
+    for (FinishedSpan span : spans) {
+      int index = workerIndex(span);
+      List<FinishedSpan> workerSpans = spansByWorker.get(index);
+      if (workerSpans == null) {
+        workerSpans = new ArrayList<>(spans.size());
+        spansByWorker.set(index, workerSpans);
       }
-      if (loggingAllowed()) {
-        logger.warning("Buffer full, dropping span: " + span);
+      workerSpans.add(span);
+    }
+    for (int i = 0; i < workers.length; i++) {
+      List<FinishedSpan> workerSpans = spansByWorker.get(i);
+      if (workerSpans != null) {
+        enqueueAll(workers[i].spanBuffer, workerSpans);
+      }
+    }
+  }
+
+  private void enqueueAll(BlockingQueue<FinishedSpan> spanBuffer, List<FinishedSpan> spans) {
+    int offered = 0;
+    if (spanBuffer instanceof RingBufferQueue) {
+      offered = ((RingBufferQueue<FinishedSpan>) spanBuffer).offerAll(spans, 0);
+    }
+    // the spans that did not fit are subject to spilling and the backpressure policy
+    for (int i = offered; i < spans.size(); i++) {
+      enqueue(spanBuffer, spans.get(i));
+    }
+  }
+
+  private void enqueue(BlockingQueue<FinishedSpan> spanBuffer, FinishedSpan span) {
+    boolean offered;
+    try {
+      offered = spanBuffer.offer(span);
+    } catch (IllegalArgumentException ex) {
+      // larger than a slab of the off-heap buffer, so no eviction or wait could make room
+      dropOversized(span);
+      return;
+    }
+    if (offered || spillSpan(span)) {
+      return;
+    }
+    switch (backpressurePolicy) {
+      case DROP_OLDEST:
+        evictAndOffer(spanBuffer, span);
+        break;
+      case BLOCK_WITH_TIMEOUT:
+        blockAndOffer(spanBuffer, span);
+        break;
+      case CALLER_RUNS:
         if (metricsReporter != null) {
-          logger.warning("Total spans dropped: " + spansDropped.getCount());
+          spansCallerRuns.inc();
         }
+        send(span);
+        break;
+      default:
+        drop(span);
+    }
+  }
+
+  private boolean spillSpan(FinishedSpan span) {
+    if (spill == null || !spill.offer(span)) {
+      return false;
+    }
+    if (metricsReporter != null) {
+      spillWritten.inc();
+    }
+    return true;
+  }
+
+  private void evictAndOffer(BlockingQueue<FinishedSpan> spanBuffer, FinishedSpan span) {
+    // the sending worker may free up room concurrently, so retry a few times before giving up
+    for (int attempt = 0; attempt < 3; attempt++) {
+      FinishedSpan evicted = spanBuffer.poll();
+      if (evicted != null && metricsReporter != null) {
+        spansEvicted.inc();
+      }
+      if (spanBuffer.offer(span)) {
+        return;
+      }
+    }
+    drop(span);
+  }
+
+  private void blockAndOffer(BlockingQueue<FinishedSpan> spanBuffer, FinishedSpan span) {
+    long start = System.nanoTime();
+    boolean offered = false;
+    try {
+      offered = spanBuffer.offer(span, blockTimeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    if (metricsReporter != null) {
+      spansBlocked.inc();
+      blockedTimeMicros.inc(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+    if (!offered) {
+      drop(span);
+    }
+  }
+
+  private void drop(FinishedSpan span) {
+    if (metricsReporter != null) {
+      spansDropped.inc();
+    }
+    if (loggingAllowed()) {
+      logger.warning("Buffer full, dropping span: " + span);
+      if (metricsReporter != null) {
+        logger.warning("Total spans dropped: " + spansDropped.getCount());
+      }
+    }
+  }
+
+  private void dropOversized(FinishedSpan span) {
+    if (metricsReporter != null) {
+      spansOversized.inc();
+    }
+    if (loggingAllowed()) {
+      logger.warning("Span too large for the off-heap buffer, dropping span: " + span);
+    }
+  }
+
+  /**
+   * Routes all spans of a trace to the same worker.
+   */
+  private Worker workerFor(FinishedSpan span) {
+    return workers[workerIndex(span)];
+  }
+
+  private int workerIndex(FinishedSpan span) {
+    if (workers.length == 1) {
+      return 0;
+    }
+    int hash = Long.hashCode(span.getTraceIdHigh() ^ span.getTraceIdLow());
+    return Math.floorMod(hash, workers.length);
+  }
+
+  private void send(List<FinishedSpan> batch) {
+    if (batchSize > 1 && metricsReporter != null) {
+      batchSizes.update(batch.size());
+    }
+    if (proxySpanSender == null || batch.size() == 1) {
+      // the WavefrontSender takes one span at a time, and buffers them itself
+      for (FinishedSpan span : batch) {
+        send(span);
+      }
+      return;
+    }
+    try {
+      proxySpanSender.send(batch, reportSpanLogs);
+    } catch (IOException e) {
+      if (loggingAllowed()) {
+        logger.log(Level.WARNING, "error reporting batch of " + batch.size() + " spans", e);
+      }
+      if (metricsReporter != null) {
+        reportErrors.inc();
+        spansDropped.inc(batch.size());
       }
     }
   }
 
-  private void send(WavefrontSpan span) {
+  private void send(FinishedSpan span) {
     try {
-      WavefrontSpanContext ctx = span.context();
-      List<Reference> parentRefs = span.getParents();
-      List<Reference> followsRefs = span.getFollows();
-
-      List<UUID> parents = parentRefs == null ? null : parentRefs.stream().
-          map(Reference::getSpanContext).
-          map(WavefrontSpanContext::getSpanId).
-          collect(Collectors.toList());
-
-      List<UUID> follows = followsRefs == null ? null : followsRefs.stream().
-          map(Reference::getSpanContext).
-          map(WavefrontSpanContext::getSpanId).
-          collect(Collectors.toList());
-
-      wavefrontSender.sendSpan(span.getOperationName(), span.getStartTimeMicros() / 1000,
-          span.getDurationMicroseconds() / 1000, source, ctx.getTraceId(), ctx.getSpanId(),
-          parents, follows, span.getTagsAsList(), reportSpanLogs ? span.getSpanLogs() : null);
+      if (proxySpanSender != null) {
+        proxySpanSender.send(span, reportSpanLogs);
+      } else {
+        wavefrontSender.sendSpan(span.getOperationName(), span.getStartTimeMicros() / 1000,
+            span.getDurationMicros() / 1000, source, span.getTraceId(), span.getSpanId(),
+            span.getParents(), span.getFollows(), span.getTagsAsList(),
+            reportSpanLogs ? span.getSpanLogs() : null);
+      }
     } catch (IOException e) {
       if (loggingAllowed()) {
         logger.log(Level.WARNING, "error reporting span: " + span, e);
@@ -222,41 +767,178 @@ public class WavefrontSpanReporter implements Reporter, Runnable {
 
   @Override
   public int getFailureCount() {
-    return wavefrontSender.getFailureCount();
+    int failures = wavefrontSender.getFailureCount();
+    if (proxySpanSender != null) {
+      failures += proxySpanSender.getFailureCount();
+    }
+    return failures;
   }
 
-  public void setMetricsReporter(WavefrontInternalReporter metricsReporter) {
-    this.metricsReporter = metricsReporter;
+  /**
+   * Sets the tags that the tracer adds to every span, so that the proxy span sender, if any,
+   * encodes them only once. Called by the tracer upon initialization.
+   *
+   * @param globalTags the global tags of the tracer, as the same strings it adds to spans
+   */
+  public void setGlobalTags(List<Pair<String, String>> globalTags) {
+    if (proxySpanSender != null) {
+      proxySpanSender.setGlobalTags(globalTags);
+    }
+  }
+
+  private int getQueueSize() {
+    int size = 0;
+    for (Worker worker : workers) {
+      size += worker.spanBuffer.size();
+    }
+    return size;
+  }
+
+  private long getQueueBytes() {
+    long bytes = 0;
+    for (Worker worker : workers) {
+      bytes += ((OffHeapSpanQueue) worker.spanBuffer).usedBytes();
+    }
+    return bytes;
+  }
 
+  private int getRemainingCapacity() {
+    int remainingCapacity = 0;
+    for (Worker worker : workers) {
+      remainingCapacity += worker.spanBuffer.remainingCapacity();
+    }
+    return remainingCapacity;
+  }
+
+  public void setMetricsReporter(WavefrontInternalReporter metricsReporter) {
     // init internal metrics
     metricsReporter.newGauge(new MetricName("reporter.queue.size", Collections.emptyMap()),
-        () -> (() -> (double) spanBuffer.size())
+        () -> (() -> (double) getQueueSize())
     );
     metricsReporter.newGauge(new MetricName("reporter.queue.remaining_capacity",
-        Collections.emptyMap()), () -> (() -> (double) spanBuffer.remainingCapacity()));
+        Collections.emptyMap()), () -> (() -> (double) getRemainingCapacity()));
+    if (workers[0].spanBuffer instanceof OffHeapSpanQueue) {
+      metricsReporter.newGauge(new MetricName("reporter.queue.bytes", Collections.emptyMap()),
+          () -> (() -> (double) getQueueBytes()));
+      spansOversized = metricsReporter.newDeltaCounter(new MetricName(
+          "reporter.spans.oversized", Collections.emptyMap()));
+    }
+    if (workers.length > 1) {
+      for (int i = 0; i < workers.length; i++) {
+        BlockingQueue<FinishedSpan> spanBuffer = workers[i].spanBuffer;
+        Map<String, String> tags = Collections.singletonMap("worker", String.valueOf(i));
+        metricsReporter.newGauge(new MetricName("reporter.worker.queue.size", tags),
+            () -> (() -> (double) spanBuffer.size()));
+        metricsReporter.newGauge(new MetricName("reporter.worker.queue.remaining_capacity",
+            tags), () -> (() -> (double) spanBuffer.remainingCapacity()));
+      }
+    }
     spansReceived = metricsReporter.newDeltaCounter(new MetricName("reporter.spans.received",
         Collections.emptyMap()));
     spansDropped = metricsReporter.newDeltaCounter(new MetricName("reporter.spans.dropped",
         Collections.emptyMap()));
     reportErrors = metricsReporter.newDeltaCounter(new MetricName("reporter.errors",
         Collections.emptyMap()));
+    switch (backpressurePolicy) {
+      case DROP_OLDEST:
+        spansEvicted = metricsReporter.newDeltaCounter(new MetricName("reporter.spans.evicted",
+            Collections.emptyMap()));
+        break;
+      case BLOCK_WITH_TIMEOUT:
+        spansBlocked = metricsReporter.newDeltaCounter(new MetricName("reporter.spans.blocked",
+            Collections.emptyMap()));
+        blockedTimeMicros = metricsReporter.newDeltaCounter(new MetricName(
+            "reporter.blocked_time.micros", Collections.emptyMap()));
+        break;
+      case CALLER_RUNS:
+        spansCallerRuns = metricsReporter.newDeltaCounter(new MetricName(
+            "reporter.spans.caller_runs", Collections.emptyMap()));
+        break;
+      default:
+        // drops are counted by reporter.spans.dropped
+    }
+    if (spill != null) {
+      metricsReporter.newGauge(new MetricName("reporter.spill.spans", Collections.emptyMap()),
+          () -> (() -> (double) spill.size()));
+      metricsReporter.newGauge(new MetricName("reporter.spill.bytes", Collections.emptyMap()),
+          () -> (() -> (double) spill.bytes()));
+      spillWritten = metricsReporter.newDeltaCounter(new MetricName(
+          "reporter.spill.spans.written", Collections.emptyMap()));
+      spillReplayed = metricsReporter.newDeltaCounter(new MetricName(
+          "reporter.spill.spans.replayed", Collections.emptyMap()));
+      spillEvicted = metricsReporter.newDeltaCounter(new MetricName(
+          "reporter.spill.spans.evicted", Collections.emptyMap()));
+    }
+    if (batchSize > 1) {
+      batchSizes = metricsReporter.newHistogram(new MetricName("reporter.batch.size",
+          Collections.emptyMap()));
+      if (batchLingerNanos > 0) {
+        batchLingerMillis = metricsReporter.newHistogram(new MetricName(
+            "reporter.batch.linger.millis", Collections.emptyMap()));
+      }
+    }
+
+    // publish the metrics reporter last so that the sending thread never sees it without them
+    this.metricsReporter = metricsReporter;
   }
 
   @Override
   public void close() throws IOException {
     stop = true;
     try {
-      // wait for 5 secs max
-      sendingThread.join(5000);
+      // wait for 5 secs max across all workers
+      long deadline = System.currentTimeMillis() + 5000;
+      for (Worker worker : workers) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          break;
+        }
+        worker.thread.join(remaining);
+      }
     } catch (InterruptedException ex) {
       // no-op
     }
+    if (spill != null) {
+      spillBuffers();
+      spill.close();
+    }
+    if (proxySpanSender != null) {
+      proxySpanSender.close();
+    }
     // flush buffer & close client
     wavefrontSender.close();
   }
 
+  /**
+   * Moves the spans left in the in-memory buffers of the stopped workers to the spill, so that
+   * they are sent after a restart.
+   */
+  private void spillBuffers() {
+    int spilled = 0;
+    for (Worker worker : workers) {
+      if (worker.thread.isAlive()) {
+        // the buffer still has its consumer
+        continue;
+      }
+      FinishedSpan span;
+      while ((span = worker.spanBuffer.poll()) != null) {
+        if (!spill.offer(span)) {
+          drop(span);
+          continue;
+        }
+        spilled++;
+      }
+    }
+    if (spilled > 0 && metricsReporter != null) {
+      spillWritten.inc(spilled);
+    }
+  }
+
   @Override
   public void flush() {
+    if (proxySpanSender != null) {
+      proxySpanSender.flush();
+    }
     try {
       wavefrontSender.flush();
     } catch (IOException e) {
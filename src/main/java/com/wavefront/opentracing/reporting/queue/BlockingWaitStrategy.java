@@ -0,0 +1,48 @@
+package com.wavefront.opentracing.reporting.queue;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Waits on a lock condition that producers signal. Uses no CPU while the queue is empty, and
+ * producers only take the lock when the consumer is actually waiting.
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private volatile int waiters = 0;
+
+  @Override
+  public void await(BooleanSupplier available, long timeoutNanos) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      waiters++;
+      long nanos = timeoutNanos;
+      while (!available.getAsBoolean() && nanos > 0) {
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+    } finally {
+      waiters--;
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void signal() {
+    if (waiters > 0) {
+      lock.lock();
+      try {
+        notEmpty.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "BlockingWaitStrategy";
+  }
+}
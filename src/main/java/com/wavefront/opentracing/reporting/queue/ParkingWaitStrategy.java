@@ -0,0 +1,57 @@
+package com.wavefront.opentracing.reporting.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Polls the queue at a fixed interval, parking the consumer in between. Producers never signal,
+ * so publishing costs nothing beyond the enqueue itself, at the price of up to one interval of
+ * added latency before the consumer notices new elements.
+ */
+public class ParkingWaitStrategy implements WaitStrategy {
+
+  private final long parkNanos;
+
+  /**
+   * Parks for 1 millisecond between polls.
+   */
+  public ParkingWaitStrategy() {
+    this(1, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param interval how long to park between polls
+   * @param unit     the unit of the interval
+   * @throws IllegalArgumentException if the interval is not greater than 0
+   */
+  public ParkingWaitStrategy(long interval, TimeUnit unit) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("invalid park interval");
+    }
+    this.parkNanos = unit.toNanos(interval);
+  }
+
+  @Override
+  public void await(BooleanSupplier available, long timeoutNanos) throws InterruptedException {
+    long deadline = System.nanoTime() + timeoutNanos;
+    long remaining = timeoutNanos;
+    while (!available.getAsBoolean() && remaining > 0) {
+      LockSupport.parkNanos(this, Math.min(parkNanos, remaining));
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      remaining = deadline - System.nanoTime();
+    }
+  }
+
+  @Override
+  public void signal() {
+    // no-op, the consumer polls
+  }
+
+  @Override
+  public String toString() {
+    return "ParkingWaitStrategy{parkNanos=" + parkNanos + '}';
+  }
+}
@@ -0,0 +1,324 @@
+package com.wavefront.opentracing.reporting.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded, lock-free {@link BlockingQueue} backed by a preallocated ring buffer.
+ *
+ * Every slot carries a sequence number. A producer claims a slot with a single CAS on the tail
+ * counter and publishes the element by advancing the slot's sequence, so offering never
+ * allocates and producers never wait on a lock. Consumers follow the same protocol on the head
+ * counter. The reporter drains each queue from a single thread, but concurrent consumers (for
+ * example producers evicting the oldest element) are safe.
+ *
+ * A consumer waiting for elements in {@link #take()} or {@link #poll(long, TimeUnit)} delegates
+ * to the configured {@link WaitStrategy}. Producers waiting for free space in
+ * {@link #put(Object)} or {@link #offer(Object, long, TimeUnit)} back off by parking briefly.
+ *
+ * The queue does not support removing arbitrary elements through its iterator, and the iterator
+ * is a snapshot of the published elements at the time it was created.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+@ThreadSafe
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final int capacity;
+  private final int slots;
+  private final Object[] elements;
+  private final AtomicLongArray sequences;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final WaitStrategy waitStrategy;
+
+  /**
+   * Creates a queue that uses a {@link BlockingWaitStrategy}.
+   *
+   * @param capacity the maximum number of elements in the queue
+   */
+  public RingBufferQueue(int capacity) {
+    this(capacity, new BlockingWaitStrategy());
+  }
+
+  /**
+   * @param capacity     the maximum number of elements in the queue
+   * @param waitStrategy the strategy used by consumers to wait for elements
+   * @throws IllegalArgumentException if the capacity is not greater than 0
+   */
+  public RingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("invalid capacity");
+    }
+    if (waitStrategy == null) {
+      throw new NullPointerException("waitStrategy");
+    }
+    this.capacity = capacity;
+    // a single slot cannot tell a published element apart from a consumed one
+    this.slots = Math.max(2, capacity);
+    this.elements = new Object[slots];
+    this.sequences = new AtomicLongArray(slots);
+    for (int i = 0; i < slots; i++) {
+      sequences.set(i, i);
+    }
+    this.waitStrategy = waitStrategy;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long pos = tail.get();
+    while (true) {
+      int index = index(pos);
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (slots != capacity && pos - head.get() >= capacity) {
+          return false;
+        }
+        if (tail.compareAndSet(pos, pos + 1)) {
+          elements[index] = e;
+          // volatile write, so that a consumer about to wait either sees the element or is seen
+          // by the wait strategy's signal
+          sequences.set(index, pos + 1);
+          waitStrategy.signal();
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        // the slot from the previous lap has not been consumed yet
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Inserts as many elements of a list as there is room for, in order, claiming their slots
+   * with a single CAS on the tail counter and waking up the consumer once.
+   *
+   * @param list      the elements to insert
+   * @param fromIndex the index of the first element to insert
+   * @return the number of elements inserted
+   */
+  public int offerAll(List<? extends E> list, int fromIndex) {
+    int remaining = list.size() - fromIndex;
+    for (int i = fromIndex; i < list.size(); i++) {
+      if (list.get(i) == null) {
+        throw new NullPointerException();
+      }
+    }
+    long pos;
+    int count;
+    do {
+      pos = tail.get();
+      count = (int) Math.min(remaining, capacity - (pos - head.get()));
+      if (count <= 0) {
+        return 0;
+      }
+    } while (!tail.compareAndSet(pos, pos + count));
+    for (int i = 0; i < count; i++) {
+      long slotPos = pos + i;
+      int index = index(slotPos);
+      while (sequences.get(index) != slotPos) {
+        // a consumer has moved the head past the slot and is about to release it
+        Thread.yield();
+      }
+      elements[index] = list.get(fromIndex + i);
+      sequences.set(index, slotPos + 1);
+    }
+    waitStrategy.signal();
+    return count;
+  }
+
+  @Override
+  @Nullable
+  public E poll() {
+    long pos = head.get();
+    while (true) {
+      int index = index(pos);
+      long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          @SuppressWarnings("unchecked")
+          E e = (E) elements[index];
+          elements[index] = null;
+          sequences.lazySet(index, pos + slots);
+          return e;
+        }
+        pos = head.get();
+      } else if (diff < 0) {
+        // the slot has not been published yet
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  @Override
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    long pos = head.get();
+    int index = index(pos);
+    if (sequences.get(index) != pos + 1) {
+      return null;
+    }
+    return (E) elements[index];
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    while (!offer(e)) {
+      LockSupport.parkNanos(this, PRODUCER_BACKOFF_NANOS);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    if (offer(e)) {
+      return true;
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(this, Math.min(PRODUCER_BACKOFF_NANOS, remaining));
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (offer(e)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    while (true) {
+      E e = poll();
+      if (e != null) {
+        return e;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      waitStrategy.await(this::isPublished, Long.MAX_VALUE);
+    }
+  }
+
+  @Override
+  @Nullable
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    E e = poll();
+    if (e != null) {
+      return e;
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return null;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      waitStrategy.await(this::isPublished, remaining);
+      e = poll();
+      if (e != null) {
+        return e;
+      }
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException();
+    }
+    int drained = 0;
+    while (drained < maxElements) {
+      E e = poll();
+      if (e == null) {
+        break;
+      }
+      c.add(e);
+      drained++;
+    }
+    return drained;
+  }
+
+  @Override
+  public int size() {
+    // read head first so that the difference is never negative
+    long h = head.get();
+    long t = tail.get();
+    return (int) Math.max(0, Math.min(capacity, t - h));
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  /**
+   * Returns the maximum number of elements in this queue.
+   *
+   * @return the capacity
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<>();
+    long end = tail.get();
+    for (long pos = head.get(); pos < end; pos++) {
+      int index = index(pos);
+      long sequence = sequences.get(index);
+      @SuppressWarnings("unchecked")
+      E e = (E) elements[index];
+      if (sequence == pos + 1 && e != null) {
+        snapshot.add(e);
+      }
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  private boolean isPublished() {
+    long pos = head.get();
+    return sequences.get(index(pos)) == pos + 1;
+  }
+
+  private int index(long pos) {
+    return (int) (pos % slots);
+  }
+}
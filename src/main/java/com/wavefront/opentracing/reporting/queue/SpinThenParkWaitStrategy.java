@@ -0,0 +1,72 @@
+package com.wavefront.opentracing.reporting.queue;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Busy-spins for a bounded number of checks, then parks until a producer unparks the consumer.
+ * Gives the lowest hand-off latency under steady load, at the cost of burning CPU while spinning
+ * and one volatile read per publish.
+ */
+public class SpinThenParkWaitStrategy implements WaitStrategy {
+
+  private static final int DEFAULT_SPINS = 1000;
+
+  private final int spins;
+  private volatile Thread waiter = null;
+
+  /**
+   * Spins for 1000 checks before parking.
+   */
+  public SpinThenParkWaitStrategy() {
+    this(DEFAULT_SPINS);
+  }
+
+  /**
+   * @param spins the number of times to check the queue before parking
+   * @throws IllegalArgumentException if spins is negative
+   */
+  public SpinThenParkWaitStrategy(int spins) {
+    if (spins < 0) {
+      throw new IllegalArgumentException("invalid spin count");
+    }
+    this.spins = spins;
+  }
+
+  @Override
+  public void await(BooleanSupplier available, long timeoutNanos) throws InterruptedException {
+    for (int i = 0; i < spins; i++) {
+      if (available.getAsBoolean()) {
+        return;
+      }
+    }
+    long deadline = System.nanoTime() + timeoutNanos;
+    waiter = Thread.currentThread();
+    try {
+      long remaining = timeoutNanos;
+      // publish the waiter before the final check so that a concurrent signal is not missed
+      while (!available.getAsBoolean() && remaining > 0) {
+        LockSupport.parkNanos(this, remaining);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        remaining = deadline - System.nanoTime();
+      }
+    } finally {
+      waiter = null;
+    }
+  }
+
+  @Override
+  public void signal() {
+    Thread thread = waiter;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SpinThenParkWaitStrategy{spins=" + spins + '}';
+  }
+}
@@ -0,0 +1,25 @@
+package com.wavefront.opentracing.reporting.queue;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Strategy used by the consumer of a {@link RingBufferQueue} to wait for elements to be
+ * published, and by producers to wake up a waiting consumer.
+ */
+public interface WaitStrategy {
+
+  /**
+   * Waits until the given condition holds or the timeout elapses, whichever comes first.
+   * Implementations may return early; callers re-check the queue and wait again as needed.
+   *
+   * @param available    condition that holds once an element can be consumed
+   * @param timeoutNanos maximum time to wait in nanoseconds
+   * @throws InterruptedException if the waiting thread is interrupted
+   */
+  void await(BooleanSupplier available, long timeoutNanos) throws InterruptedException;
+
+  /**
+   * Called by a producer after it has published an element.
+   */
+  void signal();
+}
@@ -0,0 +1,205 @@
+package com.wavefront.opentracing.sampling;
+
+import com.wavefront.internal.reporter.WavefrontInternalReporter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.DeltaCounter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
+import com.wavefront.sdk.entities.tracing.sampling.Sampler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * Early sampler that samples at most a number of traces per second for each operation, and
+ * optionally at most a number of traces per second in total, whatever the traffic.
+ *
+ * Each operation has its own lock-free {@link TokenBucket}. The buckets are kept for up to a
+ * maximum number of operations, after which all further operations share one bucket, so that
+ * operation names of high cardinality cannot grow the map without bounds.
+ *
+ * Sampling decisions of multiple samplers are OR'd, so this sampler only caps the traces sampled
+ * when it is the only early sampler of the tracer.
+ */
+public class RateLimitingSampler implements Sampler {
+
+  /** The operation name under which the operations beyond the maximum are counted. */
+  public static final String OTHER_OPERATIONS = "other";
+
+  private static final int DEFAULT_MAX_OPERATIONS = 1000;
+
+  private final double tracesPerSecondPerOperation;
+  private final int maxOperations;
+  private final LongSupplier nanoTime;
+  @Nullable
+  private final TokenBucket globalBucket;
+  private final Map<String, OperationLimiter> limiters = new ConcurrentHashMap<>();
+  private final OperationLimiter otherOperations;
+  @Nullable
+  private volatile WavefrontInternalReporter metricsReporter;
+
+  /**
+   * Constructor.
+   *
+   * @param tracesPerSecondPerOperation the maximum number of traces sampled per second for each
+   *                                    operation
+   */
+  public RateLimitingSampler(double tracesPerSecondPerOperation) {
+    this(tracesPerSecondPerOperation, 0, DEFAULT_MAX_OPERATIONS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param tracesPerSecondPerOperation the maximum number of traces sampled per second for each
+   *                                    operation, or 0 for no limit per operation
+   * @param tracesPerSecond             the maximum number of traces sampled per second in total,
+   *                                    or 0 for no total limit
+   * @param maxOperations               the number of operations that have their own limit
+   */
+  public RateLimitingSampler(double tracesPerSecondPerOperation, double tracesPerSecond,
+                             int maxOperations) {
+    this(tracesPerSecondPerOperation, tracesPerSecond, maxOperations, System::nanoTime);
+  }
+
+  RateLimitingSampler(double tracesPerSecondPerOperation, double tracesPerSecond,
+                      int maxOperations, LongSupplier nanoTime) {
+    if (!(tracesPerSecondPerOperation >= 0)) {
+      throw new IllegalArgumentException("invalid traces per second per operation: " +
+          tracesPerSecondPerOperation);
+    }
+    if (!(tracesPerSecond >= 0)) {
+      throw new IllegalArgumentException("invalid traces per second: " + tracesPerSecond);
+    }
+    if (tracesPerSecondPerOperation == 0 && tracesPerSecond == 0) {
+      throw new IllegalArgumentException("invalid rate limits: no limit set");
+    }
+    if (maxOperations < 1) {
+      throw new IllegalArgumentException("invalid max operations: " + maxOperations);
+    }
+    this.tracesPerSecondPerOperation = tracesPerSecondPerOperation;
+    this.maxOperations = maxOperations;
+    this.nanoTime = nanoTime;
+    this.globalBucket = tracesPerSecond > 0 ? newBucket(tracesPerSecond) : null;
+    this.otherOperations = newLimiter(OTHER_OPERATIONS);
+  }
+
+  @Override
+  public boolean sample(String operationName, long traceId, long duration) {
+    OperationLimiter limiter = getLimiter(operationName);
+    boolean sampled = limiter.bucket == null || limiter.bucket.tryAcquire();
+    if (sampled && globalBucket != null && !globalBucket.tryAcquire()) {
+      // give the permit back so that a throttled total does not drain the operation's budget
+      if (limiter.bucket != null) {
+        limiter.bucket.release();
+      }
+      sampled = false;
+    }
+    limiter.record(sampled);
+    return sampled;
+  }
+
+  @Override
+  public boolean isEarly() {
+    return true;
+  }
+
+  /**
+   * Reports the traces accepted and rejected for each operation as internal metrics.
+   *
+   * @param metricsReporter the reporter of the internal metrics of the tracer
+   */
+  public void setMetricsReporter(WavefrontInternalReporter metricsReporter) {
+    this.metricsReporter = metricsReporter;
+    otherOperations.register(metricsReporter);
+    for (OperationLimiter limiter : limiters.values()) {
+      limiter.register(metricsReporter);
+    }
+  }
+
+  /**
+   * @return the number of traces of an operation that were sampled, where the operations beyond
+   * the maximum are counted as {@link #OTHER_OPERATIONS}
+   */
+  public long getAcceptedCount(String operationName) {
+    OperationLimiter limiter = findLimiter(operationName);
+    return limiter == null ? 0 : limiter.accepted.sum();
+  }
+
+  /**
+   * @return the number of traces of an operation that were not sampled due to a rate limit
+   */
+  public long getRejectedCount(String operationName) {
+    OperationLimiter limiter = findLimiter(operationName);
+    return limiter == null ? 0 : limiter.rejected.sum();
+  }
+
+  @Nullable
+  private OperationLimiter findLimiter(String operationName) {
+    return OTHER_OPERATIONS.equals(operationName) ? otherOperations :
+        limiters.get(operationName);
+  }
+
+  private OperationLimiter getLimiter(String operationName) {
+    OperationLimiter limiter = limiters.get(operationName);
+    if (limiter != null) {
+      return limiter;
+    }
+    if (limiters.size() >= maxOperations) {
+      return otherOperations;
+    }
+    // the map may briefly grow past the maximum by the number of racing threads
+    return limiters.computeIfAbsent(operationName, this::newLimiter);
+  }
+
+  private OperationLimiter newLimiter(String operationName) {
+    OperationLimiter limiter = new OperationLimiter(operationName,
+        tracesPerSecondPerOperation > 0 ? newBucket(tracesPerSecondPerOperation) : null);
+    WavefrontInternalReporter reporter = metricsReporter;
+    if (reporter != null) {
+      limiter.register(reporter);
+    }
+    return limiter;
+  }
+
+  private TokenBucket newBucket(double tracesPerSecond) {
+    // allow a burst of one second of traces
+    return new TokenBucket(tracesPerSecond, Math.max(1, tracesPerSecond), nanoTime);
+  }
+
+  private static final class OperationLimiter {
+    private final String operationName;
+    @Nullable
+    private final TokenBucket bucket;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    @Nullable
+    private volatile DeltaCounter acceptedCounter;
+    @Nullable
+    private volatile DeltaCounter rejectedCounter;
+
+    OperationLimiter(String operationName, @Nullable TokenBucket bucket) {
+      this.operationName = operationName;
+      this.bucket = bucket;
+    }
+
+    void record(boolean sampled) {
+      (sampled ? accepted : rejected).increment();
+      DeltaCounter counter = sampled ? acceptedCounter : rejectedCounter;
+      if (counter != null) {
+        counter.inc();
+      }
+    }
+
+    void register(WavefrontInternalReporter reporter) {
+      Map<String, String> tags = Collections.singletonMap("operationName", operationName);
+      acceptedCounter = reporter.newDeltaCounter(new MetricName(
+          "sampler.rate_limiting.traces.accepted", tags));
+      rejectedCounter = reporter.newDeltaCounter(new MetricName(
+          "sampler.rate_limiting.traces.rejected", tags));
+    }
+  }
+}
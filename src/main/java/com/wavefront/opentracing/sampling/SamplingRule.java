@@ -0,0 +1,220 @@
+package com.wavefront.opentracing.sampling;
+
+import com.wavefront.sdk.common.Pair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * A sampling rule, added to a tracer with
+ * {@link com.wavefront.opentracing.WavefrontTracer.Builder#withSamplingRule(SamplingRule)}.
+ *
+ * A rule matches the spans with a given operation name, service and tags set when the span is
+ * started, and decides whether they are sampled:
+ * <ul>
+ * <li>when the span starts, with a sampling rate and a rate limit, if either is set;</li>
+ * <li>when the span finishes, with a duration threshold, if set and the span is not yet
+ * sampled.</li>
+ * </ul>
+ * Example:
+ * <pre>{@code
+ * SamplingRule.builder().forOperation("GET /health").withRate(0).build();
+ * SamplingRule.builder().forService("checkout").withRate(0.1).withRateLimit(100).
+ *     withDurationThreshold(500, TimeUnit.MILLISECONDS).build();
+ * }</pre>
+ */
+public final class SamplingRule {
+
+  @Nullable
+  private final String operationName;
+  @Nullable
+  private final String service;
+  private final List<Pair<String, String>> tags;
+  private final double rate;
+  private final double rateLimit;
+  private final long durationThresholdMicros;
+
+  private SamplingRule(Builder builder) {
+    this.operationName = builder.operationName;
+    this.service = builder.service;
+    this.tags = Collections.unmodifiableList(new ArrayList<>(builder.tags));
+    this.rate = builder.rate;
+    this.rateLimit = builder.rateLimit;
+    this.durationThresholdMicros = builder.durationThresholdMicros;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the operation name to match, or null to match any operation
+   */
+  @Nullable
+  public String getOperationName() {
+    return operationName;
+  }
+
+  /**
+   * @return the service to match, or null to match any service
+   */
+  @Nullable
+  public String getService() {
+    return service;
+  }
+
+  /**
+   * @return the tags that a span must have when it starts to match
+   */
+  public List<Pair<String, String>> getTags() {
+    return tags;
+  }
+
+  /**
+   * @return the fraction of traces sampled, or 1 if not set
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * @return the maximum number of traces sampled per second, or 0 if not set
+   */
+  public double getRateLimit() {
+    return rateLimit;
+  }
+
+  /**
+   * @return true if the rule decides whether spans are sampled when they start, which is the
+   *         case unless only a duration threshold is set
+   */
+  public boolean isEarly() {
+    return rate < 1 || rateLimit > 0 || durationThresholdMicros < 0;
+  }
+
+  /**
+   * @return the duration above which spans are sampled when they finish, in microseconds, or -1
+   *         if not set
+   */
+  public long getDurationThresholdMicros() {
+    return durationThresholdMicros;
+  }
+
+  @Override
+  public String toString() {
+    return "SamplingRule{" +
+        "operationName=" + operationName +
+        ", service=" + service +
+        ", tags=" + tags +
+        ", rate=" + rate +
+        ", rateLimit=" + rateLimit +
+        ", durationThresholdMicros=" + durationThresholdMicros +
+        '}';
+  }
+
+  /**
+   * A builder for {@link SamplingRule} instances.
+   */
+  public static class Builder {
+    @Nullable
+    private String operationName;
+    @Nullable
+    private String service;
+    private final List<Pair<String, String>> tags = new ArrayList<>();
+    private double rate = 1;
+    private double rateLimit = 0;
+    private long durationThresholdMicros = -1;
+
+    /**
+     * Only match spans with the given operation name.
+     *
+     * @return {@code this}
+     */
+    public Builder forOperation(String operationName) {
+      if (operationName == null) {
+        throw new IllegalArgumentException("invalid operation name");
+      }
+      this.operationName = operationName;
+      return this;
+    }
+
+    /**
+     * Only match spans of the given service, as set by their {@code service} tag or by the
+     * application tags of the tracer.
+     *
+     * @return {@code this}
+     */
+    public Builder forService(String service) {
+      if (service == null) {
+        throw new IllegalArgumentException("invalid service");
+      }
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Only match spans that have the given tag, either as a global tag or as a tag set on the
+     * span builder. Can be called several times to require several tags.
+     *
+     * @return {@code this}
+     */
+    public Builder withTag(String key, String value) {
+      if (key == null || value == null) {
+        throw new IllegalArgumentException("invalid tag");
+      }
+      this.tags.add(Pair.of(key, value));
+      return this;
+    }
+
+    /**
+     * Sample the given fraction of the traces, chosen by trace id so that every service sampling
+     * a trace at the same rate takes the same decision.
+     *
+     * @param rate the fraction of traces sampled, between 0 and 1
+     * @return {@code this}
+     */
+    public Builder withRate(double rate) {
+      if (!(rate >= 0 && rate <= 1)) {
+        throw new IllegalArgumentException("invalid sampling rate: " + rate);
+      }
+      this.rate = rate;
+      return this;
+    }
+
+    /**
+     * Sample at most the given number of traces per second, after applying the rate.
+     *
+     * @param tracesPerSecond the maximum number of traces sampled per second
+     * @return {@code this}
+     */
+    public Builder withRateLimit(double tracesPerSecond) {
+      if (!(tracesPerSecond > 0)) {
+        throw new IllegalArgumentException("invalid rate limit: " + tracesPerSecond);
+      }
+      this.rateLimit = tracesPerSecond;
+      return this;
+    }
+
+    /**
+     * Sample the spans that last longer than the given duration when they finish, even if they
+     * were not sampled when they started.
+     *
+     * @return {@code this}
+     */
+    public Builder withDurationThreshold(long duration, TimeUnit unit) {
+      if (duration < 0) {
+        throw new IllegalArgumentException("invalid duration threshold: " + duration);
+      }
+      this.durationThresholdMicros = unit.toMicros(duration);
+      return this;
+    }
+
+    public SamplingRule build() {
+      return new SamplingRule(this);
+    }
+  }
+}
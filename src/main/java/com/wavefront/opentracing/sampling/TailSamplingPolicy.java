@@ -0,0 +1,64 @@
+package com.wavefront.opentracing.sampling;
+
+import com.wavefront.opentracing.FinishedSpan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether to keep all the spans of a trace segment once the segment is complete, whatever
+ * the sampling decisions of its spans.
+ *
+ * Segments that no policy keeps still report the spans that were sampled when they finished.
+ */
+@FunctionalInterface
+public interface TailSamplingPolicy {
+
+  /**
+   * @param segment the finished spans of the trace that were started by this tracer
+   * @return true to report every span of the segment
+   */
+  boolean keep(TraceSegment segment);
+
+  /**
+   * Keeps segments with at least one span that has the error tag.
+   */
+  static TailSamplingPolicy anyError() {
+    return segment -> {
+      for (FinishedSpan span : segment.getSpans()) {
+        if (span.isError()) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
+
+  /**
+   * Keeps segments whose local root lasted at least a given duration.
+   *
+   * @param threshold the minimum duration of the local root
+   * @param unit      the unit of the threshold
+   */
+  static TailSamplingPolicy rootLatency(long threshold, TimeUnit unit) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("invalid root latency threshold: " + threshold);
+    }
+    long thresholdMicros = unit.toMicros(threshold);
+    return segment -> {
+      FinishedSpan root = segment.getLocalRoot();
+      return root != null && root.getDurationMicros() >= thresholdMicros;
+    };
+  }
+
+  /**
+   * Keeps segments with at least a given number of spans.
+   *
+   * @param minSpans the minimum number of spans
+   */
+  static TailSamplingPolicy spanCount(int minSpans) {
+    if (minSpans < 1) {
+      throw new IllegalArgumentException("invalid span count: " + minSpans);
+    }
+    return segment -> segment.getSpans().size() >= minSpans;
+  }
+}
@@ -0,0 +1,69 @@
+package com.wavefront.opentracing.sampling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket that allows a number of permits per second, with bursts of up to a
+ * given number of permits.
+ *
+ * The bucket keeps the time at which it will be full again instead of a token count, so that
+ * acquiring a permit is a single compare-and-set with no background refill.
+ */
+public final class TokenBucket {
+
+  private final long nanosPerPermit;
+  private final long burstNanos;
+  private final LongSupplier nanoTime;
+  /** The time at which every permit acquired so far has been refilled. */
+  private final AtomicLong fullAt;
+
+  /**
+   * @param permitsPerSecond the number of permits refilled per second
+   * @param burst            the maximum number of permits that can be acquired at once
+   */
+  public TokenBucket(double permitsPerSecond, double burst) {
+    this(permitsPerSecond, burst, System::nanoTime);
+  }
+
+  TokenBucket(double permitsPerSecond, double burst, LongSupplier nanoTime) {
+    if (!(permitsPerSecond > 0)) {
+      throw new IllegalArgumentException("invalid permits per second: " + permitsPerSecond);
+    }
+    if (!(burst >= 1)) {
+      throw new IllegalArgumentException("invalid burst: " + burst);
+    }
+    this.nanosPerPermit = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    this.burstNanos = (long) (burst * nanosPerPermit);
+    this.nanoTime = nanoTime;
+    // start full
+    this.fullAt = new AtomicLong(nanoTime.getAsLong());
+  }
+
+  /**
+   * Acquires a permit if one is available.
+   *
+   * @return true if a permit was acquired, false if the bucket is empty
+   */
+  public boolean tryAcquire() {
+    long now = nanoTime.getAsLong();
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.max(current, now) + nanosPerPermit;
+      if (next - now > burstNanos) {
+        return false;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns a permit acquired by {@link #tryAcquire()} that ended up unused.
+   */
+  void release() {
+    fullAt.addAndGet(-nanosPerPermit);
+  }
+}
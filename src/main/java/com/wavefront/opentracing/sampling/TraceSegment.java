@@ -0,0 +1,82 @@
+package com.wavefront.opentracing.sampling;
+
+import com.wavefront.opentracing.FinishedSpan;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The finished spans of one trace that were started by this tracer, which a
+ * {@link TailSamplingPolicy} keeps or drops as a whole.
+ */
+@Immutable
+public final class TraceSegment {
+
+  private final List<FinishedSpan> spans;
+  private final boolean complete;
+
+  /**
+   * @param spans    the finished spans, in the order they finished
+   * @param complete whether every span of the segment that was started has finished, as opposed
+   *                 to a segment that timed out or was evicted
+   */
+  public TraceSegment(List<FinishedSpan> spans, boolean complete) {
+    this.spans = Collections.unmodifiableList(spans);
+    this.complete = complete;
+  }
+
+  /**
+   * @return the finished spans, in the order they finished
+   */
+  public List<FinishedSpan> getSpans() {
+    return spans;
+  }
+
+  /**
+   * @return whether every span of the segment that was started has finished
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Gets the local root of the segment, which is the longest of the spans whose parents are not
+   * part of the segment.
+   *
+   * @return the local root span, or null if the segment has no spans
+   */
+  @Nullable
+  public FinishedSpan getLocalRoot() {
+    Set<Long> spanIds = new HashSet<>(spans.size() * 2);
+    for (FinishedSpan span : spans) {
+      spanIds.add(span.getSpanIdLow());
+    }
+    FinishedSpan root = null;
+    for (FinishedSpan span : spans) {
+      if (!hasLocalReference(span, spanIds) &&
+          (root == null || span.getDurationMicros() > root.getDurationMicros())) {
+        root = span;
+      }
+    }
+    return root;
+  }
+
+  private static boolean hasLocalReference(FinishedSpan span, Set<Long> spanIds) {
+    for (int i = 0; i < span.getParentCount(); i++) {
+      if (spanIds.contains(span.getParentIdLow(i))) {
+        return true;
+      }
+    }
+    for (int i = 0; i < span.getFollowsCount(); i++) {
+      if (spanIds.contains(span.getFollowsIdLow(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,98 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.sdk.common.application.ApplicationTags;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import io.opentracing.Span;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link Baggage}.
+ */
+public class BaggageTest {
+
+  @Test
+  public void testMatchesHashMap() {
+    Random random = new Random(42);
+    Map<String, String> expected = new HashMap<>();
+    Baggage baggage = Baggage.EMPTY;
+    for (int i = 0; i < 2000; i++) {
+      String key = "key" + random.nextInt(500);
+      String value = "value" + random.nextInt(3);
+      Baggage previous = baggage;
+      baggage = baggage.with(key, value);
+      // earlier versions are not changed
+      assertEquals(expected, previous);
+      expected.put(key, value);
+      assertEquals(expected, baggage);
+      assertEquals(expected.size(), baggage.size());
+    }
+    assertNull(baggage.get("missing"));
+    assertFalse(baggage.containsKey(1));
+    assertEquals(expected, new HashMap<>(baggage));
+  }
+
+  @Test
+  public void testUnchangedBaggageIsShared() {
+    Baggage small = Baggage.EMPTY.with("key", "value");
+    assertSame(small, small.with("key", "value"));
+    Baggage large = small;
+    for (int i = 0; i < 20; i++) {
+      large = large.with("key" + i, "value" + i);
+    }
+    assertSame(large, large.with("key7", "value7"));
+    assertSame(large, Baggage.EMPTY.withAll(large));
+    assertSame(large, large.withAll(Baggage.EMPTY));
+    assertSame(large, Baggage.copyOf(large));
+    assertThrows(UnsupportedOperationException.class, () -> small.put("key", "other"));
+  }
+
+  @Test
+  public void testHashCollisions() {
+    // "Aa" and "BB" have the same hash code, and so do all their concatenations
+    String[] parts = {"Aa", "BB"};
+    Map<String, String> expected = new HashMap<>();
+    Baggage baggage = Baggage.EMPTY;
+    for (int i = 0; i < 16; i++) {
+      String key = parts[i & 1] + parts[(i >> 1) & 1] + parts[(i >> 2) & 1] + parts[(i >> 3) & 1];
+      baggage = baggage.with(key, "value" + i).with("other" + i, "value" + i);
+      expected.put(key, "value" + i);
+      expected.put("other" + i, "value" + i);
+    }
+    baggage = baggage.with("AaAaAaAa", "replaced");
+    expected.put("AaAaAaAa", "replaced");
+    assertEquals(expected, baggage);
+    assertEquals("replaced", baggage.get("AaAaAaAa"));
+  }
+
+  @Test
+  public void testChildSpansShareBaggage() {
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).build();
+    Span parent = tracer.buildSpan("parent").start();
+    for (int i = 0; i < 12; i++) {
+      parent.setBaggageItem("key" + i, "value" + i);
+    }
+    Baggage parentBaggage = ((WavefrontSpanContext) parent.context()).getBaggage();
+    Span child = tracer.buildSpan("child").asChildOf(parent).start();
+    Span grandChild = tracer.buildSpan("grandChild").asChildOf(child).start();
+    assertSame(parentBaggage, ((WavefrontSpanContext) grandChild.context()).getBaggage());
+
+    grandChild.setBaggageItem("key0", "changed");
+    assertEquals("changed", grandChild.getBaggageItem("key0"));
+    assertEquals("value0", parent.getBaggageItem("key0"));
+    assertSame(parentBaggage, ((WavefrontSpanContext) child.context()).getBaggage());
+  }
+}
@@ -0,0 +1,218 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.opentracing.reporting.Reporter;
+import com.wavefront.opentracing.sampling.TailSamplingPolicy;
+import com.wavefront.sdk.common.application.ApplicationTags;
+import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link FinishPipeline}.
+ */
+public class FinishPipelineTest {
+
+  private static WavefrontTracer.Builder tracerBuilder(Reporter reporter) {
+    return new WavefrontTracer.Builder(reporter,
+        new ApplicationTags.Builder("myApplication", "myService").build());
+  }
+
+  @Test
+  public void testSpansAreProcessedByWorkers() {
+    CapturingReporter reporter = new CapturingReporter(null);
+    WavefrontTracer tracer = tracerBuilder(reporter).asyncFinish(2, 1000).build();
+    for (int i = 0; i < 100; i++) {
+      Span parent = tracer.buildSpan("parent").start();
+      tracer.buildSpan("child").asChildOf(parent).start().finish();
+      parent.finish();
+    }
+    tracer.flush();
+
+    assertEquals(200, reporter.spans.size());
+    for (String thread : reporter.threads) {
+      assertTrue(thread.startsWith("wavefront-span-finisher-"));
+    }
+    // the spans of a trace are processed in the order they finished
+    Map<Long, String> firstOperations = new HashMap<>();
+    for (FinishedSpan span : reporter.spans) {
+      firstOperations.putIfAbsent(span.getTraceIdLow(), span.getOperationName());
+    }
+    assertEquals(100, firstOperations.size());
+    for (String operationName : firstOperations.values()) {
+      assertEquals("child", operationName);
+    }
+    assertEquals(0, tracer.getFinishPipeline().getDroppedCount());
+    tracer.close();
+  }
+
+  @Test
+  public void testSynchronousMode() {
+    CapturingReporter reporter = new CapturingReporter(null);
+    WavefrontTracer tracer = tracerBuilder(reporter).asyncFinish(0, 1).build();
+    assertEquals(0, tracer.getFinishPipeline().getWorkerCount());
+    tracer.buildSpan("op").start().finish();
+    assertEquals(1, reporter.spans.size());
+    assertEquals(Thread.currentThread().getName(), reporter.threads.get(0));
+  }
+
+  @Test
+  public void testSpansAreDroppedWhenQueueIsFull() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    CapturingReporter reporter = new CapturingReporter(release);
+    WavefrontTracer tracer = tracerBuilder(reporter).asyncFinish(1, 2).build();
+    FinishPipeline pipeline = tracer.getFinishPipeline();
+
+    // the worker blocks reporting the first span
+    tracer.buildSpan("op").start().finish();
+    assertTrue(reporter.reporting.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < 5; i++) {
+      tracer.buildSpan("op").start().finish();
+    }
+    assertEquals(2, pipeline.getQueueSize());
+    assertEquals(3, pipeline.getDroppedCount());
+
+    release.countDown();
+    tracer.close();
+    assertEquals(3, reporter.spans.size());
+    assertEquals(0, pipeline.getQueueSize());
+
+    // spans finished after closing are processed synchronously
+    tracer.buildSpan("op").start().finish();
+    assertEquals(4, reporter.spans.size());
+  }
+
+  @Test
+  public void testNoSpanIsLostWhileClosing() throws InterruptedException {
+    CapturingReporter reporter = new CapturingReporter(null);
+    WavefrontTracer tracer = tracerBuilder(reporter).asyncFinish(2, 10000).
+        withSampler(new ConstantSampler(true)).
+        build();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 1000; j++) {
+          tracer.buildSpan("op").start().finish();
+        }
+      });
+      threads[i].start();
+    }
+    tracer.close();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // spans queued while the pipeline closed are processed by close() or by their finisher
+    assertEquals(4000, reporter.spans.size());
+    assertEquals(0, tracer.getFinishPipeline().getQueueSize());
+  }
+
+  @Test
+  public void testDroppedSpansFinishTheirTailSamplingSegment() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    CapturingReporter reporter = new CapturingReporter(release);
+    WavefrontTracer tracer = tracerBuilder(reporter).asyncFinish(1, 2).
+        withSampler(new ConstantSampler(false)).
+        withTailSamplingPolicy(TailSamplingPolicy.anyError()).
+        build();
+    FinishPipeline pipeline = tracer.getFinishPipeline();
+
+    // the worker blocks reporting the first span, which is kept for its error
+    tracer.buildSpan("op").withTag(Tags.ERROR.getKey(), true).start().finish();
+    assertTrue(reporter.reporting.await(10, TimeUnit.SECONDS));
+    Span root = tracer.buildSpan("root").start();
+    Span child = tracer.buildSpan("child").asChildOf(root).withTag(Tags.ERROR.getKey(), true).
+        start();
+    tracer.buildSpan("op").start().finish();
+    tracer.buildSpan("op").start().finish();
+
+    // the dropped spans still complete their segment, which is kept on the finishing thread
+    child.finish();
+    root.finish();
+    assertEquals(2, pipeline.getDroppedCount());
+    assertEquals(2, reporter.spans.size());
+    assertEquals(Thread.currentThread().getName(), reporter.threads.get(0));
+    assertEquals(2, tracer.getTailSamplingBuffer().getKeptCount());
+
+    release.countDown();
+    tracer.close();
+    assertEquals(3, reporter.spans.size());
+  }
+
+  @Test
+  public void testInvalidConfiguration() {
+    assertThrows(IllegalArgumentException.class, () ->
+        tracerBuilder(new ConsoleReporter(DEFAULT_SOURCE)).asyncFinish(-1, 10));
+    assertThrows(IllegalArgumentException.class, () ->
+        tracerBuilder(new ConsoleReporter(DEFAULT_SOURCE)).asyncFinish(1, 0));
+    assertThrows(IllegalArgumentException.class, () ->
+        tracerBuilder(new ConsoleReporter(DEFAULT_SOURCE)).asyncFinish(1, 10).
+            recycleSpans(false).build());
+    tracerBuilder(new ConsoleReporter(DEFAULT_SOURCE)).asyncFinish(0, 10).recycleSpans(false).
+        build().close();
+  }
+
+  private static final class CapturingReporter implements Reporter {
+    private final List<FinishedSpan> spans = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch reporting = new CountDownLatch(1);
+    /** Blocks the first report until released. */
+    private final CountDownLatch release;
+
+    CapturingReporter(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void report(WavefrontSpan span) {
+      report(span.getFinishedSpan());
+    }
+
+    @Override
+    public void report(FinishedSpan span) {
+      if (release != null && reporting.getCount() > 0) {
+        reporting.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      spans.add(span);
+      threads.add(Thread.currentThread().getName());
+    }
+
+    @Override
+    public boolean supportsFinishedSpans() {
+      return true;
+    }
+
+    @Override
+    public int getFailureCount() {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void flush() {
+    }
+  }
+}
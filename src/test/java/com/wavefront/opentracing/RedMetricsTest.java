@@ -0,0 +1,68 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.internal.reporter.WavefrontInternalReporter;
+import com.wavefront.internal_reporter_java.io.dropwizard.metrics5.MetricName;
+import com.wavefront.sdk.common.Pair;
+import com.wavefront.sdk.common.clients.WavefrontNoOpClient;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link RedMetrics}.
+ */
+public class RedMetricsTest {
+
+  private static Map<String, String> pointTags(String operationName, String tenant) {
+    Map<String, String> tags = new HashMap<>();
+    tags.put("application", "app");
+    tags.put("service", "svc");
+    tags.put("cluster", "none");
+    tags.put("shard", "none");
+    tags.put("operationName", operationName);
+    tags.put("component", "none");
+    tags.put("source", "host");
+    tags.put("span.kind", "none");
+    tags.put("tenant", tenant);
+    return tags;
+  }
+
+  @Test
+  public void testMetricsAreCachedPerIdentity() {
+    WavefrontInternalReporter reporter = new WavefrontInternalReporter.Builder().
+        prefixedWith("tracing.derived").withSource("host").build(new WavefrontNoOpClient());
+    RedMetrics redMetrics = new RedMetrics(reporter, null, "host",
+        Collections.singleton("tenant"), 3);
+    List<Pair<String, String>> acme = Collections.singletonList(Pair.of("tenant", "acme"));
+    List<Pair<String, String>> other = Collections.singletonList(Pair.of("tenant", "other"));
+
+    redMetrics.report("op", "app", "svc", null, null, "none", false, 5000, acme);
+    redMetrics.report("op", "app", "svc", null, null, "none", false, 7000, acme);
+    redMetrics.report("op", "app", "svc", null, null, "none", false, 1000, other);
+    redMetrics.report("op", "app", "svc", null, null, "none", true, 1000, acme);
+    assertEquals(3, redMetrics.getIdentityCount());
+
+    // error spans are counted by the same invocation counter as other spans
+    assertEquals(3, reporter.newDeltaCounter(new MetricName("app.svc.op.invocation",
+        pointTags("op", "acme"))).getCount());
+    assertEquals(13, reporter.newDeltaCounter(new MetricName("app.svc.op.total_time.millis",
+        pointTags("op", "acme"))).getCount());
+    assertEquals(1, reporter.newDeltaCounter(new MetricName("app.svc.op.invocation",
+        pointTags("op", "other"))).getCount());
+    assertEquals(1, reporter.newDeltaCounter(new MetricName("app.svc.op.error",
+        pointTags("op", "acme"))).getCount());
+
+    // beyond the maximum, the metrics are still reported without caching
+    redMetrics.report("op2", "app", "svc", null, null, "none", false, 1000, acme);
+    redMetrics.report("op2", "app", "svc", null, null, "none", false, 1000, acme);
+    assertEquals(3, redMetrics.getIdentityCount());
+    assertEquals(2, reporter.newDeltaCounter(new MetricName("app.svc.op2.invocation",
+        pointTags("op2", "acme"))).getCount());
+  }
+}
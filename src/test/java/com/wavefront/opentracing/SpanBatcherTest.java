@@ -0,0 +1,200 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.opentracing.reporting.CompositeReporter;
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.opentracing.reporting.Reporter;
+import com.wavefront.opentracing.sampling.TailSamplingPolicy;
+import com.wavefront.sdk.common.application.ApplicationTags;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link SpanBatcher}.
+ */
+public class SpanBatcherTest {
+
+  private static FinishedSpan span(long spanId) {
+    return new FinishedSpan("op", 0, 1000, 0, spanId, 0, spanId, null, null, null, null, null,
+        null, false);
+  }
+
+  @Test
+  public void testBatchesAreHandedOverWhenFullOrExpired() throws InterruptedException {
+    AtomicLong now = new AtomicLong();
+    BatchReporter reporter = new BatchReporter();
+    SpanBatcher batcher = new SpanBatcher(reporter, 3, 10, now::get, false);
+
+    for (int i = 0; i < 7; i++) {
+      batcher.add(span(i));
+    }
+    assertEquals(2, reporter.batches.size());
+    assertEquals(3, reporter.batches.get(0).size());
+    assertEquals(3, reporter.batches.get(1).size());
+
+    // the spans of another thread are batched separately
+    Thread thread = new Thread(() -> batcher.add(span(100)));
+    thread.start();
+    thread.join();
+    assertEquals(2, batcher.getBatchCount());
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(9));
+    batcher.flushExpired();
+    assertEquals(2, reporter.batches.size());
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    batcher.flushExpired();
+    assertEquals(4, reporter.batches.size());
+    assertEquals(1, reporter.batches.get(2).size());
+    assertEquals(1, reporter.batches.get(3).size());
+
+    // a new batch waits for its own first span
+    batcher.add(span(7));
+    batcher.flushExpired();
+    assertEquals(4, reporter.batches.size());
+    batcher.close();
+    assertEquals(5, reporter.batches.size());
+    assertEquals(7, reporter.batches.get(4).get(0).getSpanIdLow());
+
+    // spans added after closing are reported one by one
+    batcher.add(span(8));
+    assertEquals(6, reporter.batches.size());
+  }
+
+  @Test
+  public void testNoSpanIsLostWhileFlushing() throws InterruptedException {
+    BatchReporter reporter = new BatchReporter();
+    SpanBatcher batcher = new SpanBatcher(reporter, 16, 1);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      int thread = i;
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          batcher.add(span(thread * 10000 + j));
+        }
+      });
+      threads[i].start();
+    }
+    for (int i = 0; i < 100; i++) {
+      batcher.flushAll();
+    }
+    batcher.close();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // every span is reported exactly once
+    Set<Long> spanIds = new HashSet<>();
+    int spanCount = 0;
+    for (List<FinishedSpan> batch : reporter.batches) {
+      for (FinishedSpan span : batch) {
+        spanIds.add(span.getSpanIdLow());
+        spanCount++;
+      }
+    }
+    assertEquals(40000, spanIds.size());
+    assertEquals(40000, spanCount);
+  }
+
+  @Test
+  public void testTracerBatchesFinishedSpans() {
+    BatchReporter reporter = new BatchReporter();
+    WavefrontTracer tracer = new WavefrontTracer.Builder(reporter,
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        batchFinishedSpans(10, 1, TimeUnit.HOURS).
+        build();
+    for (int i = 0; i < 25; i++) {
+      tracer.buildSpan("op").start().finish();
+    }
+    assertEquals(2, reporter.batches.size());
+    tracer.flush();
+    assertEquals(3, reporter.batches.size());
+    assertEquals(5, reporter.batches.get(2).size());
+    assertEquals(0, reporter.liveSpans);
+
+    assertThrows(IllegalArgumentException.class, () -> new WavefrontTracer.Builder(reporter,
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        batchFinishedSpans(0, 1, TimeUnit.SECONDS));
+    assertThrows(IllegalArgumentException.class, () -> new WavefrontTracer.Builder(reporter,
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        batchFinishedSpans(10, 0, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testReporterWithoutSnapshotSupportIsRejected() {
+    BatchReporter reporter = new BatchReporter(false);
+    assertThrows(IllegalArgumentException.class, () -> new WavefrontTracer.Builder(reporter,
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        batchFinishedSpans(10, 1, TimeUnit.SECONDS).
+        build());
+    assertThrows(IllegalArgumentException.class, () -> new WavefrontTracer.Builder(
+        new CompositeReporter(new ConsoleReporter(DEFAULT_SOURCE), reporter),
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        withTailSamplingPolicy(TailSamplingPolicy.anyError()).
+        build());
+    new WavefrontTracer.Builder(new CompositeReporter(new ConsoleReporter(DEFAULT_SOURCE),
+        new BatchReporter()), new ApplicationTags.Builder("myApplication", "myService").build()).
+        withTailSamplingPolicy(TailSamplingPolicy.anyError()).
+        batchFinishedSpans(10, 1, TimeUnit.SECONDS).
+        build().close();
+  }
+
+  private static final class BatchReporter implements Reporter {
+    private final List<List<FinishedSpan>> batches =
+        Collections.synchronizedList(new ArrayList<>());
+    private final boolean supportsFinishedSpans;
+    private int liveSpans;
+
+    BatchReporter() {
+      this(true);
+    }
+
+    BatchReporter(boolean supportsFinishedSpans) {
+      this.supportsFinishedSpans = supportsFinishedSpans;
+    }
+
+    @Override
+    public void report(WavefrontSpan span) {
+      liveSpans++;
+    }
+
+    @Override
+    public void report(FinishedSpan span) {
+      batches.add(Collections.singletonList(span));
+    }
+
+    @Override
+    public void report(List<FinishedSpan> spans) {
+      // the batch is reused by the batcher
+      batches.add(new ArrayList<>(spans));
+    }
+
+    @Override
+    public boolean supportsFinishedSpans() {
+      return supportsFinishedSpans;
+    }
+
+    @Override
+    public int getFailureCount() {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void flush() {
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.sdk.common.Pair;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SpanTags}.
+ */
+public class SpanTagsTest {
+
+  @Test
+  public void testGlobalTagsArePrefix() {
+    SpanTags globalTags = SpanTags.frozen(Arrays.asList(Pair.of("application", "app1"),
+        Pair.of("env", "prod"), Pair.of("application", "app2"), Pair.of("component", "db"),
+        Pair.of("service", "svc")));
+    assertEquals(Arrays.asList(Pair.of("env", "prod"), Pair.of("application", "app2"),
+        Pair.of("component", "db"), Pair.of("service", "svc")), globalTags.toList());
+    assertEquals("db", globalTags.getComponentTagValue());
+
+    SpanTags tags = new SpanTags(globalTags);
+    assertSame(globalTags, tags.getPrefix());
+    tags.add("env", "dev");
+    tags.add("service", "svc2");
+    assertEquals("app2", tags.getSingleValued("application"));
+    assertEquals("svc2", tags.getSingleValued("service"));
+    assertNull(tags.getSingleValued("env"));
+    assertNull(tags.getSingleValued("cluster"));
+
+    // a replaced global value is hidden and the new value comes last, as for any replaced value
+    List<Pair<String, String>> expected = Arrays.asList(Pair.of("env", "prod"),
+        Pair.of("application", "app2"), Pair.of("component", "db"), Pair.of("env", "dev"),
+        Pair.of("service", "svc2"));
+    assertEquals(expected, tags.toList());
+    assertEquals(5, tags.size());
+    assertArrayEquals(new String[]{"env", "prod", "application", "app2", "component", "db",
+        "env", "dev", "service", "svc2"}, tags.toArray());
+
+    // the prefix is not changed by its spans
+    assertEquals("svc", globalTags.getSingleValued("service"));
+    assertEquals(4, globalTags.size());
+
+    tags.clear();
+    assertEquals(globalTags.toList(), tags.toList());
+  }
+
+  @Test
+  public void testReplacedValuesAreCompacted() {
+    SpanTags tags = new SpanTags(null);
+    tags.add("tenant", "tenant1");
+    for (int i = 0; i < 1000; i++) {
+      tags.add("shard", "shard" + i);
+      tags.add("cluster", "cluster" + i);
+    }
+    tags.add("tenant", "tenant2");
+    assertEquals(Arrays.asList(Pair.of("tenant", "tenant1"), Pair.of("shard", "shard999"),
+        Pair.of("cluster", "cluster999"), Pair.of("tenant", "tenant2")), tags.toList());
+    assertEquals("shard999", tags.getSingleValued("shard"));
+    assertEquals("cluster999", tags.getSingleValued("cluster"));
+
+    List<Pair<String, String>> multiValued = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      tags.add("key", "value" + i);
+      multiValued.add(Pair.of("key", "value" + i));
+    }
+    assertEquals(104, tags.size());
+    assertTrue(tags.toList().containsAll(multiValued));
+    assertSame(tags.toList(), tags.toList());
+  }
+}
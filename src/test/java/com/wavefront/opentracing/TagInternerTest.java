@@ -0,0 +1,82 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.sdk.common.Pair;
+import com.wavefront.sdk.common.application.ApplicationTags;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link TagInterner}.
+ */
+public class TagInternerTest {
+
+  @Test
+  public void testIntern() {
+    TagInterner interner = new TagInterner(1000);
+    assertEquals(1024, interner.capacity());
+    String value = new String("value");
+    assertSame(value, interner.intern(value));
+    assertSame(value, interner.intern(new String("value")));
+    assertEquals(1, interner.getHits());
+    assertEquals(1, interner.getMisses());
+    assertEquals(0.5, interner.hitRate());
+
+    assertEquals(2, new TagInterner(1).capacity());
+    assertThrows(IllegalArgumentException.class, () -> new TagInterner(0));
+  }
+
+  @Test
+  public void testEviction() {
+    TagInterner interner = new TagInterner(16);
+    String first = new String("first");
+    interner.intern(first);
+    for (int i = 0; i < 1000; i++) {
+      interner.intern("key" + i);
+    }
+    // the dictionary is bounded, so the first string was evicted by the later ones
+    assertNotSame(first, interner.intern(new String("first")));
+    assertEquals(0, interner.getHits());
+  }
+
+  @Test
+  public void testTracerInternsTags() {
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        internTags(256).
+        lowCardinalityTagKeys(Collections.singleton("tenant")).
+        build();
+    WavefrontSpan span1 = (WavefrontSpan) tracer.buildSpan("op").
+        withTag(new String("tenant"), new String("tenant1")).
+        withTag("requestId", new String("request1")).
+        start();
+    WavefrontSpan span2 = (WavefrontSpan) tracer.buildSpan("op").start();
+    span2.setTag(new String("tenant"), new String("tenant1"));
+    span2.setTag("requestId", new String("request1"));
+
+    List<Pair<String, String>> tags1 = span1.getTagsAsList();
+    List<Pair<String, String>> tags2 = span2.getTagsAsList();
+    int size = tags1.size();
+    assertEquals(tags1, tags2);
+    // keys and values of low-cardinality keys are shared, other values are not
+    assertSame(tags1.get(size - 2)._1, tags2.get(size - 2)._1);
+    assertSame(tags1.get(size - 2)._2, tags2.get(size - 2)._2);
+    assertNotSame(tags1.get(size - 1)._2, tags2.get(size - 1)._2);
+    assertEquals(0.5, tracer.getTagInterner().hitRate());
+
+    WavefrontTracer defaultTracer = new WavefrontTracer.Builder(
+        new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).build();
+    assertNull(defaultTracer.getTagInterner());
+  }
+}
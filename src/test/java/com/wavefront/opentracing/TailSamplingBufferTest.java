@@ -0,0 +1,198 @@
+package com.wavefront.opentracing;
+
+import com.wavefront.opentracing.reporting.Reporter;
+import com.wavefront.opentracing.sampling.TailSamplingPolicy;
+import com.wavefront.sdk.common.application.ApplicationTags;
+import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link TailSamplingBuffer}.
+ */
+public class TailSamplingBufferTest {
+
+  private static FinishedSpan span(long traceId, long spanId, long parentId, long durationMicros,
+                                   boolean error) {
+    long[] parents = parentId == 0 ? null : new long[]{0, parentId};
+    return new FinishedSpan("op", 0, durationMicros, 0, traceId, 0, spanId, parents, null,
+        null, null, null, null, error);
+  }
+
+  @Test
+  public void testSegmentIsDecidedWhenComplete() {
+    List<FinishedSpan> reported = new ArrayList<>();
+    TailSamplingBuffer buffer = new TailSamplingBuffer(Arrays.asList(
+        TailSamplingPolicy.anyError(), TailSamplingPolicy.rootLatency(1, TimeUnit.SECONDS)),
+        1000, Long.MAX_VALUE, reported::add, System::nanoTime, false);
+
+    // a slow child of an unsampled trace keeps nothing, an error keeps the whole segment
+    TailSamplingBuffer.Segment segment1 = buffer.spanStarted(1);
+    buffer.spanStarted(1);
+    buffer.spanFinished(span(1, 11, 10, 2_000_000, false), false, segment1);
+    assertTrue(reported.isEmpty());
+    buffer.spanFinished(span(1, 10, 0, 3_000, false), false, segment1);
+    assertTrue(reported.isEmpty());
+    assertEquals(1, buffer.getDroppedCount());
+
+    TailSamplingBuffer.Segment segment2 = buffer.spanStarted(2);
+    buffer.spanStarted(2);
+    buffer.spanFinished(span(2, 21, 20, 1_000, true), false, segment2);
+    buffer.spanFinished(span(2, 20, 0, 3_000, false), false, segment2);
+    assertEquals(2, reported.size());
+    assertEquals(1, buffer.getKeptCount());
+
+    // a slow root keeps the segment
+    reported.clear();
+    TailSamplingBuffer.Segment segment3 = buffer.spanStarted(3);
+    buffer.spanStarted(3);
+    buffer.spanFinished(span(3, 31, 30, 1_000, false), false, segment3);
+    buffer.spanFinished(span(3, 30, 0, 1_500_000, false), false, segment3);
+    assertEquals(2, reported.size());
+
+    // a dropped segment still reports its sampled spans
+    reported.clear();
+    TailSamplingBuffer.Segment segment4 = buffer.spanStarted(4);
+    buffer.spanStarted(4);
+    buffer.spanFinished(span(4, 41, 40, 1_000, false), true, segment4);
+    buffer.spanFinished(span(4, 40, 0, 2_000, false), true, segment4);
+    assertEquals(2, reported.size());
+    assertEquals(0, buffer.getTraceCount());
+    assertEquals(0, buffer.getBytes());
+  }
+
+  @Test
+  public void testTimeoutAndMemoryCap() {
+    AtomicLong now = new AtomicLong();
+    List<FinishedSpan> reported = new ArrayList<>();
+    FinishedSpan errorSpan = span(1, 11, 10, 1_000, true);
+    TailSamplingBuffer buffer = new TailSamplingBuffer(
+        Collections.singletonList(TailSamplingPolicy.anyError()), 1000,
+        128 + 2 * errorSpan.getEstimatedBytes(), reported::add, now::get, false);
+
+    // the root never finishes, so the segment is decided when it times out
+    TailSamplingBuffer.Segment segment1 = buffer.spanStarted(1);
+    buffer.spanStarted(1);
+    buffer.spanFinished(errorSpan, false, segment1);
+    buffer.sweep();
+    assertTrue(reported.isEmpty());
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    buffer.sweep();
+    assertEquals(1, reported.size());
+    assertEquals(1, buffer.getTimedOutCount());
+    assertEquals(0, buffer.getBytes());
+
+    // the third span goes past the cap, so the segment is evicted
+    reported.clear();
+    TailSamplingBuffer.Segment segment2 = buffer.spanStarted(2);
+    buffer.spanStarted(2);
+    buffer.spanStarted(2);
+    buffer.spanStarted(2);
+    buffer.spanFinished(span(2, 21, 20, 1_000, true), false, segment2);
+    buffer.spanFinished(span(2, 22, 20, 1_000, false), true, segment2);
+    buffer.spanFinished(span(2, 23, 20, 1_000, false), false, segment2);
+    assertEquals(1, buffer.getEvictedCount());
+    assertEquals(1, reported.size());
+    assertEquals(22, reported.get(0).getSpanIdLow());
+    assertEquals(0, buffer.getBytes());
+    // the rest of the trace is reported by its own sampling decision
+    buffer.spanFinished(span(2, 20, 0, 1_000, true), true, segment2);
+    assertEquals(2, reported.size());
+  }
+
+  @Test
+  public void testSpansOnlyCloseTheSegmentTheyJoined() {
+    AtomicLong now = new AtomicLong();
+    List<FinishedSpan> reported = new ArrayList<>();
+    TailSamplingBuffer buffer = new TailSamplingBuffer(
+        Collections.singletonList(TailSamplingPolicy.anyError()), 1000, Long.MAX_VALUE,
+        reported::add, now::get, false);
+
+    // a long-running root outlives its segment, and its children open a new one
+    TailSamplingBuffer.Segment rootSegment = buffer.spanStarted(1);
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    buffer.sweep();
+    TailSamplingBuffer.Segment childSegment = buffer.spanStarted(1);
+    buffer.spanFinished(span(1, 10, 0, 2_000_000, false), false, rootSegment);
+    assertEquals(1, buffer.getTraceCount());
+    assertTrue(reported.isEmpty());
+    buffer.spanFinished(span(1, 11, 10, 1_000, true), false, childSegment);
+    assertEquals(1, reported.size());
+    assertEquals(11, reported.get(0).getSpanIdLow());
+
+    // a span started while the buffer was full joined no segment
+    buffer.spanFinished(span(2, 20, 0, 1_000, true), true, null);
+    assertEquals(2, reported.size());
+    assertEquals(0, buffer.getTraceCount());
+  }
+
+  @Test
+  public void testTracerKeepsTraceWithError() {
+    List<FinishedSpan> reported = new ArrayList<>();
+    Reporter reporter = new Reporter() {
+      @Override
+      public void report(WavefrontSpan span) {
+        reported.add(span.getFinishedSpan());
+      }
+
+      @Override
+      public void report(FinishedSpan span) {
+        reported.add(span);
+      }
+
+      @Override
+      public boolean supportsFinishedSpans() {
+        return true;
+      }
+
+      @Override
+      public int getFailureCount() {
+        return 0;
+      }
+
+      @Override
+      public void close() {
+      }
+
+      @Override
+      public void flush() {
+      }
+    };
+    WavefrontTracer tracer = new WavefrontTracer.Builder(reporter,
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        withSampler(new ConstantSampler(false)).
+        withTailSamplingPolicy(TailSamplingPolicy.anyError()).
+        build();
+
+    Span root = tracer.buildSpan("root").start();
+    tracer.buildSpan("child").asChildOf(root).start().finish();
+    root.finish();
+    assertTrue(reported.isEmpty());
+
+    root = tracer.buildSpan("root").start();
+    Span child = tracer.buildSpan("child").asChildOf(root).start();
+    Tags.ERROR.set(tracer.buildSpan("grandChild").asChildOf(child).start(), true);
+    tracer.buildSpan("grandChild").asChildOf(child).withTag(Tags.ERROR.getKey(), true).start().
+        finish();
+    child.finish();
+    assertTrue(reported.isEmpty());
+    root.finish();
+    // the unfinished grand child holds the segment open until the tracer is closed
+    assertTrue(reported.isEmpty());
+    tracer.close();
+    assertEquals(3, reported.size());
+  }
+}
@@ -2,12 +2,18 @@ package com.wavefront.opentracing;
 
 import com.wavefront.opentracing.reporting.ConsoleReporter;
 import com.wavefront.sdk.common.Constants;
+import com.wavefront.sdk.common.Pair;
 import com.wavefront.sdk.common.application.ApplicationTags;
+import com.wavefront.sdk.entities.tracing.SpanLog;
 import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
+import com.wavefront.sdk.entities.tracing.sampling.DurationSampler;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -100,6 +106,94 @@ public class WavefrontSpanBuilderTest {
     assertTrue(span.context().getSamplingDecision());
   }
 
+  @Test
+  public void testLightweightUnsampledSpans() {
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        buildApplicationTags()).
+        withSampler(new ConstantSampler(false)).
+        redMetricsCustomTagKeys(Collections.singleton("tenant")).
+        lightweightUnsampledSpans().
+        build();
+
+    WavefrontSpan span = (WavefrontSpan) tracer.buildSpan("testOp").withTag("key1", "value1").
+        start();
+    span.setTag("key2", "value2");
+    span.setTag("tenant", "tenant1");
+    span.setTag(Tags.COMPONENT.getKey(), "db");
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("event", "deferred");
+    fields.put("attempt", 1);
+    span.log(1554363517965000L, fields);
+    assertFalse(span.context().getSamplingDecision());
+    assertEquals(Arrays.asList("value1"), span.getTagsAsMap().get("key1"));
+    assertEquals("db", span.getComponentTagValue());
+
+    // forcing sampling turns the span into a full span that keeps what was added before
+    Tags.ERROR.set(span, true);
+    assertTrue(span.isError());
+    assertTrue(span.context().getSamplingDecision());
+    span.setTag("key3", "value3");
+    span.log("kept");
+    assertEquals(Arrays.asList("value2"), span.getTagsAsMap().get("key2"));
+    assertEquals(Arrays.asList("value3"), span.getTagsAsMap().get("key3"));
+    List<SpanLog> spanLogs = span.getSpanLogs();
+    assertEquals(2, spanLogs.size());
+    assertEquals(1554363517965000L, spanLogs.get(0).getTimestamp());
+    assertEquals("1", spanLogs.get(0).getFields().get("attempt"));
+    assertEquals("kept", spanLogs.get(1).getFields().get("event"));
+    span.finish();
+    assertEquals(2, span.getFinishedSpan().getSpanLogCount());
+
+    // builder tags forcing sampling keep the span a full span
+    span = (WavefrontSpan) tracer.buildSpan("testOp").withTag("key1", "value1").
+        withTag(Tags.ERROR.getKey(), true).start();
+    assertEquals(Arrays.asList("value1"), span.getTagsAsMap().get("key1"));
+    assertTrue(span.context().getSamplingDecision());
+
+    // spans that may still be sampled when they finish are full spans
+    tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        buildApplicationTags()).
+        withSampler(new ConstantSampler(false)).
+        withSampler(new DurationSampler(1000)).
+        lightweightUnsampledSpans().
+        build();
+    span = (WavefrontSpan) tracer.buildSpan("testOp").start();
+    span.setTag("key2", "value2");
+    span.log("kept");
+    assertEquals(Arrays.asList("value2"), span.getTagsAsMap().get("key2"));
+    assertEquals(1, span.getSpanLogs().size());
+  }
+
+  @Test
+  public void testTypedBuilderTags() {
+    // Create tracer with constant sampler set to false
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        buildApplicationTags()).
+        withSampler(new ConstantSampler(false)).
+        build();
+
+    // typed tags set on the builder force sampling like the same tags set on the span
+    WavefrontSpan span = (WavefrontSpan) tracer.buildSpan("testOp").
+        withTag(Tags.ERROR.getKey(), true).
+        withTag("retries", 3).
+        withTag("ratio", 0.5).
+        withTag("", 1).
+        start();
+    assertTrue(span.isError());
+    assertTrue(span.context().getSamplingDecision());
+    assertEquals(Collections.singletonList("true"), span.getTagsAsMap().get(Tags.ERROR.getKey()));
+    assertEquals(Collections.singletonList("3"), span.getTagsAsMap().get("retries"));
+    assertEquals(Collections.singletonList("0.5"), span.getTagsAsMap().get("ratio"));
+    // the four application tags come first
+    assertEquals(Arrays.asList(Pair.of("error", "true"), Pair.of("retries", "3"),
+        Pair.of("ratio", "0.5")), span.getFinishedSpan().getTagsAsList().subList(4, 7));
+
+    span = (WavefrontSpan) tracer.buildSpan("testOp").
+        withTag(Tags.SAMPLING_PRIORITY.getKey(), 1).
+        start();
+    assertTrue(span.context().getSamplingDecision());
+  }
+
   @Test
   public void testRootSampling() {
     // Create tracer with constant sampler set to false
@@ -1,8 +1,11 @@
 package com.wavefront.opentracing;
 
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.opentracing.reporting.Reporter;
 import com.wavefront.opentracing.reporting.WavefrontSpanReporter;
 import com.wavefront.sdk.common.WavefrontSender;
 import com.wavefront.sdk.entities.histograms.HistogramGranularity;
+import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
 import com.wavefront.sdk.entities.tracing.sampling.RateSampler;
 
 import org.easymock.Capture;
@@ -17,6 +20,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 
+import io.opentracing.Tracer;
 import io.opentracing.tag.Tags;
 
 import static com.wavefront.opentracing.Utils.buildApplicationTags;
@@ -27,11 +31,18 @@ import static org.easymock.EasyMock.anyLong;
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.anyString;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * WavefrontSpanTest to test spans, generated metrics and component heartbeat.
@@ -340,6 +351,126 @@ public class WavefrontSpanTest {
     capture.getValues().forEach(tags -> assertFalse(tags.containsKey("tenant")));
   }
 
+  @Test
+  public void testFinishedSpanSnapshot() {
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        buildApplicationTags()).withSampler(new ConstantSampler(true)).build();
+    WavefrontSpan parent = (WavefrontSpan) tracer.buildSpan("parentOp").start();
+    WavefrontSpan span = (WavefrontSpan) tracer.buildSpan("childOp").asChildOf(parent).
+        withTag("tenant", "tenant1").start();
+    span.setTag(Tags.ERROR.getKey(), true);
+    span.log(1554363517965123L, "event1");
+    span.finish(span.getStartTimeMicros() + 1500);
+
+    FinishedSpan finishedSpan = span.getFinishedSpan();
+    assertSame(finishedSpan, span.getFinishedSpan());
+    assertEquals("childOp", finishedSpan.getOperationName());
+    assertEquals(span.getStartTimeMicros(), finishedSpan.getStartTimeMicros());
+    assertEquals(1500, finishedSpan.getDurationMicros());
+    assertEquals(span.context().getTraceId(), finishedSpan.getTraceId());
+    assertEquals(span.context().getSpanId(), finishedSpan.getSpanId());
+    assertEquals(Collections.singletonList(parent.context().getSpanId()),
+        finishedSpan.getParents());
+    assertEquals(Collections.emptyList(), finishedSpan.getFollows());
+    assertEquals(span.getTagsAsList(), finishedSpan.getTagsAsList());
+    assertTrue(finishedSpan.isError());
+    assertEquals(1, finishedSpan.getSpanLogCount());
+    assertEquals(1554363517965123L, finishedSpan.getSpanLogTimestamp(0));
+    assertEquals(span.getSpanLogs().get(0).getFields(),
+        finishedSpan.getSpanLogs().get(0).getFields());
+
+    // later changes to the live span do not affect the snapshot
+    span.setOperationName("renamedOp");
+    assertEquals("childOp", span.getFinishedSpan().getOperationName());
+  }
+
+  @Test
+  public void testSpanRecycling() {
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        buildApplicationTags()).withSampler(new ConstantSampler(true)).recycleSpans(false).
+        build();
+    Tracer.SpanBuilder firstBuilder = tracer.buildSpan("firstOp").withTag("tenant", "tenant1");
+    WavefrontSpan first = (WavefrontSpan) firstBuilder.start();
+    WavefrontSpanContext firstContext = first.context();
+    first.log("event1");
+    first.finish();
+    assertThrows(IllegalStateException.class, first::context);
+
+    // the builder and the span are reused without any state of the previous span
+    Tracer.SpanBuilder secondBuilder = tracer.buildSpan("secondOp");
+    assertSame(firstBuilder, secondBuilder);
+    WavefrontSpan second = (WavefrontSpan) secondBuilder.start();
+    assertSame(first, second);
+    assertEquals("secondOp", second.getOperationName());
+    assertFalse(second.getTagsAsMap().containsKey("tenant"));
+    assertEquals("myApplication", second.getSingleValuedTagValue("application"));
+    assertEquals(Collections.emptyList(), second.getSpanLogs());
+    assertNotEquals(firstContext.getSpanId(), second.context().getSpanId());
+
+    // references are copied, so the recycled builder does not clear them
+    WavefrontSpan child = (WavefrontSpan) tracer.buildSpan("childOp").asChildOf(second).start();
+    assertEquals(1, child.getParents().size());
+    assertSame(second.context(), child.getParents().get(0).getSpanContext());
+    child.finish();
+    second.finish();
+  }
+
+  @Test
+  public void testUseAfterRecycleDetected() {
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        buildApplicationTags()).withSampler(new ConstantSampler(true)).recycleSpans(true).
+        build();
+    Tracer.SpanBuilder builder = tracer.buildSpan("dummyOp");
+    WavefrontSpan span = (WavefrontSpan) builder.start();
+    assertThrows(IllegalStateException.class, () -> builder.withTag("tenant", "tenant1"));
+    assertThrows(IllegalStateException.class, builder::start);
+    span.finish();
+    assertThrows(IllegalStateException.class, () -> span.setTag("tenant", "tenant1"));
+    assertThrows(IllegalStateException.class, span::finish);
+
+    // recycled instances are never handed out again, so stale references keep failing
+    WavefrontSpan next = (WavefrontSpan) tracer.buildSpan("dummyOp").start();
+    assertNotSame(span, next);
+    assertThrows(IllegalStateException.class, span::getFinishedSpan);
+    next.finish();
+  }
+
+  @Test
+  public void testSpanRecyclingRequiresFinishedSpanReporter() {
+    Reporter reporter = createNiceMock(Reporter.class);
+    replay(reporter);
+    assertThrows(IllegalArgumentException.class, () -> new WavefrontTracer.Builder(reporter,
+        buildApplicationTags()).recycleSpans(false).build());
+  }
+
+  @Test
+  public void testThreadSafeSpan() throws InterruptedException {
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        buildApplicationTags()).withSampler(new ConstantSampler(true)).build();
+    WavefrontSpan span = (WavefrontSpan) ((WavefrontSpanBuilder) tracer.buildSpan("sharedOp")).
+        threadSafe().start();
+    int numGlobalTags = span.getTagsAsList().size();
+    int numThreads = 4;
+    int numTags = 1000;
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      String key = "thread" + i;
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < numTags; j++) {
+          span.setTag(key, j);
+          span.log(key);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    span.finish();
+    assertEquals(numGlobalTags + numThreads * numTags, span.getTagsAsList().size());
+    assertEquals(numThreads * numTags, span.getFinishedSpan().getSpanLogCount());
+  }
+
   private Map<String, String> pointTags(String operationName, Map<String, String> customTags) {
     return new HashMap<String, String>() {{
       put("application", "myApplication");
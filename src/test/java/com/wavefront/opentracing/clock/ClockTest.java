@@ -0,0 +1,63 @@
+package com.wavefront.opentracing.clock;
+
+import com.wavefront.opentracing.WavefrontSpan;
+import com.wavefront.opentracing.WavefrontTracer;
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.sdk.common.application.ApplicationTags;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link Clock} and {@link AnchoredNanoClock}.
+ */
+public class ClockTest {
+
+  @Test
+  public void testAnchoredNanoClock() {
+    Clock clock = new AnchoredNanoClock();
+    long wallMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    long micros = clock.currentTimeMicros();
+    assertTrue(Math.abs(micros - wallMicros) < TimeUnit.MILLISECONDS.toMicros(50));
+    long previous = micros;
+    for (int i = 0; i < 10000; i++) {
+      micros = clock.currentTimeMicros();
+      assertTrue(micros >= previous);
+      previous = micros;
+    }
+  }
+
+  @Test
+  public void testVirtualClock() {
+    AtomicLong now = new AtomicLong(1_000_000_000_000_001L);
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        withClock(now::get).
+        build();
+    WavefrontSpan span = (WavefrontSpan) tracer.buildSpan("testOp").start();
+    assertEquals(1_000_000_000_000_001L, span.getStartTimeMicros());
+    now.addAndGet(250);
+    span.log("event");
+    assertEquals(1_000_000_000_000_251L, span.getSpanLogs().get(0).getTimestamp());
+    now.addAndGet(500);
+    span.finish();
+    assertEquals(750, span.getDurationMicroseconds());
+
+    // spans with an explicit start are timed with the same clock
+    WavefrontSpan explicitSpan = (WavefrontSpan) tracer.buildSpan("testOp").
+        withStartTimestamp(now.get() - 10).start();
+    explicitSpan.finish();
+    assertEquals(10, explicitSpan.getDurationMicroseconds());
+
+    assertThrows(IllegalArgumentException.class, () -> new WavefrontTracer.Builder(
+        new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).withClock(null));
+  }
+}
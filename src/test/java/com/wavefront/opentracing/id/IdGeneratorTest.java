@@ -0,0 +1,80 @@
+package com.wavefront.opentracing.id;
+
+import com.wavefront.opentracing.WavefrontSpanContext;
+import com.wavefront.opentracing.WavefrontTracer;
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.sdk.common.application.ApplicationTags;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.opentracing.Span;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the {@link IdGenerator} implementations.
+ */
+public class IdGeneratorTest {
+
+  @Test
+  public void testIdsAreUniqueAndNonZero() {
+    IdGenerator[] generators = {new ThreadLocalRandomIdGenerator(),
+        new SplittableRandomIdGenerator(), new TimePrefixedIdGenerator(),
+        new SecureRandomIdGenerator()};
+    for (IdGenerator generator : generators) {
+      Set<Long> ids = new HashSet<>();
+      for (int i = 0; i < 10000; i++) {
+        long id = generator.nextId();
+        assertNotEquals(0, id);
+        ids.add(id);
+      }
+      assertEquals(10000, ids.size(), generator.getClass().getSimpleName());
+    }
+  }
+
+  @Test
+  public void testSplittableRandomIsReproducible() {
+    IdGenerator generator1 = new SplittableRandomIdGenerator(42);
+    IdGenerator generator2 = new SplittableRandomIdGenerator(42);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(generator1.nextId(), generator2.nextId());
+    }
+  }
+
+  @Test
+  public void testTimePrefixedTraceIds() {
+    IdGenerator generator = new TimePrefixedIdGenerator();
+    long before = System.currentTimeMillis() / 1000;
+    long high = generator.nextTraceIdHigh();
+    long after = System.currentTimeMillis() / 1000;
+    long seconds = high >>> 32;
+    assertTrue(seconds >= before && seconds <= after);
+  }
+
+  @Test
+  public void testTracerUsesIdGenerator() {
+    AtomicLong counter = new AtomicLong();
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        withIdGenerator(counter::incrementAndGet).
+        useSpanId128Bit(false).
+        build();
+    Span span = tracer.buildSpan("testOp").start();
+    WavefrontSpanContext context = (WavefrontSpanContext) span.context();
+    assertEquals(new UUID(0, 1), context.getSpanId());
+    assertEquals(new UUID(2, 3), context.getTraceId());
+
+    assertThrows(IllegalArgumentException.class, () -> new WavefrontTracer.Builder(
+        new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).withIdGenerator(null));
+  }
+}
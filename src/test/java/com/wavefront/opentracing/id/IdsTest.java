@@ -0,0 +1,78 @@
+package com.wavefront.opentracing.id;
+
+import com.wavefront.opentracing.WavefrontSpanContext;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link Ids}.
+ */
+public class IdsTest {
+
+  @Test
+  public void testUuidFormat() {
+    Random random = new Random(42);
+    long[] highs = {0, -1, Long.MIN_VALUE, random.nextLong(), random.nextLong()};
+    for (long high : highs) {
+      long low = random.nextLong();
+      String uuid = new UUID(high, low).toString();
+      assertEquals(uuid, Ids.toUuidString(high, low));
+      assertEquals(high, Ids.parseUuidHigh(uuid));
+      assertEquals(low, Ids.parseUuidLow(uuid));
+    }
+    // non-canonical forms are parsed as UUID.fromString does
+    assertEquals(1, Ids.parseUuidHigh("0-0-1-0-0"));
+    assertEquals(2, Ids.parseUuidLow("0-0-0-0-2"));
+    assertThrows(IllegalArgumentException.class, () -> Ids.parseUuidLow("not a uuid"));
+    assertThrows(IllegalArgumentException.class,
+        () -> Ids.parseUuidLow("ef27b4b9-f6e9-46f5-ab2b-47bbb24746cz"));
+  }
+
+  @Test
+  public void testHexFormat() {
+    Random random = new Random(42);
+    long[] highs = {0, 0, 1, -1, random.nextLong(), random.nextLong()};
+    long[] lows = {0, -1, 0, 5, random.nextLong(), random.nextLong()};
+    for (int i = 0; i < highs.length; i++) {
+      String hex = toBigInteger(highs[i], lows[i]).toString(16);
+      assertEquals(hex, Ids.toHexString(highs[i], lows[i]));
+      assertEquals(highs[i], Ids.parseHexHigh(hex));
+      assertEquals(lows[i], Ids.parseHexLow(hex));
+    }
+    assertEquals(0, Ids.parseHexHigh("3871de7e09c53ae8"));
+    assertThrows(NumberFormatException.class, () -> Ids.parseHexLow(""));
+    assertThrows(NumberFormatException.class, () -> Ids.parseHexLow("xyz"));
+  }
+
+  @Test
+  public void testContextIdsAreCached() {
+    UUID traceId = UUID.randomUUID();
+    WavefrontSpanContext context = new WavefrontSpanContext(traceId.getMostSignificantBits(),
+        traceId.getLeastSignificantBits(), 0, 7, null, null);
+    assertEquals(traceId.toString(), context.toTraceId());
+    assertSame(context.toTraceId(), context.toTraceId());
+    assertEquals(traceId, context.getTraceId());
+    assertSame(context.getTraceId(), context.getTraceId());
+    assertEquals(new UUID(0, 7).toString(), context.toSpanId());
+
+    WavefrontSpanContext copy = context.withBaggageItem("key", "value");
+    assertSame(context.toTraceId(), copy.toTraceId());
+    assertSame(context.toSpanId(), copy.toSpanId());
+  }
+
+  private static BigInteger toBigInteger(long high, long low) {
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    buffer.putLong(high);
+    buffer.putLong(low);
+    return new BigInteger(1, buffer.array());
+  }
+}
@@ -0,0 +1,132 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+import com.wavefront.sdk.common.WavefrontSender;
+import com.wavefront.sdk.entities.tracing.SpanLog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link DiskSpill}.
+ */
+public class DiskSpillTest {
+
+  @TempDir
+  File directory;
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    UUID traceId = UUID.randomUUID();
+    UUID spanId = UUID.randomUUID();
+    UUID parentId = UUID.randomUUID();
+    FinishedSpan span = new FinishedSpan("getOrder", 1554363517965000L, 1234L,
+        traceId.getMostSignificantBits(), traceId.getLeastSignificantBits(),
+        spanId.getMostSignificantBits(), spanId.getLeastSignificantBits(),
+        new long[]{parentId.getMostSignificantBits(), parentId.getLeastSignificantBits()}, null,
+        new String[]{"application", "orders", "http.url", "/orders/∆", "error", "true"},
+        new long[]{1554363517965123L}, new int[]{2}, new String[]{"event", "error"}, true);
+
+    try (DiskSpill spill = new DiskSpill(directory, 1024 * 1024, evicted -> { })) {
+      assertTrue(spill.offer(span));
+      assertEquals(1, spill.size());
+      FinishedSpan decoded = spill.poll();
+      assertNotNull(decoded);
+      assertEquals("getOrder", decoded.getOperationName());
+      assertEquals(1554363517965000L, decoded.getStartTimeMicros());
+      assertEquals(1234L, decoded.getDurationMicros());
+      assertEquals(traceId, decoded.getTraceId());
+      assertEquals(spanId, decoded.getSpanId());
+      assertEquals(Collections.singletonList(parentId), decoded.getParents());
+      assertEquals(Collections.emptyList(), decoded.getFollows());
+      assertEquals(span.getTagsAsList(), decoded.getTagsAsList());
+      assertTrue(decoded.isError());
+      List<SpanLog> spanLogs = decoded.getSpanLogs();
+      assertEquals(1, spanLogs.size());
+      assertEquals(1554363517965123L, spanLogs.get(0).getTimestamp());
+      assertEquals(Collections.singletonMap("event", "error"), spanLogs.get(0).getFields());
+      assertNull(spill.poll());
+      assertEquals(0, spill.size());
+    }
+  }
+
+  @Test
+  public void testRecoveryAfterRestart() throws IOException {
+    try (DiskSpill spill = new DiskSpill(directory, 1024 * 1024, evicted -> { })) {
+      for (int i = 0; i < 10_000; i++) {
+        assertTrue(spill.offer(span("op-" + i)));
+      }
+      for (int i = 0; i < 100; i++) {
+        assertEquals("op-" + i, spill.poll().getOperationName());
+      }
+    }
+
+    try (DiskSpill spill = new DiskSpill(directory, 1024 * 1024, evicted -> { })) {
+      assertEquals(9_900, spill.size());
+      for (int i = 100; i < 10_000; i++) {
+        assertEquals("op-" + i, spill.poll().getOperationName());
+      }
+      assertNull(spill.poll());
+    }
+  }
+
+  @Test
+  public void testDirectoryIsLocked() throws IOException {
+    try (DiskSpill spill = new DiskSpill(directory, 1024 * 1024, evicted -> { })) {
+      assertThrows(IOException.class,
+          () -> new DiskSpill(directory, 1024 * 1024, evicted -> { }));
+      assertThrows(IllegalArgumentException.class, () -> new WavefrontSpanReporter.Builder().
+          withSpillDirectory(directory.getPath()).
+          build(createNiceMock(WavefrontSender.class)));
+      assertTrue(spill.offer(span("op")));
+    }
+    // the lock is released once the spill is closed
+    try (DiskSpill spill = new DiskSpill(directory, 1024 * 1024, evicted -> { })) {
+      assertEquals(1, spill.size());
+    }
+  }
+
+  @Test
+  public void testOldestSegmentsAreEvicted() throws IOException {
+    AtomicLong evicted = new AtomicLong();
+    int numSpans = 50_000;
+    try (DiskSpill spill = new DiskSpill(directory, 1024 * 1024, evicted::addAndGet)) {
+      for (int i = 0; i < numSpans; i++) {
+        assertTrue(spill.offer(span("op-" + i)));
+      }
+      assertTrue(spill.bytes() <= 1024 * 1024);
+      assertTrue(evicted.get() > 0);
+      assertEquals(numSpans, evicted.get() + spill.size());
+
+      // the spans that remain are the newest ones, in order
+      List<String> remaining = new ArrayList<>();
+      FinishedSpan span;
+      while ((span = spill.poll()) != null) {
+        remaining.add(span.getOperationName());
+      }
+      assertEquals(numSpans - evicted.get(), remaining.size());
+      assertEquals("op-" + (numSpans - 1), remaining.get(remaining.size() - 1));
+      assertEquals("op-" + evicted.get(), remaining.get(0));
+    }
+  }
+
+  private static FinishedSpan span(String operationName) {
+    return new FinishedSpan(operationName, 1554363517965000L, 10L, 1L, 2L, 3L, 4L, null, null,
+        new String[]{"component", "test"}, null, null, null, false);
+  }
+}
@@ -0,0 +1,311 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+import com.wavefront.opentracing.WavefrontTracer;
+import com.wavefront.sdk.common.Pair;
+import com.wavefront.sdk.common.Utils;
+import com.wavefront.sdk.common.WavefrontSender;
+import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.wavefront.opentracing.Utils.buildApplicationTags;
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link NioProxySpanSender}, against a stand-in proxy.
+ */
+public class NioProxySpanSenderTest {
+
+  private static final String SOURCE = "my-host";
+
+  private StandInProxy proxy;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    proxy = new StandInProxy();
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    proxy.close();
+  }
+
+  private NioProxySpanSender sender(int bufferBytes, int maxBuffers) {
+    return new NioProxySpanSender("localhost", proxy.getPort(), SOURCE, bufferBytes, maxBuffers,
+        10, dropped -> { });
+  }
+
+  private static FinishedSpan span(String name, String[] tags, long[] parentIds,
+                                   long[] followsIds) {
+    UUID traceId = UUID.randomUUID();
+    UUID spanId = UUID.randomUUID();
+    return new FinishedSpan(name, 1554363517965123L, 12345L, traceId.getMostSignificantBits(),
+        traceId.getLeastSignificantBits(), spanId.getMostSignificantBits(),
+        spanId.getLeastSignificantBits(), parentIds, followsIds, tags, null, null, null, false);
+  }
+
+  private static String expectedLine(FinishedSpan span, boolean includeSpanLogs) {
+    return Utils.tracingSpanToLineData(span.getOperationName(),
+        span.getStartTimeMicros() / 1000, span.getDurationMicros() / 1000, SOURCE,
+        span.getTraceId(), span.getSpanId(), span.getParents(), span.getFollows(),
+        span.getTagsAsList(), includeSpanLogs ? span.getSpanLogs() : null, DEFAULT_SOURCE);
+  }
+
+  @Test
+  public void testLinesMatchSdkFormat() throws Exception {
+    String[] globalTags = {"application", "myApplication", "service", "myService"};
+    UUID parentId = UUID.randomUUID();
+    UUID followsId = UUID.randomUUID();
+    long[] parentIds = {parentId.getMostSignificantBits(), parentId.getLeastSignificantBits()};
+    long[] followsIds = {followsId.getMostSignificantBits(), followsId.getLeastSignificantBits()};
+    List<FinishedSpan> spans = Arrays.asList(
+        span("getOrder", Arrays.copyOf(globalTags, 4), null, null),
+        span(" quoted \"op\"\n", new String[]{globalTags[0], globalTags[1], "http.url",
+            "/orders/∆/😀", "key with/slash", " \"x\"\ny "}, parentIds, followsIds),
+        // overrides the second global tag
+        span("op", new String[]{globalTags[0], globalTags[1], "service", "other"}, parentIds,
+            null),
+        new FinishedSpan("logged", 1554363517965123L, 1L, 1, 2, 3, 4, null, null,
+            Arrays.copyOf(globalTags, 4), new long[]{1554363517965000L}, new int[]{2},
+            new String[]{"event", "error"}, true));
+
+    try (NioProxySpanSender sender = sender(64 * 1024, 4)) {
+      List<Pair<String, String>> globalTagList = new ArrayList<>();
+      for (int i = 0; i < globalTags.length; i += 2) {
+        globalTagList.add(Pair.of(globalTags[i], globalTags[i + 1]));
+      }
+      sender.setGlobalTags(globalTagList);
+      for (FinishedSpan span : spans) {
+        sender.send(span, true);
+      }
+      sender.flush();
+
+      for (FinishedSpan span : spans) {
+        String expected = expectedLine(span, true);
+        assertEquals(expected, proxy.nextLine() + "\n");
+        if (span.getSpanLogCount() > 0) {
+          assertEquals(Utils.spanLogsToLineData(span.getTraceId(), span.getSpanId(),
+              span.getSpanLogs(), expected), proxy.nextLine() + "\n");
+        }
+      }
+      assertEquals(0, sender.getFailureCount());
+    }
+  }
+
+  @Test
+  public void testLinesNeverSpanBuffers() throws Exception {
+    List<FinishedSpan> spans = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      // every eleventh span is larger than a buffer
+      String value = i % 11 == 0 ? new String(new char[2000]).replace('\0', 'v') : "v" + i;
+      spans.add(span("op-" + i, new String[]{"key", value}, null, null));
+    }
+    try (NioProxySpanSender sender = sender(1024, 1000)) {
+      for (FinishedSpan span : spans) {
+        sender.send(span, false);
+      }
+      sender.flush();
+      for (FinishedSpan span : spans) {
+        assertEquals(expectedLine(span, false), proxy.nextLine() + "\n");
+      }
+      assertEquals(200, sender.getSentCount());
+      assertEquals(0, sender.getDroppedCount());
+    }
+  }
+
+  @Test
+  public void testSendBatch() throws Exception {
+    List<FinishedSpan> spans = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      spans.add(span("op-" + i, new String[]{"key", "v" + i}, null, null));
+    }
+    // a span with no name is dropped without failing the rest of the batch
+    spans.add(50, span("", null, null, null));
+    try (NioProxySpanSender sender = sender(1024, 1000)) {
+      sender.send(spans, false);
+      sender.flush();
+      for (FinishedSpan span : spans) {
+        if (!span.getOperationName().isEmpty()) {
+          assertEquals(expectedLine(span, false), proxy.nextLine() + "\n");
+        }
+      }
+      assertEquals(100, sender.getSentCount());
+      assertEquals(1, sender.getDroppedCount());
+    }
+  }
+
+  @Test
+  public void testOldestSpansAreDroppedWhileDisconnected() throws Exception {
+    int port = proxy.getPort();
+    proxy.close();
+    AtomicLong dropped = new AtomicLong();
+    try (NioProxySpanSender sender = new NioProxySpanSender("localhost", port, SOURCE, 1024, 2,
+        10, dropped::addAndGet)) {
+      for (int i = 0; i < 100; i++) {
+        sender.send(span("op-" + i, null, null, null), false);
+      }
+      assertTrue(sender.getDroppedCount() > 0);
+      assertEquals(sender.getDroppedCount(), dropped.get());
+      assertEquals(0, sender.getSentCount());
+    }
+  }
+
+  @Test
+  public void testReconnectsAfterConnectionLoss() throws Exception {
+    try (NioProxySpanSender sender = sender(64 * 1024, 4)) {
+      sender.send(span("before", null, null, null), false);
+      sender.flush();
+      assertEquals("before", proxy.nextLine().split("\"")[1]);
+
+      proxy.closeConnections();
+      // keeps sending until the broken connection is noticed and a new one is made
+      long deadline = System.currentTimeMillis() + 10000;
+      String line = null;
+      for (int i = 0; line == null && System.currentTimeMillis() < deadline; i++) {
+        sender.send(span("after-" + i, null, null, null), false);
+        sender.flush();
+        line = proxy.pollLine(0.1);
+      }
+      assertNotNull(line);
+      assertTrue(line.matches("\"after-\\d+\" source=\"my-host\" .* 1554363517965 12"), line);
+      assertTrue(sender.getFailureCount() >= 1);
+      assertTrue(proxy.getConnectionCount() >= 2);
+    }
+  }
+
+  @Test
+  public void testSendAfterClose() {
+    NioProxySpanSender sender = sender(1024, 2);
+    sender.close();
+    assertThrows(IOException.class, () -> sender.send(span("op", null, null, null), false));
+  }
+
+  @Test
+  public void testTracerWithProxySpanSender() throws Exception {
+    WavefrontSender wfSender = createNiceMock(WavefrontSender.class);
+    replay(wfSender);
+    WavefrontSpanReporter reporter = new WavefrontSpanReporter.Builder().
+        withSource(SOURCE).
+        withProxySpanSender("localhost", proxy.getPort()).
+        build(wfSender);
+    WavefrontTracer tracer = new WavefrontTracer.Builder(reporter, buildApplicationTags()).
+        withSampler(new ConstantSampler(true)).
+        build();
+    tracer.buildSpan("dummyOp").withTag("customer", "acme").start().finish();
+    tracer.flush();
+
+    String line = proxy.nextLine();
+    assertTrue(line.startsWith("\"dummyOp\" source=\"my-host\" traceId="), line);
+    assertTrue(line.contains(" \"application\"=\"myApplication\" \"service\"=\"myService\""),
+        line);
+    assertTrue(line.contains(" \"customer\"=\"acme\""), line);
+    tracer.close();
+
+    assertThrows(IllegalArgumentException.class, () ->
+        new WavefrontSpanReporter.Builder().withProxySpanSender("", 30000));
+    assertThrows(IllegalArgumentException.class, () ->
+        new WavefrontSpanReporter.Builder().withProxySpanSender("localhost", 0));
+  }
+
+  /**
+   * Accepts connections and collects the lines they receive.
+   */
+  private static final class StandInProxy implements Closeable {
+    private final ServerSocket serverSocket = new ServerSocket(0);
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    /** The number of connections closed so far, whose lines are ignored. */
+    private volatile int closedConnections;
+
+    StandInProxy() throws IOException {
+      Thread acceptor = new Thread(this::accept, "stand-in-proxy");
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    int getConnectionCount() {
+      return connections.size();
+    }
+
+    String nextLine() throws InterruptedException {
+      String line = pollLine(10);
+      assertNotNull(line, "no line received");
+      return line;
+    }
+
+    String pollLine(double timeoutSeconds) throws InterruptedException {
+      return lines.poll((long) (timeoutSeconds * 1000), TimeUnit.MILLISECONDS);
+    }
+
+    void closeConnections() throws IOException {
+      // a closed socket can still deliver a line its reader was receiving
+      closedConnections = connections.size();
+      for (Socket connection : connections) {
+        connection.close();
+      }
+    }
+
+    private void accept() {
+      try {
+        while (true) {
+          Socket connection = serverSocket.accept();
+          int index = connections.size();
+          connections.add(connection);
+          Thread reader = new Thread(() -> read(connection, index), "stand-in-proxy-reader");
+          reader.setDaemon(true);
+          reader.start();
+        }
+      } catch (IOException ex) {
+        // closed
+      }
+    }
+
+    private void read(Socket connection, int index) {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+          connection.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null && index >= closedConnections) {
+          lines.add(line);
+        }
+      } catch (IOException ex) {
+        // closed
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+      closeConnections();
+    }
+  }
+}
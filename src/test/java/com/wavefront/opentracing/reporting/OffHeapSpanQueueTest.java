@@ -0,0 +1,93 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link OffHeapSpanQueue}.
+ */
+public class OffHeapSpanQueueTest {
+
+  @Test
+  public void testOfferAndPollInOrder() {
+    OffHeapSpanQueue queue = new OffHeapSpanQueue(1000, 64 * 1024, 4096);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(queue.offer(span("op-" + i)));
+    }
+    assertEquals(100, queue.size());
+    assertEquals(900, queue.remainingCapacity());
+    assertTrue(queue.usedBytes() > 0);
+    assertEquals("op-0", queue.peek().getOperationName());
+
+    List<FinishedSpan> drained = new ArrayList<>();
+    assertEquals(10, queue.drainTo(drained, 10));
+    for (int i = 0; i < 10; i++) {
+      assertEquals("op-" + i, drained.get(i).getOperationName());
+    }
+    for (int i = 10; i < 100; i++) {
+      FinishedSpan span = queue.poll();
+      assertEquals("op-" + i, span.getOperationName());
+      assertEquals("tenant1", span.getTagValue(0));
+    }
+    assertNull(queue.poll());
+    assertEquals(0, queue.usedBytes());
+  }
+
+  @Test
+  public void testBoundedInSpansAndBytes() throws InterruptedException {
+    OffHeapSpanQueue byCount = new OffHeapSpanQueue(2, 64 * 1024, 4096);
+    assertTrue(byCount.offer(span("a")));
+    assertTrue(byCount.offer(span("b")));
+    assertFalse(byCount.offer(span("c")));
+    assertFalse(byCount.offer(span("c"), 10, TimeUnit.MILLISECONDS));
+
+    // two slabs of 1 KB each
+    OffHeapSpanQueue byBytes = new OffHeapSpanQueue(1000, 2048, 1024);
+    int offered = 0;
+    while (byBytes.offer(span("op-" + offered))) {
+      offered++;
+    }
+    assertTrue(offered > 0);
+    assertTrue(byBytes.usedBytes() <= 2048);
+
+    // consumed slabs are reused for new spans
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < offered; i++) {
+        assertEquals("op-" + i, byBytes.poll().getOperationName());
+      }
+      for (int i = 0; i < offered; i++) {
+        assertTrue(byBytes.offer(span("op-" + i)));
+      }
+    }
+    assertEquals(offered, byBytes.drainTo(new ArrayList<>()));
+    assertNull(byBytes.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testSpanLargerThanSlabIsRejected() {
+    OffHeapSpanQueue queue = new OffHeapSpanQueue(1000, 64 * 1024, 1024);
+    FinishedSpan span = new FinishedSpan("op", 1554363517965000L, 10L, 1L, 2L, 3L, 4L, null,
+        null, new String[]{"payload", new String(new char[2048])}, null, null, null, false);
+    assertThrows(IllegalArgumentException.class, () -> queue.offer(span));
+    assertThrows(IllegalArgumentException.class,
+        () -> queue.offer(span, 10, TimeUnit.MILLISECONDS));
+    assertThrows(IllegalArgumentException.class, () -> queue.put(span));
+    assertEquals(0, queue.size());
+  }
+
+  private static FinishedSpan span(String operationName) {
+    return new FinishedSpan(operationName, 1554363517965000L, 10L, 1L, 2L, 3L, 4L, null, null,
+        new String[]{"tenant", "tenant1"}, null, null, null, false);
+  }
+}
@@ -0,0 +1,361 @@
+package com.wavefront.opentracing.reporting;
+
+import com.wavefront.opentracing.FinishedSpan;
+import com.wavefront.opentracing.WavefrontTracer;
+import com.wavefront.sdk.common.WavefrontSender;
+import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import io.opentracing.Span;
+
+import static com.wavefront.opentracing.Utils.buildApplicationTags;
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link WavefrontSpanReporter}.
+ */
+public class WavefrontSpanReporterTest {
+
+  @Test
+  public void testBatchedSending() throws IOException, InterruptedException {
+    verifyAllSpansSent(new WavefrontSpanReporter.Builder().
+        withBatchSize(16).
+        withBatchLingerMillis(20));
+  }
+
+  @Test
+  public void testOffHeapQueue() throws IOException, InterruptedException {
+    verifyAllSpansSent(new WavefrontSpanReporter.Builder().
+        withOffHeapQueueBytes(1024 * 1024));
+  }
+
+  private void verifyAllSpansSent(WavefrontSpanReporter.Builder builder)
+      throws IOException, InterruptedException {
+    int numSpans = 100;
+    CountDownLatch sent = new CountDownLatch(numSpans);
+    WavefrontSender wfSender = createNiceMock(WavefrontSender.class);
+    wfSender.sendSpan(eq("dummyOp"), anyLong(), anyLong(), eq(DEFAULT_SOURCE), anyObject(),
+        anyObject(), anyObject(), anyObject(), anyObject(), anyObject());
+    expectLastCall().andAnswer(() -> {
+      sent.countDown();
+      return null;
+    }).times(numSpans);
+    replay(wfSender);
+
+    WavefrontSpanReporter reporter = builder.withSource(DEFAULT_SOURCE).build(wfSender);
+    WavefrontTracer tracer = new WavefrontTracer.Builder(reporter, buildApplicationTags()).
+        withSampler(new ConstantSampler(true)).
+        build();
+    for (int i = 0; i < numSpans; i++) {
+      tracer.buildSpan("dummyOp").start().finish();
+    }
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+    verify(wfSender);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testRunReturnsOnceClosed() throws IOException {
+    WavefrontSender wfSender = createNiceMock(WavefrontSender.class);
+    replay(wfSender);
+    WavefrontSpanReporter reporter = new WavefrontSpanReporter.Builder().
+        withSource(DEFAULT_SOURCE).
+        build(wfSender);
+    reporter.report(new FinishedSpan("dummyOp", 1554363517965000L, 10L, 1L, 2L, 3L, 4L, null,
+        null, null, null, null, null, false));
+    reporter.close();
+    // the deprecated entry point runs the sending loop, which ends once the reporter is closed
+    reporter.run();
+  }
+
+  @Test
+  public void testShardedSendingKeepsTraceOrder() throws IOException, InterruptedException {
+    verifyShardedSendingKeepsTraceOrder(false);
+  }
+
+  @Test
+  public void testTracerSpanBatchesKeepTraceOrder() throws IOException, InterruptedException {
+    verifyShardedSendingKeepsTraceOrder(true);
+  }
+
+  private void verifyShardedSendingKeepsTraceOrder(boolean batchFinishedSpans)
+      throws IOException, InterruptedException {
+    int numTraces = 20;
+    int spansPerTrace = 10;
+    CountDownLatch sent = new CountDownLatch(numTraces * spansPerTrace);
+    Map<UUID, List<String>> sentByTrace = new ConcurrentHashMap<>();
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    WavefrontSender wfSender = createNiceMock(WavefrontSender.class);
+    wfSender.sendSpan(anyString(), anyLong(), anyLong(), eq(DEFAULT_SOURCE), anyObject(),
+        anyObject(), anyObject(), anyObject(), anyObject(), anyObject());
+    expectLastCall().andAnswer(() -> {
+      UUID traceId = (UUID) getCurrentArguments()[4];
+      sentByTrace.computeIfAbsent(traceId, k -> new ArrayList<>()).
+          add((String) getCurrentArguments()[0]);
+      threads.add(Thread.currentThread().getName());
+      sent.countDown();
+      return null;
+    }).anyTimes();
+    replay(wfSender);
+
+    WavefrontSpanReporter reporter = new WavefrontSpanReporter.Builder().
+        withSource(DEFAULT_SOURCE).
+        withNumWorkers(4).
+        build(wfSender);
+    WavefrontTracer.Builder tracerBuilder =
+        new WavefrontTracer.Builder(reporter, buildApplicationTags()).
+            withSampler(new ConstantSampler(true));
+    if (batchFinishedSpans) {
+      // the last partial batch is handed over after the delay
+      tracerBuilder.batchFinishedSpans(16, 10, TimeUnit.MILLISECONDS);
+    }
+    WavefrontTracer tracer = tracerBuilder.build();
+    for (int i = 0; i < numTraces; i++) {
+      Span root = tracer.buildSpan("op-0").start();
+      for (int j = 1; j < spansPerTrace; j++) {
+        tracer.buildSpan("op-" + j).asChildOf(root).start().finish();
+      }
+      root.finish();
+    }
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+
+    assertEquals(numTraces, sentByTrace.size());
+    for (List<String> operations : sentByTrace.values()) {
+      assertEquals(spansPerTrace, operations.size());
+      for (int j = 1; j < spansPerTrace; j++) {
+        assertEquals("op-" + j, operations.get(j - 1));
+      }
+      assertEquals("op-0", operations.get(spansPerTrace - 1));
+    }
+    assertTrue(threads.size() > 1);
+  }
+
+  @Test
+  public void testDropNewest() throws IOException, InterruptedException {
+    assertEquals(Arrays.asList("first", "second"),
+        reportToFullBuffer(BackpressurePolicy.DROP_NEWEST));
+  }
+
+  @Test
+  public void testDropOldest() throws IOException, InterruptedException {
+    assertEquals(Arrays.asList("first", "third"),
+        reportToFullBuffer(BackpressurePolicy.DROP_OLDEST));
+  }
+
+  @Test
+  public void testBlockWithTimeout() throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    assertEquals(Arrays.asList("first", "second"),
+        reportToFullBuffer(BackpressurePolicy.BLOCK_WITH_TIMEOUT));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @Test
+  public void testCallerRuns() throws IOException, InterruptedException {
+    assertEquals(Arrays.asList("first", "third", "second"),
+        reportToFullBuffer(BackpressurePolicy.CALLER_RUNS));
+  }
+
+  @Test
+  public void testSpillReplaysOverflow(@TempDir File spillDirectory)
+      throws IOException, InterruptedException {
+    assertEquals(Arrays.asList("first", "second", "third", "fourth"),
+        reportToFullBuffer(BackpressurePolicy.DROP_NEWEST, spillDirectory, "fourth"));
+  }
+
+  @Test
+  public void testCloseSpillsBufferedSpans(@TempDir File spillDirectory)
+      throws IOException, InterruptedException {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    WavefrontSender wfSender = (WavefrontSender) Proxy.newProxyInstance(
+        WavefrontSender.class.getClassLoader(), new Class<?>[]{WavefrontSender.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("sendSpan")) {
+            sending.countDown();
+            release.await();
+          }
+          return method.getReturnType() == int.class ? 0 : null;
+        });
+    WavefrontSpanReporter reporter = new WavefrontSpanReporter.Builder().
+        withSource(DEFAULT_SOURCE).
+        withMaxQueueSize(1).
+        withSpillDirectory(spillDirectory.getPath()).
+        build(wfSender);
+    WavefrontTracer tracer = new WavefrontTracer.Builder(reporter, buildApplicationTags()).
+        withSampler(new ConstantSampler(true)).
+        build();
+    tracer.buildSpan("first").start().finish();
+    assertTrue(sending.await(5, TimeUnit.SECONDS));
+    // stays in the in-memory buffer while the worker is sending the first span
+    tracer.buildSpan("second").start().finish();
+
+    Thread closer = new Thread(() -> {
+      try {
+        reporter.close();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    });
+    closer.start();
+    // let the worker see that the reporter is stopping once it is done sending
+    Thread.sleep(100);
+    release.countDown();
+    closer.join(10000);
+
+    try (DiskSpill spill = new DiskSpill(spillDirectory, 1024 * 1024, evicted -> { })) {
+      assertEquals(1, spill.size());
+      assertEquals("second", spill.poll().getOperationName());
+    }
+  }
+
+  @Test
+  public void testOversizedSpanEvictsNothing() throws IOException, InterruptedException {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    WavefrontSender wfSender = (WavefrontSender) Proxy.newProxyInstance(
+        WavefrontSender.class.getClassLoader(), new Class<?>[]{WavefrontSender.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("sendSpan")) {
+            sent.add((String) args[0]);
+            sending.countDown();
+            release.await();
+          }
+          return method.getReturnType() == int.class ? 0 : null;
+        });
+    // slabs of 64 KB
+    WavefrontSpanReporter reporter = new WavefrontSpanReporter.Builder().
+        withSource(DEFAULT_SOURCE).
+        withOffHeapQueueBytes(1024 * 1024).
+        withBackpressurePolicy(BackpressurePolicy.DROP_OLDEST).
+        withLoggingPercent(0).
+        build(wfSender);
+    WavefrontTracer tracer = new WavefrontTracer.Builder(reporter, buildApplicationTags()).
+        withSampler(new ConstantSampler(true)).
+        build();
+    tracer.buildSpan("first").start().finish();
+    assertTrue(sending.await(5, TimeUnit.SECONDS));
+    tracer.buildSpan("second").start().finish();
+    tracer.buildSpan("oversized").withTag("payload", new String(new char[100 * 1024])).start().
+        finish();
+    release.countDown();
+    tracer.close();
+    assertEquals(Arrays.asList("first", "second"), sent);
+  }
+
+  /**
+   * Reports three spans to a reporter whose buffer holds one span while the sending worker is
+   * stuck sending the first span, and returns the operation names in the order they were sent.
+   */
+  private List<String> reportToFullBuffer(BackpressurePolicy backpressurePolicy)
+      throws IOException, InterruptedException {
+    return reportToFullBuffer(backpressurePolicy, null);
+  }
+
+  private List<String> reportToFullBuffer(BackpressurePolicy backpressurePolicy,
+                                          @Nullable File spillDirectory,
+                                          String... moreOperations)
+      throws IOException, InterruptedException {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    // EasyMock serializes calls to a mock, so stall the sending worker with a plain proxy
+    WavefrontSender wfSender = (WavefrontSender) Proxy.newProxyInstance(
+        WavefrontSender.class.getClassLoader(), new Class<?>[]{WavefrontSender.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("sendSpan")) {
+            sent.add((String) args[0]);
+            if (Thread.currentThread().getName().equals("wavefrontSpanReporter")) {
+              sending.countDown();
+              release.await();
+            }
+          }
+          return method.getReturnType() == int.class ? 0 : null;
+        });
+
+    WavefrontSpanReporter.Builder builder = new WavefrontSpanReporter.Builder().
+        withSource(DEFAULT_SOURCE).
+        withMaxQueueSize(1).
+        withBackpressurePolicy(backpressurePolicy).
+        withBlockTimeoutMillis(50).
+        withLoggingPercent(0);
+    if (spillDirectory != null) {
+      builder.withSpillDirectory(spillDirectory.getPath());
+    }
+    WavefrontSpanReporter reporter = builder.build(wfSender);
+    WavefrontTracer tracer = new WavefrontTracer.Builder(reporter, buildApplicationTags()).
+        withSampler(new ConstantSampler(true)).
+        build();
+    tracer.buildSpan("first").start().finish();
+    assertTrue(sending.await(5, TimeUnit.SECONDS));
+    tracer.buildSpan("second").start().finish();
+    tracer.buildSpan("third").start().finish();
+    for (String operation : moreOperations) {
+      tracer.buildSpan(operation).start().finish();
+    }
+    release.countDown();
+
+    int expected = spillDirectory != null ? 3 + moreOperations.length :
+        backpressurePolicy == BackpressurePolicy.CALLER_RUNS ? 3 : 2;
+    long deadline = System.currentTimeMillis() + 5000;
+    while (sent.size() < expected &&
+        System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    // give the worker a chance to send anything that should have been dropped
+    Thread.sleep(50);
+    synchronized (sent) {
+      return new ArrayList<>(sent);
+    }
+  }
+
+  @Test
+  public void testInvalidSettings() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new WavefrontSpanReporter.Builder().withBatchSize(0));
+    assertThrows(IllegalArgumentException.class,
+        () -> new WavefrontSpanReporter.Builder().withBatchLingerMillis(-1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new WavefrontSpanReporter.Builder().withNumWorkers(0));
+    assertThrows(IllegalArgumentException.class,
+        () -> new WavefrontSpanReporter.Builder().withBackpressurePolicy(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> new WavefrontSpanReporter.Builder().withBlockTimeoutMillis(-1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new WavefrontSpanReporter.Builder().withSpillMaxBytes(1024));
+    assertThrows(IllegalArgumentException.class,
+        () -> new WavefrontSpanReporter.Builder().withOffHeapQueueBytes(1024));
+  }
+}
@@ -0,0 +1,179 @@
+package com.wavefront.opentracing.reporting.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RingBufferQueue}.
+ */
+public class RingBufferQueueTest {
+
+  @Test
+  public void testOfferAndPollInOrder() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(3);
+    assertTrue(queue.offer(1));
+    assertTrue(queue.offer(2));
+    assertTrue(queue.offer(3));
+    assertFalse(queue.offer(4));
+    assertEquals(3, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    assertEquals(Integer.valueOf(1), queue.peek());
+
+    // wrap around the ring several times
+    for (int i = 4; i < 20; i++) {
+      assertEquals(Integer.valueOf(i - 3), queue.poll());
+      assertTrue(queue.offer(i));
+      assertEquals(3, queue.size());
+    }
+    assertEquals(Integer.valueOf(17), queue.poll());
+    assertEquals(Integer.valueOf(18), queue.poll());
+    assertEquals(Integer.valueOf(19), queue.poll());
+    assertNull(queue.poll());
+    assertEquals(0, queue.size());
+    assertEquals(3, queue.remainingCapacity());
+  }
+
+  @Test
+  public void testDrainTo() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(10);
+    for (int i = 0; i < 10; i++) {
+      queue.offer(i);
+    }
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(4, queue.drainTo(drained, 4));
+    assertEquals(6, queue.size());
+    assertEquals(6, queue.drainTo(drained));
+    assertEquals(10, drained.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Integer.valueOf(i), drained.get(i));
+    }
+  }
+
+  @Test
+  public void testOfferAll() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(5);
+    assertTrue(queue.offer(0));
+    assertEquals(3, queue.offerAll(Arrays.asList(9, 1, 2, 3), 1));
+    // only the elements that fit are inserted
+    assertEquals(1, queue.offerAll(Arrays.asList(4, 5, 6), 0));
+    assertEquals(0, queue.offerAll(Arrays.asList(5, 6), 0));
+    for (int i = 0; i < 5; i++) {
+      assertEquals(Integer.valueOf(i), queue.poll());
+    }
+    assertNull(queue.poll());
+    assertEquals(0, queue.offerAll(Arrays.asList(1, 2), 2));
+  }
+
+  @Test
+  public void testConcurrentBatchProducers() throws InterruptedException {
+    int producers = 4;
+    int perProducer = 20_000;
+    RingBufferQueue<long[]> queue = new RingBufferQueue<>(64, new BlockingWaitStrategy());
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      Thread thread = new Thread(() -> {
+        List<long[]> batch = new ArrayList<>();
+        for (int i = 0; i < perProducer; i++) {
+          batch.add(new long[]{producer, i});
+          if (batch.size() == 1 + producer * 3 || i == perProducer - 1) {
+            int offered = 0;
+            while (offered < batch.size()) {
+              int count = queue.offerAll(batch, offered);
+              if (count == 0) {
+                Thread.yield();
+              }
+              offered += count;
+            }
+            batch.clear();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    long[] next = new long[producers];
+    for (int i = 0; i < producers * perProducer; i++) {
+      long[] element = queue.take();
+      int producer = (int) element[0];
+      assertEquals(next[producer], element[1]);
+      next[producer]++;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void testTimeouts() throws InterruptedException {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(1);
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+    assertFalse(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+    assertEquals(Integer.valueOf(1), queue.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testConcurrentProducersWithBlockingWaitStrategy() throws InterruptedException {
+    verifyConcurrentProducers(new BlockingWaitStrategy());
+  }
+
+  @Test
+  public void testConcurrentProducersWithParkingWaitStrategy() throws InterruptedException {
+    verifyConcurrentProducers(new ParkingWaitStrategy(100, TimeUnit.MICROSECONDS));
+  }
+
+  @Test
+  public void testConcurrentProducersWithSpinThenParkWaitStrategy()
+      throws InterruptedException {
+    verifyConcurrentProducers(new SpinThenParkWaitStrategy());
+  }
+
+  private void verifyConcurrentProducers(WaitStrategy waitStrategy) throws InterruptedException {
+    int producers = 4;
+    int perProducer = 20_000;
+    RingBufferQueue<long[]> queue = new RingBufferQueue<>(64, waitStrategy);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      Thread thread = new Thread(() -> {
+        try {
+          for (int i = 0; i < perProducer; i++) {
+            queue.put(new long[]{producer, i});
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    // every producer's elements must be consumed exactly once and in the order they were put
+    long[] next = new long[producers];
+    for (int i = 0; i < producers * perProducer; i++) {
+      long[] element = queue.take();
+      int producer = (int) element[0];
+      assertEquals(next[producer], element[1]);
+      next[producer]++;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int p = 0; p < producers; p++) {
+      assertEquals(perProducer, next[p]);
+    }
+    assertNull(queue.poll());
+  }
+}
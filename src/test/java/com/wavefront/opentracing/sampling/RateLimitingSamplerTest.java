@@ -0,0 +1,104 @@
+package com.wavefront.opentracing.sampling;
+
+import com.wavefront.opentracing.WavefrontTracer;
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.sdk.common.application.ApplicationTags;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.opentracing.Span;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RateLimitingSampler}.
+ */
+public class RateLimitingSamplerTest {
+
+  // one trace per 1000 seconds, so that only the initial burst of one trace is sampled
+  private static final double SLOW_RATE = 0.001;
+
+  @Test
+  public void testLimitPerOperation() {
+    RateLimitingSampler sampler = new RateLimitingSampler(SLOW_RATE);
+    assertTrue(sampler.isEarly());
+    assertTrue(sampler.sample("op1", 1, 0));
+    assertTrue(sampler.sample("op2", 2, 0));
+    for (int i = 0; i < 10; i++) {
+      assertFalse(sampler.sample("op1", i, 0));
+    }
+    assertEquals(1, sampler.getAcceptedCount("op1"));
+    assertEquals(10, sampler.getRejectedCount("op1"));
+    assertEquals(1, sampler.getAcceptedCount("op2"));
+    assertEquals(0, sampler.getRejectedCount("op2"));
+    assertEquals(0, sampler.getAcceptedCount("op3"));
+  }
+
+  @Test
+  public void testGlobalLimit() {
+    RateLimitingSampler sampler = new RateLimitingSampler(0, SLOW_RATE, 10);
+    assertTrue(sampler.sample("op1", 1, 0));
+    assertFalse(sampler.sample("op2", 2, 0));
+    assertFalse(sampler.sample("op1", 3, 0));
+    assertEquals(1, sampler.getRejectedCount("op2"));
+  }
+
+  @Test
+  public void testGlobalLimitKeepsOperationBudget() {
+    AtomicLong now = new AtomicLong(1000);
+    RateLimitingSampler sampler = new RateLimitingSampler(SLOW_RATE, 1, 10, now::get);
+    assertTrue(sampler.sample("op1", 1, 0));
+    // rejected by the global limit only, so op2 keeps its permit
+    assertFalse(sampler.sample("op2", 2, 0));
+    assertFalse(sampler.sample("op2", 3, 0));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertTrue(sampler.sample("op2", 4, 0));
+    assertEquals(1, sampler.getAcceptedCount("op2"));
+    assertEquals(2, sampler.getRejectedCount("op2"));
+  }
+
+  @Test
+  public void testOperationsBeyondMaximumShareOneLimit() {
+    RateLimitingSampler sampler = new RateLimitingSampler(SLOW_RATE, 0, 2);
+    assertTrue(sampler.sample("op1", 1, 0));
+    assertTrue(sampler.sample("op2", 2, 0));
+    assertTrue(sampler.sample("op3", 3, 0));
+    assertFalse(sampler.sample("op4", 4, 0));
+    assertEquals(0, sampler.getAcceptedCount("op3"));
+    assertEquals(1, sampler.getAcceptedCount(RateLimitingSampler.OTHER_OPERATIONS));
+    assertEquals(1, sampler.getRejectedCount(RateLimitingSampler.OTHER_OPERATIONS));
+  }
+
+  @Test
+  public void testTracerOnlySamplesOnStart() {
+    RateLimitingSampler sampler = new RateLimitingSampler(SLOW_RATE);
+    WavefrontTracer tracer = new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build()).
+        withSampler(sampler).
+        build();
+    for (int i = 0; i < 2; i++) {
+      // spans shorter than a millisecond are not sampled again when they finish
+      Span root = tracer.buildSpan("op").withStartTimestamp(1000).start();
+      tracer.buildSpan("child").asChildOf(root).withStartTimestamp(1000).start().finish(1500);
+      root.finish(1500);
+    }
+    assertEquals(1, sampler.getAcceptedCount("op"));
+    assertEquals(1, sampler.getRejectedCount("op"));
+    assertEquals(0, sampler.getAcceptedCount("child"));
+    assertEquals(0, sampler.getRejectedCount("child"));
+  }
+
+  @Test
+  public void testInvalidLimits() {
+    assertThrows(IllegalArgumentException.class, () -> new RateLimitingSampler(-1));
+    assertThrows(IllegalArgumentException.class, () -> new RateLimitingSampler(0, 0, 10));
+    assertThrows(IllegalArgumentException.class, () -> new RateLimitingSampler(1, 0, 0));
+  }
+}
@@ -0,0 +1,93 @@
+package com.wavefront.opentracing.sampling;
+
+import com.wavefront.opentracing.WavefrontSpanContext;
+import com.wavefront.opentracing.WavefrontTracer;
+import com.wavefront.opentracing.reporting.ConsoleReporter;
+import com.wavefront.sdk.common.application.ApplicationTags;
+import com.wavefront.sdk.entities.tracing.sampling.ConstantSampler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+import static com.wavefront.opentracing.common.Constants.DEFAULT_SOURCE;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SamplingRule} and how the tracer applies sampling rules.
+ */
+public class SamplingRuleTest {
+
+  private WavefrontTracer.Builder tracerBuilder() {
+    return new WavefrontTracer.Builder(new ConsoleReporter(DEFAULT_SOURCE),
+        new ApplicationTags.Builder("myApplication", "myService").build());
+  }
+
+  private static boolean isSampled(Span span) {
+    return ((WavefrontSpanContext) span.context()).getSamplingDecision();
+  }
+
+  @Test
+  public void testFirstMatchingRuleDecides() {
+    WavefrontTracer tracer = tracerBuilder().
+        withSampler(new ConstantSampler(true)).
+        withSamplingRule(SamplingRule.builder().forOperation("health").withRate(0).build()).
+        withSamplingRule(SamplingRule.builder().forService("svc2").build()).
+        withSamplingRule(SamplingRule.builder().withTag("tenant", "acme").withRate(0).build()).
+        withSamplingRule(SamplingRule.builder().forService("myService").withTag("env", "dev").
+            withRate(0).build()).
+        build();
+    assertFalse(isSampled(tracer.buildSpan("health").start()));
+    assertFalse(isSampled(tracer.buildSpan("op").withTag("tenant", "acme").start()));
+    assertTrue(isSampled(tracer.buildSpan("op").withTag("service", "svc2").
+        withTag("tenant", "acme").start()));
+    assertFalse(isSampled(tracer.buildSpan("op").withTag("env", "dev").start()));
+    // no rule matches, so the samplers decide
+    assertTrue(isSampled(tracer.buildSpan("op").start()));
+    assertTrue(isSampled(tracer.buildSpan("op").withTag("tenant", "other").start()));
+  }
+
+  @Test
+  public void testDurationThreshold() {
+    WavefrontTracer tracer = tracerBuilder().
+        withSamplingRule(SamplingRule.builder().forOperation("slowOp").
+            withDurationThreshold(10, TimeUnit.MILLISECONDS).build()).
+        build();
+    Span slowSpan = tracer.buildSpan("slowOp").withStartTimestamp(1_000_000).start();
+    assertFalse(isSampled(slowSpan));
+    slowSpan.finish(1_020_000);
+    assertTrue(isSampled(slowSpan));
+
+    Span fastSpan = tracer.buildSpan("slowOp").withStartTimestamp(1_000_000).start();
+    fastSpan.finish(1_005_000);
+    assertFalse(isSampled(fastSpan));
+  }
+
+  @Test
+  public void testRateLimit() {
+    Tracer tracer = tracerBuilder().
+        withSamplingRule(SamplingRule.builder().withRateLimit(1).build()).
+        build();
+    int sampled = 0;
+    for (int i = 0; i < 100; i++) {
+      if (isSampled(tracer.buildSpan("op").start())) {
+        sampled++;
+      }
+    }
+    assertTrue(sampled >= 1 && sampled < 100);
+  }
+
+  @Test
+  public void testInvalidRules() {
+    assertThrows(IllegalArgumentException.class, () -> SamplingRule.builder().withRate(1.5));
+    assertThrows(IllegalArgumentException.class, () -> SamplingRule.builder().withRateLimit(0));
+    assertThrows(IllegalArgumentException.class,
+        () -> SamplingRule.builder().withDurationThreshold(-1, TimeUnit.SECONDS));
+    assertThrows(IllegalArgumentException.class, () -> tracerBuilder().withSamplingRule(null));
+  }
+}
@@ -0,0 +1,53 @@
+package com.wavefront.opentracing.sampling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link TokenBucket}.
+ */
+public class TokenBucketTest {
+
+  @Test
+  public void testRateAndBurst() {
+    AtomicLong now = new AtomicLong(1000);
+    TokenBucket bucket = new TokenBucket(10, 3, now::get);
+    // starts full
+    assertTrue(bucket.tryAcquire());
+    assertTrue(bucket.tryAcquire());
+    assertTrue(bucket.tryAcquire());
+    assertFalse(bucket.tryAcquire());
+
+    // one permit every 100ms
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    assertTrue(bucket.tryAcquire());
+    assertFalse(bucket.tryAcquire());
+
+    // refills up to the burst only
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    assertTrue(bucket.tryAcquire());
+    assertTrue(bucket.tryAcquire());
+    assertTrue(bucket.tryAcquire());
+    assertFalse(bucket.tryAcquire());
+
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0.5));
+  }
+
+  @Test
+  public void testRelease() {
+    AtomicLong now = new AtomicLong(1000);
+    TokenBucket bucket = new TokenBucket(10, 1, now::get);
+    assertTrue(bucket.tryAcquire());
+    assertFalse(bucket.tryAcquire());
+    bucket.release();
+    assertTrue(bucket.tryAcquire());
+    assertFalse(bucket.tryAcquire());
+  }
+}